@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.path;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Parsing Unix paths: single pass scanner versus the regex based primitives
+ *
+ * <p>Each invocation parses a whole corpus of paths:</p>
+ *
+ * <ul>
+ *     <li>{@code source}: absolute paths from a typical source tree;</li>
+ *     <li>{@code deep}: absolute paths 20 to 40 names deep, such as found in
+ *     object stores;</li>
+ *     <li>{@code messy}: relative paths with duplicate and trailing slashes,
+ *     and self/parent tokens.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+public class UnixPathParsingBenchmark
+{
+    private static final String[] WORDS = {
+        "src", "main", "java", "com", "github", "fge", "filesystem", "path",
+        "test", "resources", "target", "classes", "GenericPath.java",
+        "build.gradle", "README.md", "2014", "12", "part-00000", "data",
+        "tenant42", ".git", "objects", "a3", "node_modules", "index.js"
+    };
+
+    private static final int CORPUS_SIZE = 1000;
+
+    @Param({ "source", "deep", "messy" })
+    public String corpus;
+
+    private final UnixPathElementsFactory factory
+        = new UnixPathElementsFactory();
+
+    private final List<String> paths = new ArrayList<>(CORPUS_SIZE);
+
+    @Setup
+    public void setup()
+    {
+        final Random random = new Random(0L);
+
+        for (int i = 0; i < CORPUS_SIZE; i++)
+            paths.add(generate(random));
+    }
+
+    @Benchmark
+    public void scanner(final Blackhole blackhole)
+    {
+        for (final String path: paths)
+            blackhole.consume(factory.parse(path));
+    }
+
+    @Benchmark
+    public void regex(final Blackhole blackhole)
+    {
+        for (final String path: paths)
+            blackhole.consume(factory.splitAndValidate(path));
+    }
+
+    private String generate(final Random random)
+    {
+        final StringBuilder sb = new StringBuilder();
+        final int depth;
+
+        switch (corpus) {
+            case "source":
+                depth = 3 + random.nextInt(8);
+                for (int i = 0; i < depth; i++)
+                    sb.append('/').append(word(random));
+                break;
+            case "deep":
+                depth = 20 + random.nextInt(21);
+                for (int i = 0; i < depth; i++)
+                    sb.append('/').append(word(random));
+                break;
+            case "messy":
+                depth = 2 + random.nextInt(10);
+                for (int i = 0; i < depth; i++)
+                    switch (random.nextInt(6)) {
+                        case 0:
+                            sb.append("./");
+                            break;
+                        case 1:
+                            sb.append("../");
+                            break;
+                        case 2:
+                            sb.append(word(random)).append("//");
+                            break;
+                        default:
+                            sb.append(word(random)).append('/');
+                    }
+                break;
+            default:
+                throw new IllegalArgumentException("unknown corpus " + corpus);
+        }
+
+        return sb.toString();
+    }
+
+    private static String word(final Random random)
+    {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+}
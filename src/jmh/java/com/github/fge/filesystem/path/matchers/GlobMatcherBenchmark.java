@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.path.matchers;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Matching globs: compiled automaton versus regex translation
+ *
+ * <p>Each invocation matches a corpus of absolute paths, 3 to 20 names deep,
+ * against one glob:</p>
+ *
+ * <ul>
+ *     <li>{@code **}{@code /*.{parquet,orc,avro}}: alternatives after a
+ *     cross-directory wildcard; most paths do not match;</li>
+ *     <li>{@code /data/*}{@code /????-??-[0-3][0-9]/**}: a partition layout,
+ *     rejected early by the automaton;</li>
+ *     <li>{@code *.java}: a single name glob, which never matches an absolute
+ *     path.</li>
+ * </ul>
+ *
+ * <p>Compilation is not measured.</p>
+ */
+@State(Scope.Benchmark)
+public class GlobMatcherBenchmark
+{
+    private static final String[] WORDS = {
+        "data", "tenant42", "2014-12-01", "2014-11-30", "part-00000",
+        "part-00001.parquet", "x.orc", "y.avro", "z.csv", "_SUCCESS", "src",
+        "main", "java", "GenericPath.java", "tmp", ".staging", "logs"
+    };
+
+    private static final int CORPUS_SIZE = 1000;
+
+    @Param({
+        "**/*.{parquet,orc,avro}",
+        "/data/*/????-??-[0-3][0-9]/**",
+        "*.java"
+    })
+    public String glob;
+
+    private final List<String> paths = new ArrayList<>(CORPUS_SIZE);
+
+    private GlobPathMatcher regexMatcher;
+    private CompiledGlobPathMatcher compiledMatcher;
+
+    @Setup
+    public void setup()
+    {
+        final Random random = new Random(0L);
+        final StringBuilder sb = new StringBuilder();
+        int depth;
+
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            sb.setLength(0);
+            depth = 3 + random.nextInt(18);
+            for (int j = 0; j < depth; j++)
+                sb.append('/').append(WORDS[random.nextInt(WORDS.length)]);
+            paths.add(sb.toString());
+        }
+
+        regexMatcher = new GlobPathMatcher(glob);
+        compiledMatcher = new CompiledGlobPathMatcher(glob);
+    }
+
+    @Benchmark
+    public void regex(final Blackhole blackhole)
+    {
+        for (final String path: paths)
+            blackhole.consume(regexMatcher.match(path));
+    }
+
+    @Benchmark
+    public void automaton(final Blackhole blackhole)
+    {
+        for (final String path: paths)
+            blackhole.consume(compiledMatcher.match(path));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.provider;
+
+import com.github.fge.filesystem.driver.FileSystemDriver;
+import com.github.fge.filesystem.fs.GenericFileSystem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.nio.file.FileSystems;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Looking up a filesystem by URI: prefix index versus a linear scan
+ *
+ * <p>The linear scan is what {@link FileSystemRepositoryBase#getPath(URI)}
+ * used to do; the cost of the index lookup should not depend on the number of
+ * mounted filesystems.</p>
+ */
+@State(Scope.Benchmark)
+public class UriPrefixIndexBenchmark
+{
+    @Param({ "1", "10", "100", "1000", "10000" })
+    public int mounts;
+
+    private final UriPrefixIndex index = new UriPrefixIndex();
+    private final Map<URI, GenericFileSystem> filesystems
+        = new LinkedHashMap<>();
+
+    private URI lookup;
+
+    @Setup
+    public void setup()
+    {
+        final FileSystemFactoryProvider factoryProvider
+            = new FileSystemFactoryProvider();
+        final FileSystemRepository repository
+            = proxy(FileSystemRepository.class, factoryProvider);
+        final FileSystemDriver driver = proxy(FileSystemDriver.class, null);
+        final FileSystemProvider provider
+            = FileSystems.getDefault().provider();
+
+        URI uri;
+        GenericFileSystem fs;
+
+        for (int i = 0; i < mounts; i++) {
+            uri = URI.create("bench://host/tenant" + i + "/data");
+            fs = new GenericFileSystem(uri, repository, driver, provider);
+            index.put(uri, fs);
+            filesystems.put(uri, fs);
+        }
+
+        lookup = URI.create("bench://host/tenant" + mounts / 2
+            + "/data/2014/12/part-00000");
+    }
+
+    @Benchmark
+    public Object indexLookup()
+    {
+        return index.find(lookup);
+    }
+
+    @Benchmark
+    public Object linearScan()
+    {
+        URI relative;
+
+        for (final Map.Entry<URI, GenericFileSystem> entry:
+            filesystems.entrySet()) {
+            relative = entry.getKey().relativize(lookup);
+            if (!relative.isAbsolute())
+                return entry.getValue();
+        }
+
+        return null;
+    }
+
+    private static <T> T proxy(final Class<T> c, final Object factoryProvider)
+    {
+        final InvocationHandler handler = new InvocationHandler()
+        {
+            @Override
+            public Object invoke(final Object proxy, final Method method,
+                final Object[] args)
+            {
+                return "getFactoryProvider".equals(method.getName())
+                    ? factoryProvider : null;
+            }
+        };
+        return c.cast(Proxy.newProxyInstance(c.getClassLoader(),
+            new Class<?>[] { c }, handler));
+    }
+}
@@ -40,8 +40,10 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.DosFileAttributeView;
 import java.nio.file.attribute.DosFileAttributes;
 import java.nio.file.attribute.FileAttributeView;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
@@ -67,6 +69,12 @@ import java.util.Objects;
  * href="http://java7fs.wikia.com/wiki/Implementing_file_attributes">this
  * page</a>for a sample use.</p>
  *
+ * <p>Lookups use a resolution table built from the registered descriptors
+ * and implementations when first needed, and rebuilt if they change
+ * afterwards; the provider implementing a given view or attribute class is
+ * therefore only searched for once per class. Once configured, instances of
+ * this class can be safely used by several threads.</p>
+ *
  * <p>Unless otherwise noted, all methods of this class will throw a {@link
  * NullPointerException} if a null argument is passed.</p>
  *
@@ -78,6 +86,13 @@ public class FileAttributesFactory
     private static final MethodHandles.Lookup LOOKUP
         = MethodHandles.publicLookup();
 
+    /*
+     * Resolved handle for classes which no provider implements (a ClassValue
+     * cannot hold null)
+     */
+    private static final MethodHandle UNSUPPORTED
+        = MethodHandles.constant(Object.class, null);
+
     private final Map<String, AttributesDescriptor> descriptors
         = new HashMap<>();
 
@@ -88,6 +103,11 @@ public class FileAttributesFactory
 
     private Class<?> metadataClass = null;
 
+    /*
+     * Built from the maps above when first needed; reset when they change
+     */
+    private volatile Resolution resolution = null;
+
     /**
      * Constructor to extend
      */
@@ -103,15 +123,16 @@ public class FileAttributesFactory
     )
     {
         Objects.requireNonNull(viewClass);
-        return getHandle(viewClass, viewMap) != null;
+        return getResolution().views.get(viewClass) != UNSUPPORTED;
     }
 
     public final boolean supportsFileAttributeView(final String name)
     {
+        final Resolution table = getResolution();
         final AttributesDescriptor descriptor
-            = descriptors.get(Objects.requireNonNull(name));
+            = table.descriptors.get(Objects.requireNonNull(name));
         return descriptor != null
-            && getHandle(descriptor.getViewClass(), viewMap) != null;
+            && table.views.get(descriptor.getViewClass()) != UNSUPPORTED;
     }
 
     /**
@@ -145,7 +166,8 @@ public class FileAttributesFactory
         final Object metadata)
         throws IOException
     {
-        final MethodHandle handle = providers.get(Objects.requireNonNull(name));
+        final MethodHandle handle
+            = getResolution().providers.get(Objects.requireNonNull(name));
 
         if (handle == null)
             return null;
@@ -185,7 +207,8 @@ public class FileAttributesFactory
     )
         throws IOException
     {
-        return getProviderInstance(targetClass, viewMap, metadata);
+        return getProviderInstance(getResolution().views.get(targetClass),
+            metadata);
     }
 
     /**
@@ -212,7 +235,8 @@ public class FileAttributesFactory
     )
         throws IOException
     {
-        return getProviderInstance(targetClass, attrMap, metadata);
+        return getProviderInstance(getResolution().attributes.get(targetClass),
+            metadata);
     }
 
     /**
@@ -257,6 +281,7 @@ public class FileAttributesFactory
         viewMap.put(name, descriptor.getViewClass());
         if (descriptor.getAttributeClass() != null)
             attrMap.put(name, descriptor.getAttributeClass());
+        resolution = null;
     }
 
     /**
@@ -291,16 +316,28 @@ public class FileAttributesFactory
 
         checkCasts(providerClass, descriptor);
         providers.put(name, getConstructor(providerClass));
+        resolution = null;
+    }
+
+    @Nonnull
+    private Resolution getResolution()
+    {
+        Resolution ret = resolution;
+
+        if (ret == null) {
+            ret = new Resolution(descriptors, viewMap, attrMap, providers);
+            resolution = ret;
+        }
+
+        return ret;
     }
 
     @Nullable
-    private <C> C getProviderInstance(final Class<C> targetClass,
-        final Map<String, Class<?>> map, final Object metadata)
+    private static <C> C getProviderInstance(final MethodHandle handle,
+        final Object metadata)
         throws IOException
     {
-        final MethodHandle handle = getHandle(targetClass, map);
-
-        if (handle == null)
+        if (handle == UNSUPPORTED)
             return null;
 
         try {
@@ -313,39 +350,6 @@ public class FileAttributesFactory
         }
     }
 
-    @Nullable
-    private MethodHandle getHandle(final Class<?> c,
-        final Map<String, Class<?>> map)
-    {
-        MethodHandle ret = null;
-        Class<?> candidate, bestFit = null;
-        String name;
-
-        for (final Map.Entry<String, Class<?>> entry: map.entrySet()) {
-            name = entry.getKey();
-            candidate = entry.getValue();
-            /*
-             * Test if the candidate is a subclass of the requested class;
-             * if not, no luck, try next.
-             */
-            if (!c.isAssignableFrom(candidate))
-                continue;
-            /*
-             * OK, it is a subclass. Test this against the best candidate we
-             * have found for now, if any: if the new candidate is a superclass
-             * of our current best, it is our new current best.
-             */
-            if (bestFit == null || candidate.isAssignableFrom(bestFit)) {
-                if (!providers.containsKey(name))
-                    continue;
-                bestFit = candidate;
-                ret = providers.get(name);
-            }
-        }
-
-        return ret;
-    }
-
     private static void checkCasts(
         final Class<? extends FileAttributesProvider> providerClass,
         final AttributesDescriptor descriptor)
@@ -392,4 +396,90 @@ public class FileAttributesFactory
         final MethodType type = handle.type().changeReturnType(providerClass);
         return handle.asType(type);
     }
+
+    /*
+     * An immutable snapshot of the configuration of a factory, with the
+     * provider constructor resolved for each requested class
+     */
+    private static final class Resolution
+    {
+        private final Map<String, AttributesDescriptor> descriptors;
+        private final Map<String, MethodHandle> providers;
+        private final Resolver views;
+        private final Resolver attributes;
+
+        private Resolution(final Map<String, AttributesDescriptor> descriptors,
+            final Map<String, Class<?>> viewMap,
+            final Map<String, Class<?>> attrMap,
+            final Map<String, MethodHandle> providers)
+        {
+            this.descriptors = new HashMap<>(descriptors);
+            this.providers = new HashMap<>(providers);
+            views = new Resolver(viewMap, providers);
+            attributes = new Resolver(attrMap, providers);
+        }
+    }
+
+    /*
+     * Resolve the constructor of the provider to use for a view or attribute
+     * class; the result is computed once per requested class.
+     *
+     * Only classes with a registered implementation are candidates. Among
+     * those which are subclasses of the requested class, the first one which
+     * is a superclass of all others wins.
+     */
+    private static final class Resolver
+        extends ClassValue<MethodHandle>
+    {
+        private final Class<?>[] classes;
+        private final MethodHandle[] handles;
+
+        private Resolver(final Map<String, Class<?>> map,
+            final Map<String, MethodHandle> providers)
+        {
+            final List<Class<?>> classList = new ArrayList<>();
+            final List<MethodHandle> handleList = new ArrayList<>();
+
+            MethodHandle handle;
+
+            for (final Map.Entry<String, Class<?>> entry: map.entrySet()) {
+                handle = providers.get(entry.getKey());
+                if (handle == null)
+                    continue;
+                classList.add(entry.getValue());
+                handleList.add(handle);
+            }
+
+            classes = classList.toArray(new Class<?>[classList.size()]);
+            handles = handleList.toArray(new MethodHandle[handleList.size()]);
+        }
+
+        @Override
+        protected MethodHandle computeValue(final Class<?> type)
+        {
+            MethodHandle ret = UNSUPPORTED;
+            Class<?> candidate, bestFit = null;
+
+            for (int i = 0; i < classes.length; i++) {
+                candidate = classes[i];
+                /*
+                 * Test if the candidate is a subclass of the requested class;
+                 * if not, no luck, try next.
+                 */
+                if (!type.isAssignableFrom(candidate))
+                    continue;
+                /*
+                 * OK, it is a subclass. Test this against the best candidate
+                 * we have found for now, if any: if the new candidate is a
+                 * superclass of our current best, it is our new current best.
+                 */
+                if (bestFit == null || candidate.isAssignableFrom(bestFit)) {
+                    bestFit = candidate;
+                    ret = handles[i];
+                }
+            }
+
+            return ret;
+        }
+    }
 }
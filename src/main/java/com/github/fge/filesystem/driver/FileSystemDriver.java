@@ -31,15 +31,19 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AccessDeniedException;
 import java.nio.file.AccessMode;
 import java.nio.file.CopyOption;
 import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileStore;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.WatchService;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileAttribute;
@@ -271,6 +275,101 @@ public interface FileSystemDriver
     void checkAccess(Path path, AccessMode... modes)
         throws IOException;
 
+    /**
+     * Check access modes for a path on this filesystem, if it exists
+     *
+     * <p>This is the same as {@link #checkAccess(Path, AccessMode...)}, except
+     * that if the path does not exist, this method returns {@code false}
+     * instead of throwing a {@link NoSuchFileException}. It is used by {@link
+     * FileSystemProviderBase} when the path is expected not to exist, for
+     * instance before creating it; implementations should therefore not
+     * create an exception at all in this case.</p>
+     *
+     * @param path the path to check
+     * @param modes the modes to check for, if any
+     * @return true if the path exists and can be accessed with all given
+     * modes, false if it does not exist
+     * @throws IOException filesystem level error, or a plain I/O error; in
+     * particular, {@link AccessDeniedException} if the path exists but cannot
+     * be accessed with one of the given modes
+     *
+     * @see FileSystemDriverBase#checkAccessIfExists(Path, AccessMode...)
+     */
+    boolean checkAccessIfExists(Path path, AccessMode... modes)
+        throws IOException;
+
+    /**
+     * Tell whether this driver checks access to paths when opening or
+     * deleting them
+     *
+     * <p>If this method returns {@code true}, {@link FileSystemProviderBase}
+     * does not check access to a path before calling {@link
+     * #newInputStream(Path, Set)}, {@link #newOutputStream(Path, Set)} or
+     * {@link #delete(Path)}; this saves a round trip to the backend for each
+     * of these operations. These methods must then report errors using the
+     * same exceptions as the checks they replace:</p>
+     *
+     * <ul>
+     *     <li>{@link NoSuchFileException} if the path does not exist (for
+     *     {@code newOutputStream()}, only if {@link StandardOpenOption#CREATE}
+     *     and {@link StandardOpenOption#CREATE_NEW} are not set);</li>
+     *     <li>{@link FileAlreadyExistsException} if {@link
+     *     StandardOpenOption#CREATE_NEW} is set and the path exists;</li>
+     *     <li>{@link AccessDeniedException} if the path exists but cannot be
+     *     read from (input streams) or written to (output streams).</li>
+     * </ul>
+     *
+     * <p>The value returned by this method must not change over the lifetime
+     * of the driver.</p>
+     *
+     * @return true if this driver checks access by itself
+     *
+     * @see FileSystemDriverBase#performsAccessChecks()
+     */
+    boolean performsAccessChecks();
+
+    /**
+     * Read the target of a symbolic link on this filesystem
+     *
+     * <p>Unlike {@link FileSystemProvider#readSymbolicLink(Path)}, this method
+     * returns {@code null} if the path exists but is not a symbolic link. It
+     * is called for each name element when resolving a path with {@link
+     * Path#toRealPath(LinkOption...)}; the results are cached by the
+     * filesystem.</p>
+     *
+     * <p>The path is always absolute, and all of its ancestors are already
+     * resolved. The target may be relative, in which case it is resolved
+     * against the parent of the link.</p>
+     *
+     * @param path the path
+     * @return the target of the link, or {@code null} if the path is not a
+     * symbolic link
+     * @throws IOException filesystem level error, or a plain I/O error
+     *
+     * @see FileSystemProvider#readSymbolicLink(Path)
+     * @see GenericFileSystem#getResolvedPathCache()
+     */
+    @Nullable
+    Path getLinkTarget(Path path)
+        throws IOException;
+
+    /**
+     * Tell whether this filesystem supports symbolic links
+     *
+     * <p>If this method returns {@code false}, {@link
+     * #getLinkTarget(Path)} is never called, and paths are resolved without
+     * using the {@link GenericFileSystem#getResolvedPathCache() cache of
+     * resolved paths}.</p>
+     *
+     * <p>The value returned by this method must not change over the lifetime
+     * of the driver.</p>
+     *
+     * @return true if symbolic links are supported
+     *
+     * @see FileSystemDriverBase#supportsLinks()
+     */
+    boolean supportsLinks();
+
     /**
      * Read an attribute view for a given path on this filesystem
      *
@@ -349,4 +448,29 @@ public interface FileSystemDriver
     @Nonnull
     Object getPathMetadata(Path path)
         throws IOException;
+
+    /**
+     * Invalidate cached metadata for a path on this filesystem, if any
+     *
+     * <p>This is called by {@link FileSystemProviderBase} after an operation
+     * which may have modified a path, or created or removed it.</p>
+     *
+     * @param path the path
+     *
+     * @see PathMetadataCache
+     */
+    void invalidatePathMetadata(Path path);
+
+    /**
+     * Invalidate cached metadata for a path and all paths under it on this
+     * filesystem, if any
+     *
+     * <p>This is called by {@link FileSystemProviderBase} after a directory
+     * may have been moved or replaced.</p>
+     *
+     * @param path the path
+     *
+     * @see PathMetadataCache
+     */
+    void invalidateSubtreeMetadata(Path path);
 }
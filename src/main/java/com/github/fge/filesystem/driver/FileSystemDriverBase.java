@@ -20,8 +20,11 @@ package com.github.fge.filesystem.driver;
 
 import com.github.fge.filesystem.attributes.FileAttributesFactory;
 import com.github.fge.filesystem.attributes.provider.FileAttributesProvider;
+import com.github.fge.filesystem.fs.GenericFileSystem;
 import com.github.fge.filesystem.options.FileSystemOptionsFactory;
+import com.github.fge.filesystem.path.ResolvedPathCache;
 import com.github.fge.filesystem.provider.FileSystemFactoryProvider;
+import com.github.fge.filesystem.provider.FileSystemProviderBase;
 import com.github.fge.filesystem.exceptions.UncaughtIOException;
 
 import javax.annotation.Nonnull;
@@ -29,8 +32,11 @@ import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.io.IOException;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AccessMode;
 import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
 import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.WatchService;
@@ -56,7 +62,9 @@ import java.util.regex.Pattern;
  *     UnsupportedOperationException});</li>
  *     <li>no support for {@link SeekableByteChannel}s;</li>
  *     <li>{@link #isSameFile(Path, Path)} returns true if and only if both
- *     their absolute versions are {@link Object#equals(Object) equal}.</li>
+ *     their absolute versions are {@link Object#equals(Object) equal};</li>
+ *     <li>no support for symbolic links ({@link #getLinkTarget(Path)} always
+ *     returns {@code null}).</li>
  * </ul>
  *
  * @see UnixLikeFileSystemDriverBase
@@ -70,16 +78,37 @@ public abstract class FileSystemDriverBase
 
     private final FileStore fileStore;
     private final FileAttributesFactory attributesFactory;
+    private final PathMetadataCache metadataCache;
+    private final boolean supportsLinks;
 
     // Needed to translate copy options into read/write open options
     protected final FileSystemOptionsFactory optionsFactory;
 
     protected FileSystemDriverBase(final FileStore fileStore,
         final FileSystemFactoryProvider factoryProvider)
+    {
+        this(fileStore, factoryProvider, null);
+    }
+
+    /**
+     * Constructor with a metadata cache
+     *
+     * @param fileStore the file store
+     * @param factoryProvider the factory provider
+     * @param metadataCache the cache of path metadata; {@code null} if
+     * metadata should not be cached
+     *
+     * @see PathMetadataCache#fromEnv(Map)
+     */
+    protected FileSystemDriverBase(final FileStore fileStore,
+        final FileSystemFactoryProvider factoryProvider,
+        @Nullable final PathMetadataCache metadataCache)
     {
         attributesFactory = factoryProvider.getAttributesFactory();
         optionsFactory = factoryProvider.getOptionsFactory();
         this.fileStore = Objects.requireNonNull(fileStore);
+        this.metadataCache = metadataCache;
+        supportsLinks = overridesGetLinkTarget(getClass());
     }
 
     @Nonnull
@@ -89,6 +118,17 @@ public abstract class FileSystemDriverBase
         return fileStore;
     }
 
+    /**
+     * Return the cache of path metadata of this driver, if any
+     *
+     * @return the cache, or {@code null} if metadata is not cached
+     */
+    @Nullable
+    public final PathMetadataCache getMetadataCache()
+    {
+        return metadataCache;
+    }
+
     @SuppressWarnings("DesignForExtension")
     @Nonnull
     @Override
@@ -124,6 +164,85 @@ public abstract class FileSystemDriverBase
         return path.toAbsolutePath().equals(path2.toAbsolutePath());
     }
 
+    /**
+     * Read the target of a symbolic link
+     *
+     * <p>By default, symbolic links are not supported: this method always
+     * returns {@code null}.</p>
+     *
+     * @param path the path
+     * @return always {@code null}
+     * @throws IOException never thrown by this implementation
+     */
+    @SuppressWarnings("DesignForExtension")
+    @Nullable
+    @Override
+    public Path getLinkTarget(final Path path)
+        throws IOException
+    {
+        return null;
+    }
+
+    /**
+     * Tell whether this filesystem supports symbolic links
+     *
+     * <p>This implementation returns {@code true} if and only if {@link
+     * #getLinkTarget(Path)} is overridden.</p>
+     *
+     * @return see above
+     */
+    @SuppressWarnings("DesignForExtension")
+    @Override
+    public boolean supportsLinks()
+    {
+        return supportsLinks;
+    }
+
+    /**
+     * Check access modes for a path, if it exists
+     *
+     * <p>This implementation calls {@link #checkAccess(Path, AccessMode...)}
+     * and returns {@code false} if it throws a {@link NoSuchFileException}.
+     * Override it if your driver can tell that a path does not exist without
+     * creating an exception.</p>
+     *
+     * @param path the path to check
+     * @param modes the modes to check for, if any
+     * @return true if the path exists and can be accessed with all given
+     * modes, false if it does not exist
+     * @throws IOException see {@link #checkAccess(Path, AccessMode...)}
+     */
+    @SuppressWarnings("DesignForExtension")
+    @Override
+    public boolean checkAccessIfExists(final Path path,
+        final AccessMode... modes)
+        throws IOException
+    {
+        try {
+            checkAccess(path, modes);
+            return true;
+        } catch (NoSuchFileException ignored) {
+            return false;
+        }
+    }
+
+    /**
+     * Tell whether this driver checks access to paths when opening or
+     * deleting them
+     *
+     * <p>This implementation returns {@code false}: access is checked by
+     * {@link FileSystemProviderBase} before each of these operations.
+     * Override it if your backend performs these checks atomically.</p>
+     *
+     * @return false
+     */
+    @SuppressWarnings("DesignForExtension")
+    @Override
+    public boolean performsAccessChecks()
+    {
+        return false;
+    }
+
     @Override
     public final void setAttribute(final Path path, final String attribute,
         final Object value, final LinkOption... options)
@@ -149,7 +268,11 @@ public abstract class FileSystemDriverBase
         if (provider == null)
             throw new UnsupportedOperationException();
 
-        provider.setAttributeByName(name, value);
+        try {
+            provider.setAttributeByName(name, value);
+        } finally {
+            invalidatePathMetadata(path);
+        }
     }
 
     @Override
@@ -170,7 +293,7 @@ public abstract class FileSystemDriverBase
             names = attributes.substring(index + 1);
         }
 
-        final Object metadata = getPathMetadata(path.toRealPath(options));
+        final Object metadata = getMetadata(path.toRealPath(options));
 
         final FileAttributesProvider provider
             = attributesFactory.getProvider(type, metadata);
@@ -194,7 +317,7 @@ public abstract class FileSystemDriverBase
         final Path path, final Class<A> type, final LinkOption... options)
         throws IOException
     {
-        final Object metadata = getPathMetadata(path.toRealPath(options));
+        final Object metadata = getMetadata(path.toRealPath(options));
 
         return attributesFactory.getFileAttributes(type, metadata);
     }
@@ -206,10 +329,137 @@ public abstract class FileSystemDriverBase
     {
         final Object metadata;
         try {
-            metadata = getPathMetadata(path.toRealPath(options));
+            metadata = getMetadata(path.toRealPath(options));
             return attributesFactory.getFileAttributeView(type, metadata);
         } catch (IOException e) {
             throw new UncaughtIOException("Unhandled I/O exception", e);
         }
     }
+
+    /**
+     * Invalidate cached metadata for a path
+     *
+     * <p>This implementation removes the entry for the real path of the path
+     * from the {@link #getMetadataCache() metadata cache}, if any.</p>
+     *
+     * <p>Invalidation happens on every write, and must not make it slower: if
+     * the driver {@link #supportsLinks() supports symbolic links}, the path is
+     * only resolved using the entries of the {@link
+     * GenericFileSystem#getResolvedPathCache() cache of resolved paths} of its
+     * filesystem. If the path cannot be resolved this way, the real path of
+     * its parent, followed by its file name, is used; if the parent cannot be
+     * resolved either, the entries of its parent and all paths under it are
+     * removed instead.</p>
+     *
+     * @param path the path
+     */
+    @SuppressWarnings("DesignForExtension")
+    @Override
+    public void invalidatePathMetadata(final Path path)
+    {
+        if (metadataCache == null)
+            return;
+
+        final Path key = toMetadataKey(path);
+
+        if (key != null)
+            metadataCache.invalidate(key);
+        else
+            metadataCache.invalidateSubtree(lexicalParent(path));
+    }
+
+    /**
+     * Invalidate cached metadata for a path and all paths under it
+     *
+     * <p>This implementation removes the entries for the real path of the
+     * path, and all paths under it, from the {@link #getMetadataCache()
+     * metadata cache}, if any. The path is resolved as with {@link
+     * #invalidatePathMetadata(Path)}.</p>
+     *
+     * @param path the path
+     */
+    @SuppressWarnings("DesignForExtension")
+    @Override
+    public void invalidateSubtreeMetadata(final Path path)
+    {
+        if (metadataCache == null)
+            return;
+
+        final Path key = toMetadataKey(path);
+
+        metadataCache.invalidateSubtree(key != null ? key
+            : lexicalParent(path));
+    }
+
+    /*
+     * Get the key of a path in the metadata cache without calling the driver:
+     * its real path, or the real path of its parent followed by its file
+     * name; null if neither can be determined from the cache of resolved paths
+     */
+    @Nullable
+    private Path toMetadataKey(final Path path)
+    {
+        final Path absolute = path.toAbsolutePath().normalize();
+        final FileSystem fs = absolute.getFileSystem();
+
+        if (!supportsLinks() || !(fs instanceof GenericFileSystem))
+            return absolute;
+
+        final ResolvedPathCache cache
+            = ((GenericFileSystem) fs).getResolvedPathCache();
+        final Path ret = cache.getRealPath(absolute);
+
+        if (ret != null)
+            return ret;
+
+        final Path parent = absolute.getParent();
+
+        if (parent == null)
+            return absolute;
+
+        final Path realParent = cache.getRealPath(parent);
+
+        return realParent == null ? null
+            : realParent.resolve(absolute.getFileName());
+    }
+
+    private static Path lexicalParent(final Path path)
+    {
+        final Path absolute = path.toAbsolutePath().normalize();
+        final Path parent = absolute.getParent();
+
+        return parent == null ? absolute : parent;
+    }
+
+    /*
+     * Get the metadata of a real path, from the cache if possible
+     */
+    @Nonnull
+    private Object getMetadata(final Path realPath)
+        throws IOException
+    {
+        if (metadataCache == null)
+            return getPathMetadata(realPath);
+
+        Object metadata = metadataCache.get(realPath);
+
+        if (metadata != null)
+            return metadata;
+
+        final long generation = metadataCache.getGeneration();
+
+        metadata = getPathMetadata(realPath);
+        metadataCache.put(realPath, metadata, generation);
+        return metadata;
+    }
+
+    private static boolean overridesGetLinkTarget(final Class<?> c)
+    {
+        try {
+            return c.getMethod("getLinkTarget", Path.class)
+                .getDeclaringClass() != FileSystemDriverBase.class;
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
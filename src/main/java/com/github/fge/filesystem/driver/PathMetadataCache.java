@@ -0,0 +1,597 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.driver;
+
+import com.github.fge.filesystem.path.GenericPath;
+import com.github.fge.filesystem.path.PathSet;
+import com.github.fge.filesystem.provider.FileSystemProviderBase;
+import com.github.fge.filesystem.provider.FileSystemRepositoryBase;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.net.URI;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded cache of path metadata, used by {@link FileSystemDriverBase}
+ *
+ * <p>All attribute related methods of {@link FileSystemDriverBase} need the
+ * metadata of a path, as returned by {@link
+ * FileSystemDriver#getPathMetadata(Path)}; for remote filesystems, obtaining
+ * it is usually a network call. With this cache, metadata is only obtained
+ * again when its entry has expired, has been evicted, or has been
+ * invalidated.</p>
+ *
+ * <p>Entries expire after a fixed time to live. When the cache is full, an
+ * entry is evicted according to one of these policies:</p>
+ *
+ * <ul>
+ *     <li>{@link Eviction#LRU}: the least recently used entry;</li>
+ *     <li>{@link Eviction#TINY_LFU}: new entries go to a small LRU window;
+ *     an entry evicted from the window only replaces the least recently used
+ *     entry of the main area if it has been looked up more often. Lookup
+ *     frequencies are estimated using a count-min sketch, halved
+ *     periodically. This policy resists scans (such as walking a tree) much
+ *     better than LRU.</li>
+ * </ul>
+ *
+ * <p>{@link FileSystemProviderBase} invalidates entries when a path is
+ * written through it (output streams, byte channels, deletes, copies, moves,
+ * attribute changes); when a directory is moved or replaced, the entries of
+ * all paths under it are invalidated as well. Modifications made by other
+ * means are only seen once the entry expires.</p>
+ *
+ * <p>Keys are real paths, as returned by {@link
+ * Path#toRealPath(LinkOption...)}; only {@link GenericPath}s are cached.</p>
+ *
+ * <p>The cache is enabled for a filesystem using the {@link
+ * #MAX_ENTRIES_KEY}, {@link #TTL_KEY} and {@link #EVICTION_KEY} keys of
+ * the environment; see {@link #fromEnv(Map)}.</p>
+ *
+ * <p>This class is thread safe.</p>
+ */
+@ParametersAreNonnullByDefault
+public final class PathMetadataCache
+{
+    /**
+     * The environment key for the maximum number of entries
+     */
+    public static final String MAX_ENTRIES_KEY = "metadataCacheMaxEntries";
+
+    /**
+     * The environment key for the time to live of entries, in milliseconds
+     */
+    public static final String TTL_KEY = "metadataCacheTtl";
+
+    /**
+     * The environment key for the eviction policy ({@code lru} or {@code
+     * tinylfu})
+     */
+    public static final String EVICTION_KEY = "metadataCacheEviction";
+
+    /**
+     * The default maximum number of entries
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    /**
+     * The default time to live of entries, in milliseconds
+     */
+    public static final long DEFAULT_TTL = 5000L;
+
+    /**
+     * Eviction policies
+     */
+    public enum Eviction
+    {
+        LRU,
+        TINY_LFU
+    }
+
+    /*
+     * With TINY_LFU, the percentage of entries in the window
+     */
+    private static final int WINDOW_PERCENT = 1;
+
+    private final int maxEntries;
+    private final long ttl;
+    private final Eviction eviction;
+
+    private final Map<Path, Entry> window;
+    private final int windowCapacity;
+    private final Map<Path, Entry> main;
+    private final FrequencySketch sketch;
+
+    /*
+     * The keys of both areas, for invalidating subtrees
+     */
+    private final PathSet keys = new PathSet();
+
+    private long hits = 0L;
+    private long misses = 0L;
+    private long evictions = 0L;
+
+    /*
+     * Incremented on each invalidation; metadata obtained before an
+     * invalidation is not stored
+     */
+    private long generation = 0L;
+
+    /**
+     * Create a cache from a filesystem environment
+     *
+     * <p>The cache is enabled if at least one of {@link #MAX_ENTRIES_KEY} or
+     * {@link #TTL_KEY} is present; values may be numbers or strings. Missing
+     * values are replaced with {@link #DEFAULT_MAX_ENTRIES}, {@link
+     * #DEFAULT_TTL} and {@link Eviction#LRU} respectively.</p>
+     *
+     * @param env the environment
+     * @return a cache, or {@code null} if the cache is not enabled
+     * @throws IllegalArgumentException illegal value for one of the keys
+     *
+     * @see FileSystemRepositoryBase#createDriver(URI, Map)
+     */
+    @Nullable
+    public static PathMetadataCache fromEnv(final Map<String, ?> env)
+    {
+        final Object maxEntries = env.get(MAX_ENTRIES_KEY);
+        final Object ttl = env.get(TTL_KEY);
+        final Object eviction = env.get(EVICTION_KEY);
+
+        if (maxEntries == null && ttl == null)
+            return null;
+
+        return new PathMetadataCache(
+            (int) toLong(MAX_ENTRIES_KEY, maxEntries, DEFAULT_MAX_ENTRIES),
+            toLong(TTL_KEY, ttl, DEFAULT_TTL), TimeUnit.MILLISECONDS,
+            toEviction(eviction));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxEntries the maximum number of entries
+     * @param ttl the time to live of entries
+     * @param unit the time unit of {@code ttl}
+     * @param eviction the eviction policy
+     * @throws IllegalArgumentException the maximum number of entries or the
+     * time to live is not strictly positive
+     */
+    public PathMetadataCache(final int maxEntries, final long ttl,
+        final TimeUnit unit, final Eviction eviction)
+    {
+        if (maxEntries <= 0)
+            throw new IllegalArgumentException("maximum number of entries "
+                + "must be strictly positive");
+        if (ttl <= 0L)
+            throw new IllegalArgumentException("time to live must be strictly "
+                + "positive");
+
+        this.maxEntries = maxEntries;
+        this.ttl = unit.toNanos(ttl);
+        this.eviction = Objects.requireNonNull(eviction);
+
+        window = new LinkedHashMap<>(16, 0.75f, true);
+        main = new LinkedHashMap<>(16, 0.75f, true);
+
+        if (eviction == Eviction.TINY_LFU) {
+            windowCapacity = Math.max(1, maxEntries * WINDOW_PERCENT / 100);
+            sketch = new FrequencySketch(maxEntries);
+        } else {
+            windowCapacity = 0;
+            sketch = null;
+        }
+    }
+
+    /**
+     * Return the maximum number of entries
+     *
+     * @return the maximum number of entries
+     */
+    public int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    /**
+     * Return the eviction policy
+     *
+     * @return the eviction policy
+     */
+    public Eviction getEviction()
+    {
+        return eviction;
+    }
+
+    /**
+     * Invalidate the entry for a path, if any
+     *
+     * @param path the path; it must be a real path
+     */
+    public synchronized void invalidate(final Path path)
+    {
+        remove(path);
+        generation++;
+    }
+
+    /**
+     * Invalidate the entries for a path and all paths under it
+     *
+     * @param path the path; it must be a real path
+     */
+    public synchronized void invalidateSubtree(final Path path)
+    {
+        for (final Path key: keys.getSubtree(path)) {
+            window.remove(key);
+            main.remove(key);
+        }
+        keys.removeSubtree(path);
+        generation++;
+    }
+
+    /**
+     * Invalidate all entries of this cache
+     */
+    public synchronized void invalidateAll()
+    {
+        window.clear();
+        main.clear();
+        keys.clear();
+        generation++;
+    }
+
+    /**
+     * Return the number of entries in this cache
+     *
+     * <p>Expired entries are counted until they are looked up again or
+     * evicted.</p>
+     *
+     * @return the number of entries
+     */
+    public synchronized int size()
+    {
+        return window.size() + main.size();
+    }
+
+    /**
+     * Return the number of lookups which found a valid entry
+     *
+     * @return the number of hits
+     */
+    public synchronized long getHitCount()
+    {
+        return hits;
+    }
+
+    /**
+     * Return the number of lookups which found no valid entry
+     *
+     * @return the number of misses
+     */
+    public synchronized long getMissCount()
+    {
+        return misses;
+    }
+
+    /**
+     * Return the number of entries evicted because the cache was full
+     *
+     * <p>With {@link Eviction#TINY_LFU}, this includes new entries which have
+     * not been admitted in the main area.</p>
+     *
+     * @return the number of evictions
+     */
+    public synchronized long getEvictionCount()
+    {
+        return evictions;
+    }
+
+    @Nullable
+    synchronized Object get(final Path path)
+    {
+        if (sketch != null)
+            sketch.increment(path);
+
+        Map<Path, Entry> map = window;
+        Entry entry = window.get(path);
+
+        if (entry == null) {
+            map = main;
+            entry = main.get(path);
+        }
+
+        if (entry != null && entry.expiry - System.nanoTime() <= 0L) {
+            map.remove(path);
+            keys.remove(path);
+            entry = null;
+        }
+
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+
+        hits++;
+        return entry.metadata;
+    }
+
+    synchronized long getGeneration()
+    {
+        return generation;
+    }
+
+    synchronized void put(final Path path, final Object metadata,
+        final long expectedGeneration)
+    {
+        if (generation != expectedGeneration)
+            return;
+
+        if (!(path instanceof GenericPath))
+            return;
+
+        final Entry entry = new Entry(metadata, System.nanoTime() + ttl);
+
+        if (main.containsKey(path)) {
+            main.put(path, entry);
+            return;
+        }
+
+        keys.add(path);
+
+        if (sketch == null) {
+            main.put(path, entry);
+            if (main.size() > maxEntries) {
+                keys.remove(removeEldest(main).getKey());
+                evictions++;
+            }
+            return;
+        }
+
+        window.put(path, entry);
+
+        if (window.size() <= windowCapacity)
+            return;
+
+        /*
+         * The eldest entry of the window is a candidate for the main area; if
+         * the main area is full, it only replaces the eldest entry there if it
+         * is used more frequently
+         */
+        final Map.Entry<Path, Entry> candidate = removeEldest(window);
+        final int mainCapacity = maxEntries - windowCapacity;
+
+        if (main.size() < mainCapacity) {
+            main.put(candidate.getKey(), candidate.getValue());
+            return;
+        }
+
+        evictions++;
+
+        final Path victim = mainCapacity == 0 ? null
+            : main.keySet().iterator().next();
+
+        if (victim != null && sketch.frequency(candidate.getKey())
+            > sketch.frequency(victim)) {
+            remove(victim);
+            main.put(candidate.getKey(), candidate.getValue());
+        } else
+            keys.remove(candidate.getKey());
+    }
+
+    private void remove(final Path path)
+    {
+        window.remove(path);
+        main.remove(path);
+        keys.remove(path);
+    }
+
+    private static Map.Entry<Path, Entry> removeEldest(
+        final Map<Path, Entry> map)
+    {
+        final Iterator<Map.Entry<Path, Entry>> iterator
+            = map.entrySet().iterator();
+        final Map.Entry<Path, Entry> ret = iterator.next();
+
+        iterator.remove();
+        return ret;
+    }
+
+    private static long toLong(final String key, @Nullable final Object value,
+        final long defaultValue)
+    {
+        if (value == null)
+            return defaultValue;
+
+        if (value instanceof Number)
+            return ((Number) value).longValue();
+
+        if (value instanceof String)
+            try {
+                return Long.parseLong((String) value);
+            } catch (NumberFormatException ignored) {
+                // Fall through
+            }
+
+        throw new IllegalArgumentException("illegal value for " + key + ": "
+            + value);
+    }
+
+    private static Eviction toEviction(@Nullable final Object value)
+    {
+        if (value == null)
+            return Eviction.LRU;
+
+        if (value instanceof Eviction)
+            return (Eviction) value;
+
+        switch (value.toString().toLowerCase(Locale.ENGLISH)) {
+            case "lru":
+                return Eviction.LRU;
+            case "tinylfu":
+                return Eviction.TINY_LFU;
+            default:
+                throw new IllegalArgumentException("illegal value for "
+                    + EVICTION_KEY + ": " + value);
+        }
+    }
+
+    private static final class Entry
+    {
+        private final Object metadata;
+        private final long expiry;
+
+        private Entry(final Object metadata, final long expiry)
+        {
+            this.metadata = metadata;
+            this.expiry = expiry;
+        }
+    }
+
+    /*
+     * A count-min sketch of 4 rows of counters, saturating at 15; all counters
+     * are halved once the number of increments reaches 10 times the maximum
+     * number of entries, so that old lookups count less than recent ones
+     *
+     * The first lookup of a path is only recorded in a "doorkeeper" Bloom
+     * filter, cleared at the same time as the counters are halved; the
+     * counters only record further lookups. Without it, the counters of
+     * frequently used paths are saturated by those of a scan of paths looked
+     * up only once.
+     */
+    private static final class FrequencySketch
+    {
+        private static final int ROWS = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {
+            0x9e3779b9, 0x85ebca6b, 0xc2b2ae35, 0x27d4eb2f
+        };
+
+        private final byte[][] counters;
+        private final int shift;
+        private final long[] doorkeeper;
+        private final int doorkeeperShift;
+        private final int sampleSize;
+        private int increments = 0;
+
+        private FrequencySketch(final int maxEntries)
+        {
+            /*
+             * Four counters per entry and row
+             */
+            final int width = Integer.highestOneBit(
+                Math.max(maxEntries, 16) - 1) << 2;
+
+            counters = new byte[ROWS][width];
+            shift = Integer.numberOfLeadingZeros(width) + 1;
+            sampleSize = 10 * maxEntries;
+
+            /*
+             * Between four and eight bits per sampled path, for two bits set
+             * per path
+             */
+            final int bits = Integer.highestOneBit(sampleSize - 1) << 3;
+
+            doorkeeper = new long[Math.max(1, bits >>> 6)];
+            doorkeeperShift = Integer.numberOfLeadingZeros(bits) + 1;
+        }
+
+        private void increment(final Path path)
+        {
+            final int hash = spread(path.hashCode());
+
+            if (++increments == sampleSize)
+                reset();
+
+            if (!addToDoorkeeper(hash))
+                return;
+
+            int index;
+
+            for (int row = 0; row < ROWS; row++) {
+                index = hash * SEEDS[row] >>> shift;
+                if (counters[row][index] < MAX_COUNT)
+                    counters[row][index]++;
+            }
+        }
+
+        private int frequency(final Path path)
+        {
+            final int hash = spread(path.hashCode());
+            int ret = MAX_COUNT;
+
+            for (int row = 0; row < ROWS; row++)
+                ret = Math.min(ret,
+                    counters[row][hash * SEEDS[row] >>> shift]);
+
+            return doorkeeperContains(hash) ? ret + 1 : ret;
+        }
+
+        /*
+         * Return true if the hash was already in the doorkeeper
+         */
+        private boolean addToDoorkeeper(final int hash)
+        {
+            final boolean ret = doorkeeperContains(hash);
+            final int bit1 = hash * SEEDS[0] >>> doorkeeperShift;
+            final int bit2 = hash * SEEDS[1] >>> doorkeeperShift;
+
+            doorkeeper[bit1 >>> 6] |= 1L << bit1;
+            doorkeeper[bit2 >>> 6] |= 1L << bit2;
+            return ret;
+        }
+
+        private boolean doorkeeperContains(final int hash)
+        {
+            final int bit1 = hash * SEEDS[0] >>> doorkeeperShift;
+            final int bit2 = hash * SEEDS[1] >>> doorkeeperShift;
+
+            return (doorkeeper[bit1 >>> 6] & 1L << bit1) != 0L
+                && (doorkeeper[bit2 >>> 6] & 1L << bit2) != 0L;
+        }
+
+        /*
+         * Hash codes of paths which differ only by their last name element
+         * differ only in their low bits; mix all bits, so that the high bits
+         * of the product with a seed can be used as an index
+         */
+        private static int spread(final int hash)
+        {
+            int h = (hash ^ hash >>> 16) * 0x85ebca6b;
+            h = (h ^ h >>> 13) * 0xc2b2ae35;
+            return h ^ h >>> 16;
+        }
+
+        private void reset()
+        {
+            for (final byte[] row: counters)
+                for (int i = 0; i < row.length; i++)
+                    row[i] >>= 1;
+            Arrays.fill(doorkeeper, 0L);
+            increments /= 2;
+        }
+    }
+}
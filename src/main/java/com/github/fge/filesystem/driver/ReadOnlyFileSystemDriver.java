@@ -211,6 +211,34 @@ public final class ReadOnlyFileSystemDriver
         delegate.checkAccess(path, modes);
     }
 
+    @Override
+    public boolean checkAccessIfExists(final Path path,
+        final AccessMode... modes)
+        throws IOException
+    {
+        return delegate.checkAccessIfExists(path, modes);
+    }
+
+    @Override
+    public boolean performsAccessChecks()
+    {
+        return delegate.performsAccessChecks();
+    }
+
+    @Override
+    public boolean supportsLinks()
+    {
+        return delegate.supportsLinks();
+    }
+
+    @Nullable
+    @Override
+    public Path getLinkTarget(final Path path)
+        throws IOException
+    {
+        return delegate.getLinkTarget(path);
+    }
+
     @Override
     @Nullable
     public <V extends FileAttributeView> V getFileAttributeView(final Path path,
@@ -243,6 +271,18 @@ public final class ReadOnlyFileSystemDriver
         return delegate.getPathMetadata(path);
     }
 
+    @Override
+    public void invalidatePathMetadata(final Path path)
+    {
+        delegate.invalidatePathMetadata(path);
+    }
+
+    @Override
+    public void invalidateSubtreeMetadata(final Path path)
+    {
+        delegate.invalidateSubtreeMetadata(path);
+    }
+
     @Override
     public void close()
         throws IOException
@@ -21,17 +21,25 @@ package com.github.fge.filesystem.fs;
 import com.github.fge.filesystem.attributes.FileAttributesFactory;
 import com.github.fge.filesystem.provider.FileSystemFactoryProvider;
 import com.github.fge.filesystem.driver.FileSystemDriver;
+import com.github.fge.filesystem.path.AbsentPathCache;
 import com.github.fge.filesystem.path.GenericPath;
+import com.github.fge.filesystem.path.PathBuilder;
 import com.github.fge.filesystem.path.PathElements;
 import com.github.fge.filesystem.path.PathElementsFactory;
+import com.github.fge.filesystem.path.ResolvedPathCache;
+import com.github.fge.filesystem.path.SegmentInterner;
+import com.github.fge.filesystem.path.matchers.GlobFinder;
 import com.github.fge.filesystem.path.matchers.PathMatcherFactory;
 import com.github.fge.filesystem.provider.FileSystemRepository;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileStore;
 import java.nio.file.FileSystem;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
 import java.nio.file.WatchService;
@@ -39,9 +47,12 @@ import java.nio.file.attribute.UserPrincipalLookupService;
 import java.nio.file.spi.FileSystemProvider;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * Generic {@link FileSystem} implementation
@@ -71,6 +82,9 @@ public final class GenericFileSystem
     private final PathMatcherFactory pathMatcherFactory;
     private final FileAttributesFactory attributesFactory;
 
+    private final ResolvedPathCache resolvedPathCache;
+    private final AbsentPathCache absentPathCache;
+
 
     /**
      * Constructor
@@ -84,14 +98,89 @@ public final class GenericFileSystem
         final FileSystemRepository repository,
         final FileSystemDriver driver, final FileSystemProvider provider)
     {
+        this(uri, repository, driver, provider,
+            repository.getFactoryProvider().getPathElementsFactory());
+    }
+
+    /**
+     * Constructor with a specific path elements factory
+     *
+     * <p>The other factories are still those of the repository's {@link
+     * FileSystemFactoryProvider factory provider}.</p>
+     *
+     * @param uri the filesystem URI
+     * @param repository the filesystem repository
+     * @param driver the filesystem driver
+     * @param provider the filesystem provider
+     * @param pathElementsFactory the path elements factory
+     *
+     * @see FileSystemFactoryProvider#getPathElementsFactory(Map)
+     */
+    public GenericFileSystem(final URI uri,
+        final FileSystemRepository repository,
+        final FileSystemDriver driver, final FileSystemProvider provider,
+        final PathElementsFactory pathElementsFactory)
+    {
+        this(uri, repository, driver, provider, pathElementsFactory, null);
+    }
+
+    /**
+     * Constructor with a specific path elements factory and a cache of absent
+     * paths
+     *
+     * @param uri the filesystem URI
+     * @param repository the filesystem repository
+     * @param driver the filesystem driver
+     * @param provider the filesystem provider
+     * @param pathElementsFactory the path elements factory
+     * @param absentPathCache the cache of absent paths; {@code null} if absent
+     * paths should not be cached
+     *
+     * @see AbsentPathCache#fromEnv(Map)
+     */
+    public GenericFileSystem(final URI uri,
+        final FileSystemRepository repository,
+        final FileSystemDriver driver, final FileSystemProvider provider,
+        final PathElementsFactory pathElementsFactory,
+        @Nullable final AbsentPathCache absentPathCache)
+    {
+        this(uri, repository, driver, provider, pathElementsFactory,
+            absentPathCache, new ResolvedPathCache());
+    }
+
+    /**
+     * Constructor with a specific path elements factory, a cache of absent
+     * paths and a cache of resolved paths
+     *
+     * @param uri the filesystem URI
+     * @param repository the filesystem repository
+     * @param driver the filesystem driver
+     * @param provider the filesystem provider
+     * @param pathElementsFactory the path elements factory
+     * @param absentPathCache the cache of absent paths; {@code null} if absent
+     * paths should not be cached
+     * @param resolvedPathCache the cache of resolved paths
+     *
+     * @see AbsentPathCache#fromEnv(Map)
+     * @see ResolvedPathCache#fromEnv(Map)
+     */
+    public GenericFileSystem(final URI uri,
+        final FileSystemRepository repository,
+        final FileSystemDriver driver, final FileSystemProvider provider,
+        final PathElementsFactory pathElementsFactory,
+        @Nullable final AbsentPathCache absentPathCache,
+        final ResolvedPathCache resolvedPathCache)
+    {
+        this.absentPathCache = absentPathCache;
+        this.resolvedPathCache = Objects.requireNonNull(resolvedPathCache);
         this.uri = Objects.requireNonNull(uri);
         this.repository = Objects.requireNonNull(repository);
         this.driver = Objects.requireNonNull(driver);
         this.provider = Objects.requireNonNull(provider);
+        this.pathElementsFactory = Objects.requireNonNull(pathElementsFactory);
 
         final FileSystemFactoryProvider factoryProvider
             = repository.getFactoryProvider();
-        pathElementsFactory = factoryProvider.getPathElementsFactory();
         separator = pathElementsFactory.getSeparator();
         pathMatcherFactory = factoryProvider.getPathMatcherFactory();
         attributesFactory = factoryProvider.getAttributesFactory();
@@ -109,6 +198,51 @@ public final class GenericFileSystem
         return driver;
     }
 
+    @Nonnull
+    public PathElementsFactory getPathElementsFactory()
+    {
+        return pathElementsFactory;
+    }
+
+    /**
+     * Return the name element interner of this filesystem, if any
+     *
+     * @return the interner, or {@code null} if name elements are not interned
+     *
+     * @see SegmentInterner#ENV_KEY
+     */
+    @Nullable
+    public SegmentInterner getSegmentInterner()
+    {
+        return pathElementsFactory.getSegmentInterner();
+    }
+
+    /**
+     * Return the cache of resolved paths of this filesystem
+     *
+     * @return the cache
+     *
+     * @see Path#toRealPath(java.nio.file.LinkOption...)
+     */
+    @Nonnull
+    public ResolvedPathCache getResolvedPathCache()
+    {
+        return resolvedPathCache;
+    }
+
+    /**
+     * Return the cache of absent paths of this filesystem, if any
+     *
+     * @return the cache, or {@code null} if absent paths are not cached
+     *
+     * @see AbsentPathCache#ENV_KEY
+     */
+    @Nullable
+    public AbsentPathCache getAbsentPathCache()
+    {
+        return absentPathCache;
+    }
+
     @Override
     public FileSystemProvider provider()
     {
@@ -186,21 +320,67 @@ public final class GenericFileSystem
     @Override
     public Path getPath(final String first, final String... more)
     {
-        if (more.length == 0)
-            return new GenericPath(this, pathElementsFactory,
-                pathElementsFactory.toPathElements(first));
+        final PathElements elements
+            = pathElementsFactory.toPathElements(first, more);
+        return new GenericPath(this, pathElementsFactory, elements);
+    }
 
-        final StringBuilder sb = new StringBuilder(first);
+    /**
+     * Return the path of this filesystem matching a URI
+     *
+     * <p>This is the reverse operation of {@link Path#toUri()}. The URI must
+     * have the same scheme and authority as the URI of this filesystem, and
+     * its path must start with the path of the URI of this filesystem; the
+     * rest of the URI path is converted directly, without looking up the
+     * filesystem again. The query and fragment, if any, are ignored.</p>
+     *
+     * @param uri the URI
+     * @return the path
+     * @throws IllegalArgumentException the URI is not a URI of this filesystem
+     * @throws InvalidPathException one name element is invalid
+     *
+     * @see PathElementsFactory#fromUriPath(String)
+     */
+    @Nonnull
+    public Path getPath(final URI uri)
+    {
+        if (!Objects.equals(this.uri.getScheme(), uri.getScheme())
+            || !Objects.equals(this.uri.getRawAuthority(),
+            uri.getRawAuthority()))
+            throw new IllegalArgumentException("URI does not match this "
+                + "filesystem");
 
-        for (final String s: more)
-            if (!s.isEmpty())
-                sb.append(separator).append(s);
+        final String prefix = pathOf(this.uri);
+        final String path = pathOf(uri);
+        int end = prefix.length();
+
+        while (end > 0 && prefix.charAt(end - 1) == '/')
+            end--;
+
+        if (!path.startsWith(prefix.substring(0, end))
+            || path.length() > end && path.charAt(end) != '/')
+            throw new IllegalArgumentException("URI does not match this "
+                + "filesystem");
 
         final PathElements elements
-            = pathElementsFactory.toPathElements(sb.toString());
+            = pathElementsFactory.fromUriPath(path.substring(end));
         return new GenericPath(this, pathElementsFactory, elements);
     }
 
+    /**
+     * Return a builder for paths of this filesystem
+     *
+     * <p>Prefer this method over {@link #getPath(String, String...)} when name
+     * elements are already split.</p>
+     *
+     * @return a new builder, starting from an empty path
+     */
+    @Nonnull
+    public PathBuilder newPathBuilder()
+    {
+        return new PathBuilder(this);
+    }
+
     @Override
     public PathMatcher getPathMatcher(final String syntaxAndPattern)
     {
@@ -219,6 +399,26 @@ public final class GenericFileSystem
         return pathMatcherFactory.getPathMatcher(type, arg);
     }
 
+    /**
+     * Find all paths of this filesystem matching a glob pattern
+     *
+     * <p>Only directories in which a path can match the glob are listed, in
+     * parallel, using the given executor; matching paths are returned as soon
+     * as they are found. See {@link GlobFinder} for details.</p>
+     *
+     * @param glob the glob pattern
+     * @param executor the executor to list directories with
+     * @return a stream of matching paths; the search starts when its iterator
+     * is first asked for a result
+     * @throws PatternSyntaxException the glob is invalid
+     */
+    @Nonnull
+    public DirectoryStream<Path> find(final String glob,
+        final Executor executor)
+    {
+        return new GlobFinder(this, glob, executor);
+    }
+
     @Override
     public UserPrincipalLookupService getUserPrincipalLookupService()
     {
@@ -231,4 +431,10 @@ public final class GenericFileSystem
     {
         return driver.newWatchService();
     }
+
+    private static String pathOf(final URI uri)
+    {
+        final String path = uri.getPath();
+        return path == null ? "" : path;
+    }
 }
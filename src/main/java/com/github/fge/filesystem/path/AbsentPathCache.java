@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.path;
+
+import com.github.fge.filesystem.provider.FileSystemProviderBase;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.nio.file.AccessMode;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A short lived cache of paths known not to exist
+ *
+ * <p>Before creating a path ({@link FileSystemProviderBase#createDirectory(
+ * Path, java.nio.file.attribute.FileAttribute[]) directories}, output streams,
+ * copy targets), {@link FileSystemProviderBase} checks whether it exists, and
+ * in the common case gets a {@link NoSuchFileException}. This cache records
+ * such paths for a short time, so that probing them again, or probing any of
+ * their descendants, does not need a call to the driver: a path is known to
+ * be absent if itself or one of its ancestors is.</p>
+ *
+ * <p>Entries are removed when the provider creates a path (the path and all
+ * of its ancestors then exist, and paths under it may exist if it is a moved
+ * or copied directory), and added when it deletes or moves one. Paths
+ * created by other means are only seen once the entry has expired; the time
+ * to live should therefore be short.</p>
+ *
+ * <p>Entries are stored in a {@link PathMap}, so both operations are
+ * O(depth) of the path, whatever the number of entries. Only {@link
+ * GenericPath}s are recorded.</p>
+ *
+ * <p>The cache is enabled for a filesystem using the {@link #ENV_KEY} key of
+ * its environment; see {@link #fromEnv(Map)}.</p>
+ *
+ * <p>This class is thread safe.</p>
+ *
+ * @see FileSystemProviderBase#checkAccess(Path, AccessMode...)
+ */
+@ParametersAreNonnullByDefault
+public final class AbsentPathCache
+{
+    /**
+     * The environment key for the time to live of entries, in milliseconds
+     */
+    public static final String ENV_KEY = "absentPathTtl";
+
+    /**
+     * The default maximum number of entries
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final long ttl;
+    private final int capacity;
+
+    /*
+     * Paths, and when their entry expires; and the same paths, in order of
+     * insertion (and therefore of expiry)
+     */
+    private final PathMap<Long> map = new PathMap<>();
+    private final Set<Path> keys = new LinkedHashSet<>();
+
+    private long hits = 0L;
+
+    /*
+     * Incremented when a path is created; a probe started before a creation
+     * does not record its path as absent
+     */
+    private long generation = 0L;
+
+    /**
+     * Create a cache from a filesystem environment
+     *
+     * <p>The value of {@link #ENV_KEY} is a time to live in milliseconds, as a
+     * number or a string.</p>
+     *
+     * @param env the environment
+     * @return a cache, or {@code null} if the key is not present
+     * @throws IllegalArgumentException illegal value for {@link #ENV_KEY}
+     */
+    @Nullable
+    public static AbsentPathCache fromEnv(final Map<String, ?> env)
+    {
+        final Object value = env.get(ENV_KEY);
+
+        if (value == null)
+            return null;
+
+        if (value instanceof Number)
+            return new AbsentPathCache(((Number) value).longValue(),
+                TimeUnit.MILLISECONDS, DEFAULT_CAPACITY);
+
+        if (value instanceof String)
+            try {
+                return new AbsentPathCache(Long.parseLong((String) value),
+                    TimeUnit.MILLISECONDS, DEFAULT_CAPACITY);
+            } catch (NumberFormatException ignored) {
+                // Fall through
+            }
+
+        throw new IllegalArgumentException("illegal value for " + ENV_KEY
+            + ": " + value);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param ttl the time to live of entries
+     * @param unit the time unit of {@code ttl}
+     * @param capacity the maximum number of entries; the oldest entries are
+     * evicted first
+     * @throws IllegalArgumentException the time to live or the capacity is
+     * not strictly positive
+     */
+    public AbsentPathCache(final long ttl, final TimeUnit unit,
+        final int capacity)
+    {
+        if (ttl <= 0L)
+            throw new IllegalArgumentException("time to live must be strictly "
+                + "positive");
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be strictly "
+                + "positive");
+
+        this.ttl = unit.toNanos(ttl);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Tell whether a path, or one of its ancestors, is known not to exist
+     *
+     * @param path the path
+     * @return true if the path is known not to exist
+     */
+    public synchronized boolean isAbsent(final Path path)
+    {
+        if (map.isEmpty())
+            return false;
+
+        final long now = System.nanoTime();
+
+        for (final Map.Entry<Path, Long> entry:
+            map.getAncestors(normalize(path))) {
+            if (entry.getValue() - now > 0L) {
+                hits++;
+                return true;
+            }
+            remove(entry.getKey());
+        }
+
+        return false;
+    }
+
+    /**
+     * Record that a path does not exist
+     *
+     * @param path the path
+     */
+    public synchronized void absent(final Path path)
+    {
+        final Path key = normalize(path);
+
+        if (!(key instanceof GenericPath))
+            return;
+
+        // Re-insert, so that entries stay ordered by expiry
+        keys.remove(key);
+        keys.add(key);
+        map.put(key, System.nanoTime() + ttl);
+
+        final Iterator<Path> iterator = keys.iterator();
+        Path eldest;
+
+        while (keys.size() > capacity) {
+            eldest = iterator.next();
+            iterator.remove();
+            map.remove(eldest);
+        }
+    }
+
+    /**
+     * Return the current generation of this cache
+     *
+     * <p>Pass it to {@link #absent(Path, long)} when the existence check is
+     * done.</p>
+     *
+     * @return the generation
+     */
+    public synchronized long getGeneration()
+    {
+        return generation;
+    }
+
+    /**
+     * Record that a path does not exist, unless a path has been created since
+     * the existence check started
+     *
+     * @param path the path
+     * @param expectedGeneration the generation when the check started
+     *
+     * @see #getGeneration()
+     */
+    public synchronized void absent(final Path path,
+        final long expectedGeneration)
+    {
+        if (generation == expectedGeneration)
+            absent(path);
+    }
+
+    /**
+     * Record that a path has been created
+     *
+     * <p>The path, all of its ancestors and all paths under it are removed
+     * from this cache: the path may be a directory which has been moved or
+     * copied, and which may contain paths previously found to be absent.</p>
+     *
+     * @param path the path
+     */
+    public synchronized void created(final Path path)
+    {
+        generation++;
+
+        if (map.isEmpty())
+            return;
+
+        final Path key = normalize(path);
+
+        for (final Map.Entry<Path, Long> entry: map.getAncestors(key))
+            remove(entry.getKey());
+
+        for (final Map.Entry<Path, Long> entry: map.getSubtree(key))
+            keys.remove(entry.getKey());
+        map.removeSubtree(key);
+    }
+
+    /**
+     * Invalidate all entries of this cache
+     */
+    public synchronized void invalidate()
+    {
+        map.clear();
+        keys.clear();
+        generation++;
+    }
+
+    /**
+     * Return the number of entries in this cache
+     *
+     * @return the number of entries, including expired ones which have not
+     * been removed yet
+     */
+    public synchronized int size()
+    {
+        return map.size();
+    }
+
+    /**
+     * Return the number of paths found to be absent by this cache
+     *
+     * <p>This is the number of existence checks which did not need a call to
+     * the driver.</p>
+     *
+     * @return the number of hits
+     */
+    public synchronized long getHitCount()
+    {
+        return hits;
+    }
+
+    private void remove(final Path path)
+    {
+        map.remove(path);
+        keys.remove(path);
+    }
+
+    private static Path normalize(final Path path)
+    {
+        return path.toAbsolutePath().normalize();
+    }
+}
@@ -0,0 +1,611 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.path;
+
+import com.github.fge.filesystem.fs.GenericFileSystem;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * A compact store for a large set of paths of one filesystem
+ *
+ * <p>Paths are not kept as objects. Each distinct name element is stored once,
+ * UTF-8 encoded, and given an integer ID; paths are then stored as a trie of
+ * (parent, name ID) nodes, held in primitive arrays. Paths sharing a common
+ * prefix share the nodes for this prefix; a path costs a few tens of bytes at
+ * most, however deep it is.</p>
+ *
+ * <p>Lookups ({@link #contains(Path)}, {@link #containsPrefix(Path)}) work
+ * directly on the encoded form; {@link Path} instances are only created when
+ * iterating over the store.</p>
+ *
+ * <p>Strings are parsed, and root components are handled, using the {@link
+ * PathElementsFactory} of the filesystem. Name elements must be well-formed
+ * UTF-16 (that is, have no unpaired surrogates).</p>
+ *
+ * <p>Paths cannot be removed from a store. This class is not thread safe.</p>
+ */
+@ParametersAreNonnullByDefault
+public final class CompactPathStore
+    implements Iterable<Path>
+{
+    private static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final GenericFileSystem fs;
+    private final PathElementsFactory factory;
+
+    /*
+     * Root components, and their matching node
+     */
+    private final List<String> roots = new ArrayList<>();
+    private final Map<String, Integer> rootNodes = new HashMap<>();
+
+    /*
+     * Name elements: UTF-8 bytes of name i are at offsets[i] (inclusive) to
+     * offsets[i + 1] (exclusive) in the pool; the table is an open addressing
+     * hash table of name IDs.
+     */
+    private byte[] namePool = new byte[16 * INITIAL_CAPACITY];
+    private int[] nameOffsets = new int[INITIAL_CAPACITY + 1];
+    private int[] nameHashes = new int[INITIAL_CAPACITY];
+    private int[] nameTable = newTable(2 * INITIAL_CAPACITY);
+    private int nameCount = 0;
+
+    /*
+     * Nodes: for root nodes, the parent is NONE and the name is the index of
+     * the root component. Non root nodes are in an open addressing hash table
+     * keyed by (parent, name).
+     */
+    private int[] parents = new int[INITIAL_CAPACITY];
+    private int[] names = new int[INITIAL_CAPACITY];
+    private int[] firstChildren = new int[INITIAL_CAPACITY];
+    private int[] nextSiblings = new int[INITIAL_CAPACITY];
+    private int[] nodeTable = newTable(2 * INITIAL_CAPACITY);
+    private int nodeCount = 0;
+
+    /*
+     * Nodes which are paths of this store
+     */
+    private final BitSet members = new BitSet();
+    private int size = 0;
+
+    /**
+     * Constructor
+     *
+     * @param fs the filesystem of the paths in this store
+     */
+    public CompactPathStore(final GenericFileSystem fs)
+    {
+        this.fs = Objects.requireNonNull(fs);
+        factory = fs.getPathElementsFactory();
+    }
+
+    /**
+     * Return the number of paths in this store
+     *
+     * @return the number of paths
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Add a path to this store
+     *
+     * @param path the path
+     * @return true if the path was not already in the store
+     * @throws IllegalArgumentException the path is not issued from the
+     * filesystem of this store
+     */
+    public boolean add(final Path path)
+    {
+        final PathElements elements = elementsOf(path);
+
+        if (elements == null)
+            throw new IllegalArgumentException("path is not from the "
+                + "filesystem of this store");
+
+        return add(elements);
+    }
+
+    /**
+     * Add a path to this store, from its string representation
+     *
+     * @param path the path as a string
+     * @return true if the path was not already in the store
+     */
+    public boolean add(final String path)
+    {
+        return add(factory.toPathElements(path));
+    }
+
+    /**
+     * Tell whether a path is in this store
+     *
+     * @param path the path
+     * @return true if the path is in this store
+     */
+    public boolean contains(final Path path)
+    {
+        final PathElements elements = elementsOf(path);
+        if (elements == null)
+            return false;
+        final int node = find(elements);
+        return node != NONE && members.get(node);
+    }
+
+    /**
+     * Tell whether a path is in this store, from its string representation
+     *
+     * @param path the path as a string
+     * @return true if the path is in this store
+     */
+    public boolean contains(final String path)
+    {
+        final int node = find(factory.toPathElements(path));
+        return node != NONE && members.get(node);
+    }
+
+    /**
+     * Tell whether at least one path of this store starts with a given path
+     *
+     * <p>A path starts with itself.</p>
+     *
+     * @param prefix the prefix
+     * @return true if a path of this store starts with this prefix
+     *
+     * @see Path#startsWith(Path)
+     */
+    public boolean containsPrefix(final Path prefix)
+    {
+        final PathElements elements = elementsOf(prefix);
+        /*
+         * Since paths are never removed, all nodes lead to at least one path
+         */
+        return elements != null && find(elements) != NONE;
+    }
+
+    /**
+     * Return all paths of this store starting with a given path
+     *
+     * <p>Paths are created as the returned iterable is iterated over; this
+     * store must not be modified while iterating.</p>
+     *
+     * @param prefix the prefix
+     * @return the matching paths, in no particular order
+     */
+    @Nonnull
+    public Iterable<Path> withPrefix(final Path prefix)
+    {
+        final PathElements elements = elementsOf(prefix);
+        final int node = elements == null ? NONE : find(elements);
+
+        return new Iterable<Path>()
+        {
+            @Override
+            public Iterator<Path> iterator()
+            {
+                return new SubtreeIterator(node);
+            }
+        };
+    }
+
+    /**
+     * Return an iterator over all paths of this store
+     *
+     * <p>Paths are created as needed; this store must not be modified while
+     * iterating.</p>
+     *
+     * @return an iterator, in no particular order
+     */
+    @Override
+    public Iterator<Path> iterator()
+    {
+        return new Iterator<Path>()
+        {
+            private int next = members.nextSetBit(0);
+
+            @Override
+            public boolean hasNext()
+            {
+                return next != NONE;
+            }
+
+            @Override
+            public Path next()
+            {
+                if (next == NONE)
+                    throw new NoSuchElementException();
+                final int node = next;
+                next = members.nextSetBit(node + 1);
+                return toPath(node);
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Return an estimate of the memory used by this store, in bytes
+     *
+     * <p>This accounts for the arrays used by the store, including their
+     * unused capacity.</p>
+     *
+     * @return the estimated size
+     */
+    public long getEstimatedSize()
+    {
+        long ret = namePool.length;
+        ret += 4L * (nameOffsets.length + nameHashes.length + nameTable.length);
+        ret += 4L * (parents.length + names.length + firstChildren.length
+            + nextSiblings.length + nodeTable.length);
+        ret += members.size() / 8;
+        return ret;
+    }
+
+    @Nullable
+    private PathElements elementsOf(final Path path)
+    {
+        if (!(path instanceof GenericPath))
+            return null;
+        if (path.getFileSystem() != fs)
+            return null;
+        return ((GenericPath) path).elements;
+    }
+
+    private boolean add(final PathElements elements)
+    {
+        final String root = elements.root;
+        final Integer rootNode = rootNodes.get(root);
+
+        int node;
+
+        if (rootNode != null) {
+            node = rootNode;
+        } else {
+            roots.add(root);
+            node = newNode(NONE, roots.size() - 1);
+            rootNodes.put(root, node);
+        }
+
+        int name;
+
+        for (final String s: elements.names()) {
+            final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            final int hash = s.hashCode();
+            name = findName(bytes, hash);
+            if (name == NONE)
+                name = newName(bytes, hash);
+            final int child = findChild(node, name);
+            node = child != NONE ? child : newChild(node, name);
+        }
+
+        if (members.get(node))
+            return false;
+
+        members.set(node);
+        size++;
+        return true;
+    }
+
+    private int find(final PathElements elements)
+    {
+        final Integer rootNode = rootNodes.get(elements.root);
+
+        if (rootNode == null)
+            return NONE;
+
+        int node = rootNode;
+        int name;
+
+        for (final String s: elements.names()) {
+            name = findName(s.getBytes(StandardCharsets.UTF_8), s.hashCode());
+            if (name == NONE)
+                return NONE;
+            node = findChild(node, name);
+            if (node == NONE)
+                return NONE;
+        }
+
+        return node;
+    }
+
+    @Nonnull
+    private Path toPath(final int node)
+    {
+        int depth = 0;
+        int current = node;
+
+        while (parents[current] != NONE) {
+            depth++;
+            current = parents[current];
+        }
+
+        final String root = roots.get(names[current]);
+        final String[] array = new String[depth];
+
+        current = node;
+
+        for (int i = depth - 1; i >= 0; i--) {
+            array[i] = nameAt(names[current]);
+            current = parents[current];
+        }
+
+        return new GenericPath(fs, factory, new PathElements(root, array));
+    }
+
+    /*
+     * Names
+     */
+
+    private int findName(final byte[] bytes, final int hash)
+    {
+        final int mask = nameTable.length - 1;
+
+        int index = mix(hash) & mask;
+        int name;
+
+        while ((name = nameTable[index]) != NONE) {
+            if (nameHashes[name] == hash && nameEquals(name, bytes))
+                return name;
+            index = index + 1 & mask;
+        }
+
+        return NONE;
+    }
+
+    private boolean nameEquals(final int name, final byte[] bytes)
+    {
+        final int offset = nameOffsets[name];
+        final int length = nameOffsets[name + 1] - offset;
+
+        if (length != bytes.length)
+            return false;
+
+        for (int i = 0; i < length; i++)
+            if (namePool[offset + i] != bytes[i])
+                return false;
+
+        return true;
+    }
+
+    private int newName(final byte[] bytes, final int hash)
+    {
+        final int name = nameCount;
+
+        if (name + 1 == nameOffsets.length) {
+            nameOffsets = Arrays.copyOf(nameOffsets, 2 * name + 1);
+            nameHashes = Arrays.copyOf(nameHashes, 2 * name);
+        }
+
+        final int offset = nameOffsets[name];
+        final int end = offset + bytes.length;
+
+        if (end > namePool.length)
+            namePool = Arrays.copyOf(namePool,
+                Math.max(2 * namePool.length, end));
+
+        System.arraycopy(bytes, 0, namePool, offset, bytes.length);
+        nameOffsets[name + 1] = end;
+        nameHashes[name] = hash;
+        nameCount++;
+
+        if (2 * nameCount > nameTable.length)
+            rehashNames();
+        else
+            insert(nameTable, mix(hash), name);
+
+        return name;
+    }
+
+    private void rehashNames()
+    {
+        nameTable = newTable(2 * nameTable.length);
+
+        for (int name = 0; name < nameCount; name++)
+            insert(nameTable, mix(nameHashes[name]), name);
+    }
+
+    @Nonnull
+    private String nameAt(final int name)
+    {
+        final int offset = nameOffsets[name];
+        return new String(namePool, offset, nameOffsets[name + 1] - offset,
+            StandardCharsets.UTF_8);
+    }
+
+    /*
+     * Nodes
+     */
+
+    private int findChild(final int parent, final int name)
+    {
+        final int mask = nodeTable.length - 1;
+
+        int index = mix(parent, name) & mask;
+        int node;
+
+        while ((node = nodeTable[index]) != NONE) {
+            if (parents[node] == parent && names[node] == name)
+                return node;
+            index = index + 1 & mask;
+        }
+
+        return NONE;
+    }
+
+    private int newChild(final int parent, final int name)
+    {
+        final int node = newNode(parent, name);
+
+        nextSiblings[node] = firstChildren[parent];
+        firstChildren[parent] = node;
+
+        if (2 * nodeCount > nodeTable.length)
+            rehashNodes();
+        else
+            insert(nodeTable, mix(parent, name), node);
+
+        return node;
+    }
+
+    private int newNode(final int parent, final int name)
+    {
+        final int node = nodeCount;
+
+        if (node == parents.length) {
+            final int capacity = 2 * node;
+            parents = Arrays.copyOf(parents, capacity);
+            names = Arrays.copyOf(names, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+        }
+
+        parents[node] = parent;
+        names[node] = name;
+        firstChildren[node] = NONE;
+        nextSiblings[node] = NONE;
+        nodeCount++;
+
+        return node;
+    }
+
+    private void rehashNodes()
+    {
+        nodeTable = newTable(2 * nodeTable.length);
+
+        for (int node = 0; node < nodeCount; node++)
+            if (parents[node] != NONE)
+                insert(nodeTable, mix(parents[node], names[node]), node);
+    }
+
+    /*
+     * Hash tables
+     */
+
+    @Nonnull
+    private static int[] newTable(final int capacity)
+    {
+        final int[] ret = new int[capacity];
+        Arrays.fill(ret, NONE);
+        return ret;
+    }
+
+    private static void insert(final int[] table, final int hash,
+        final int value)
+    {
+        final int mask = table.length - 1;
+
+        int index = hash & mask;
+
+        while (table[index] != NONE)
+            index = index + 1 & mask;
+
+        table[index] = value;
+    }
+
+    private static int mix(final int hash)
+    {
+        final int h = hash * 0x9e3779b9;
+        return h ^ h >>> 16;
+    }
+
+    private static int mix(final int parent, final int name)
+    {
+        return mix(31 * parent + name);
+    }
+
+    /*
+     * Depth first traversal of the subtree of a node
+     */
+    private final class SubtreeIterator
+        implements Iterator<Path>
+    {
+        private int[] stack = new int[16];
+        private int depth = 0;
+        private int next;
+
+        private SubtreeIterator(final int node)
+        {
+            if (node != NONE)
+                stack[depth++] = node;
+            next = advance();
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return next != NONE;
+        }
+
+        @Override
+        public Path next()
+        {
+            if (next == NONE)
+                throw new NoSuchElementException();
+            final int node = next;
+            next = advance();
+            return toPath(node);
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        private int advance()
+        {
+            int node;
+
+            while (depth > 0) {
+                node = stack[--depth];
+                for (int child = firstChildren[node]; child != NONE;
+                    child = nextSiblings[child]) {
+                    if (depth == stack.length)
+                        stack = Arrays.copyOf(stack, 2 * depth);
+                    stack[depth++] = child;
+                }
+                if (members.get(node))
+                    return node;
+            }
+
+            return NONE;
+        }
+    }
+}
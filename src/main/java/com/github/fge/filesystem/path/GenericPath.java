@@ -18,6 +18,7 @@
 
 package com.github.fge.filesystem.path;
 
+import com.github.fge.filesystem.driver.FileSystemDriver;
 import com.github.fge.filesystem.fs.GenericFileSystem;
 
 import javax.annotation.Nonnull;
@@ -26,16 +27,20 @@ import javax.annotation.ParametersAreNonnullByDefault;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
-import java.net.URISyntaxException;
 import java.nio.file.FileSystem;
+import java.nio.file.FileSystemException;
+import java.nio.file.InvalidPathException;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.ProviderMismatchException;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -63,12 +68,31 @@ import java.util.Objects;
 public final class GenericPath
     implements Path
 {
+    /*
+     * The maximum number of symbolic links followed by toRealPath(), as on
+     * Linux
+     */
+    private static final int MAX_LINKS = 40;
+
     private final GenericFileSystem fs;
 
     private final PathElementsFactory factory;
     // visible for testing
     final PathElements elements;
-    private final String asString;
+
+    /*
+     * Both computed on first use. No lock is taken: as for String's own hash
+     * code, two threads may compute the same value concurrently, which is
+     * harmless. A hash code of 0 means it has not been computed yet.
+     */
+    private String asString;
+    private int hashCode;
+
+    /*
+     * Also computed on first use; volatile since, unlike strings, URI
+     * instances are not safe to publish without synchronization.
+     */
+    private volatile URI uri;
 
     /**
      * Constructor
@@ -83,7 +107,6 @@ public final class GenericPath
         this.fs = Objects.requireNonNull(fs);
         this.factory = Objects.requireNonNull(factory);
         this.elements = Objects.requireNonNull(elements);
-        asString = factory.toString(elements);
     }
 
     @Override
@@ -92,6 +115,12 @@ public final class GenericPath
         return fs;
     }
 
+    @Nonnull
+    PathElementsFactory getFactory()
+    {
+        return factory;
+    }
+
     @Override
     public boolean isAbsolute()
     {
@@ -123,7 +152,7 @@ public final class GenericPath
     @Override
     public int getNameCount()
     {
-        return elements.names.length;
+        return elements.size();
     }
 
     @Override
@@ -133,7 +162,7 @@ public final class GenericPath
 
         //noinspection ProhibitedExceptionCaught
         try {
-            name = elements.names[index];
+            name = elements.names()[index];
         } catch (ArrayIndexOutOfBoundsException e) {
             throw new IllegalArgumentException("illegal index " + index, e);
         }
@@ -144,19 +173,20 @@ public final class GenericPath
     @Override
     public Path subpath(final int beginIndex, final int endIndex)
     {
-        final String[] names;
-
-        //noinspection ProhibitedExceptionCaught
-        try {
-            names = Arrays.copyOfRange(elements.names, beginIndex, endIndex);
-        } catch (ArrayIndexOutOfBoundsException e) {
-            throw new IllegalArgumentException("invalid begin and/or end index",
-                e);
-        }
-
-        // The result never has a root
-        final PathElements newNames = new PathElements(null, names);
-        return new GenericPath(fs, factory, newNames);
+        final int size = elements.size();
+
+        if (beginIndex < 0 || endIndex > size || beginIndex > endIndex)
+            throw new IllegalArgumentException(
+                "invalid begin and/or end index");
+
+        // The result never has a root; if this path has none, and the
+        // subpath begins at the first name, the elements can be shared
+        final PathElements newNames = beginIndex == 0 && elements.root == null
+            ? elements.ancestor(endIndex)
+            : new PathElements(null, Arrays.copyOfRange(elements.names(),
+                beginIndex, endIndex));
+        return newNames == elements ? this
+            : new GenericPath(fs, factory, newNames);
     }
 
     @Override
@@ -168,11 +198,13 @@ public final class GenericPath
         final PathElements otherNames = ((GenericPath) other).elements;
         if (!Objects.equals(elements.root, otherNames.root))
             return false;
-        final int len = otherNames.names.length;
-        if (len > elements.names.length)
+        final String[] names = elements.names();
+        final String[] prefix = otherNames.names();
+        final int len = prefix.length;
+        if (len > names.length)
             return false;
         for (int i = 0; i < len; i++)
-            if (!elements.names[i].equals(otherNames.names[i]))
+            if (!names[i].equals(prefix[i]))
                 return false;
         return true;
     }
@@ -197,9 +229,9 @@ public final class GenericPath
         if (otherElements.root != null)
             return false;
 
-        final String[] names = elements.names;
+        final String[] names = elements.names();
         final int length = names.length;
-        final String[] otherNames = otherElements.names;
+        final String[] otherNames = otherElements.names();
         final int otherLength = otherNames.length;
 
         if (length < otherLength)
@@ -256,6 +288,49 @@ public final class GenericPath
         return resolve(new GenericPath(fs, factory, otherElements));
     }
 
+    /**
+     * Return a child of this path
+     *
+     * <p>The argument must be exactly one name element; unlike {@link
+     * #resolve(String)}, it is not parsed, only checked for validity. The
+     * result shares the elements of this path.</p>
+     *
+     * @param name the name of the child
+     * @return the child path
+     * @throws InvalidPathException the name is not a valid name element
+     *
+     * @see PathElementsFactory#appendName(PathElements, String)
+     */
+    @Nonnull
+    public Path resolveChild(final String name)
+    {
+        return new GenericPath(fs, factory, factory.appendName(elements, name));
+    }
+
+    /**
+     * Return children of this path
+     *
+     * <p>This is meant for drivers listing directory entries: the children
+     * are created as with {@link #resolveChild(String)}, that is without
+     * parsing their names and with no copy of this path's elements; their
+     * string representations are not computed until needed.</p>
+     *
+     * @param names the names of the children
+     * @return a new list of child paths, in the order of the names
+     * @throws InvalidPathException one name is not a valid name element
+     */
+    @Nonnull
+    public List<Path> resolveChildren(final Collection<String> names)
+    {
+        final List<Path> ret = new ArrayList<>(names.size());
+
+        for (final String name: names)
+            ret.add(new GenericPath(fs, factory,
+                factory.appendName(elements, name)));
+
+        return ret;
+    }
+
     @Override
     public Path resolveSibling(final Path other)
     {
@@ -296,23 +371,27 @@ public final class GenericPath
         return new GenericPath(fs, factory, relativized);
     }
 
+    /**
+     * Return a URI representing this path
+     *
+     * <p>The URI is computed on first use, then cached.</p>
+     *
+     * @return the URI
+     *
+     * @see PathElementsFactory#appendRawUriPath(StringBuilder, String,
+     * PathElements)
+     */
     @Override
     public URI toUri()
     {
-        // URI is normalized, so this works...
-        final URI base = fs.getUri();
-        final String scheme = base.getScheme();
-        final String authority = base.getAuthority();
-        final String path = base.getPath();
-        final String query = base.getQuery();
-        final String fragment = base.getFragment();
-        final String uriPath = factory.toUriPath(path, elements);
-        try {
-            return new URI(scheme, authority, uriPath, query, fragment)
-                .normalize();
-        } catch (URISyntaxException e) {
-            throw new RuntimeException("How did I get there??", e);
+        URI ret = uri;
+
+        if (ret == null) {
+            ret = buildUri();
+            uri = ret;
         }
+
+        return ret;
     }
 
     @Override
@@ -324,13 +403,52 @@ public final class GenericPath
         return new GenericPath(fs, factory, factory.resolve(root, elements));
     }
 
+    /**
+     * Return the real path of this path
+     *
+     * <p>This path is made absolute, then its name elements are resolved one
+     * after the other: self tokens are skipped, parent tokens go back to the
+     * parent of the path resolved so far, and other names are appended to it,
+     * then checked for being symbolic links using {@link
+     * FileSystemDriver#getLinkTarget(Path)}. Results are cached in the {@link
+     * GenericFileSystem#getResolvedPathCache() resolved path cache} of the
+     * filesystem.</p>
+     *
+     * <p>If {@link LinkOption#NOFOLLOW_LINKS} is specified, or if the driver
+     * does not {@link FileSystemDriver#supportsLinks() support symbolic
+     * links}, the result is the normalized absolute path.</p>
+     *
+     * <p>Note that this method does not check that the path exists; this is
+     * left to the driver.</p>
+     *
+     * @param options the link options
+     * @return the real path
+     * @throws FileSystemException too many levels of symbolic links
+     * @throws IOException filesystem level error, or a plain I/O error
+     */
     @SuppressWarnings("OverloadedVarargsMethod")
     @Override
     public Path toRealPath(final LinkOption... options)
         throws IOException
     {
-        // TODO: symlinks
-        return toAbsolutePath();
+        final GenericPath absolute = (GenericPath) toAbsolutePath();
+
+        for (final LinkOption option: options)
+            if (option == LinkOption.NOFOLLOW_LINKS)
+                return absolute.normalize();
+
+        if (!fs.getDriver().supportsLinks())
+            return absolute.normalize();
+
+        final ResolvedPathCache cache = fs.getResolvedPathCache();
+        final long generation = cache.getGeneration();
+        final int[] linksLeft = { MAX_LINKS };
+
+        final PathElements real = resolveLinks(absolute.elements.ancestor(0),
+            absolute.elements.names(), cache, generation, linksLeft);
+
+        return real.equals(elements) ? this
+            : new GenericPath(fs, factory, real);
     }
 
     @Override
@@ -386,6 +504,33 @@ public final class GenericPath
         };
     }
 
+    /**
+     * Compare this path to another path
+     *
+     * <p>Paths are compared by their root component, then name element by
+     * name element, without building their string representations:</p>
+     *
+     * <ul>
+     *     <li>a path without a root component sorts before a path with one;
+     *     </li>
+     *     <li>root components, then name elements, are compared using {@link
+     *     String#compareTo(String)};</li>
+     *     <li>a path sorts before all paths which {@link #startsWith(Path)
+     *     start with} it.</li>
+     * </ul>
+     *
+     * <p>Note that this is not the order of the string representations: for
+     * instance, {@code a/b} sorts before {@code a-b}. The filesystem is not
+     * taken into account: two paths with the same root component and name
+     * elements compare as equal even if they are issued from different
+     * filesystems.</p>
+     *
+     * @param other the other path
+     * @return see {@link Comparable#compareTo(Object)}
+     * @throws ClassCastException the other path is not from the same provider
+     *
+     * @see #getSortKey()
+     */
     @Override
     public int compareTo(final Path other)
     {
@@ -395,13 +540,67 @@ public final class GenericPath
             // Meh. Required by the contract.
             throw new ClassCastException();
         }
-        return asString.compareTo(other.toString());
+
+        if (!(other instanceof GenericPath))
+            throw new ClassCastException();
+
+        return PathElements.compare(elements, ((GenericPath) other).elements);
+    }
+
+    /**
+     * Return a key to sort paths with
+     *
+     * <p>The returned strings, compared with {@link String#compareTo(String)},
+     * sort in the same order as their paths compared with {@link
+     * #compareTo(Path)}.</p>
+     *
+     * <p>This is meant for sorting large numbers of paths: each key is
+     * computed once, independently of other paths (and therefore possibly in
+     * parallel), instead of comparing paths O(n log n) times. Keys are not
+     * meant to be displayed, and are not cached.</p>
+     *
+     * @return the sort key
+     */
+    @Nonnull
+    public String getSortKey()
+    {
+        /*
+         * A name element is preceded by U+0000, which sorts before all other
+         * characters; this makes a path sort before its children. In names
+         * and the root, U+0000 and U+0001 are escaped as U+0001 followed by
+         * U+0001 and U+0002 respectively, which preserves their order. The key
+         * starts with U+0000 if there is no root, U+0001 otherwise.
+         */
+        final String[] names = elements.names();
+        final String root = elements.root;
+        final StringBuilder sb = new StringBuilder();
+
+        if (root == null) {
+            sb.append('\u0000');
+        } else {
+            sb.append('\u0001');
+            appendEscaped(sb, root);
+        }
+
+        for (final String name: names) {
+            sb.append('\u0000');
+            appendEscaped(sb, name);
+        }
+
+        return sb.toString();
     }
 
     @Override
     public int hashCode()
     {
-        return Objects.hash(fs, factory, elements);
+        int ret = hashCode;
+
+        if (ret == 0) {
+            ret = Objects.hash(fs, factory, elements);
+            hashCode = ret;
+        }
+
+        return ret;
     }
 
     @Override
@@ -414,6 +613,8 @@ public final class GenericPath
         if (getClass() != obj.getClass())
             return false;
         final GenericPath other = (GenericPath) obj;
+        if (hashCode != 0 && other.hashCode != 0 && hashCode != other.hashCode)
+            return false;
         return fs.equals(other.fs)
             && factory.equals(other.factory)
             && elements.equals(other.elements);
@@ -423,7 +624,107 @@ public final class GenericPath
     @Nonnull
     public String toString()
     {
-        return asString;
+        String ret = asString;
+
+        if (ret == null) {
+            ret = factory.toString(elements);
+            asString = ret;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Return the string representation of this path as separate components
+     *
+     * <p>The components are the root component, if any, and the name
+     * elements, with the appropriate separators in between; joining them
+     * yields {@link #toString()}. This allows to process the string
+     * representation of a path name element by name element, without building
+     * it.</p>
+     *
+     * @return a new array of components; empty for an empty path
+     */
+    @Nonnull
+    public String[] getStringComponents()
+    {
+        return factory.toStringComponents(elements);
+    }
+
+    /*
+     * The URI string is built directly, in its encoded form, from the (already
+     * encoded and normalized) filesystem URI and this path's elements
+     */
+    @Nonnull
+    private URI buildUri()
+    {
+        final URI base = fs.getUri();
+        final String authority = base.getRawAuthority();
+        final String query = base.getRawQuery();
+        final String fragment = base.getRawFragment();
+
+        final StringBuilder sb = new StringBuilder();
+
+        sb.append(base.getScheme()).append(':');
+        if (authority != null)
+            sb.append("//").append(authority);
+        factory.appendRawUriPath(sb, base.getRawPath(), elements);
+        if (query != null)
+            sb.append('?').append(query);
+        if (fragment != null)
+            sb.append('#').append(fragment);
+
+        return URI.create(sb.toString());
+    }
+
+    /*
+     * Resolve names against an already resolved path; linksLeft is the number
+     * of links which can still be followed, shared by all recursive calls
+     */
+    @Nonnull
+    private PathElements resolveLinks(final PathElements start,
+        final String[] names, final ResolvedPathCache cache,
+        final long generation, final int[] linksLeft)
+        throws IOException
+    {
+        final FileSystemDriver driver = fs.getDriver();
+
+        PathElements ret = start;
+        GenericPath candidate;
+        PathElements resolved;
+        PathElements targetElements;
+        Path target;
+
+        for (final String name: names) {
+            if (factory.isSelf(name))
+                continue;
+            if (factory.isParent(name)) {
+                if (ret.size() > 0)
+                    ret = ret.ancestor(ret.size() - 1);
+                continue;
+            }
+            candidate = new GenericPath(fs, factory, ret.child(name));
+            resolved = cache.get(candidate);
+            if (resolved == null) {
+                target = driver.getLinkTarget(candidate);
+                if (target == null) {
+                    resolved = candidate.elements;
+                } else {
+                    if (--linksLeft[0] < 0)
+                        throw new FileSystemException(toString(), null,
+                            "too many levels of symbolic links");
+                    checkProvider(target);
+                    targetElements = ((GenericPath) target).elements;
+                    resolved = resolveLinks(factory.isAbsolute(targetElements)
+                        ? targetElements.ancestor(0) : ret,
+                        targetElements.names(), cache, generation, linksLeft);
+                }
+                cache.put(candidate, resolved, generation);
+            }
+            ret = resolved;
+        }
+
+        return ret;
     }
 
     private void checkProvider(final Path other)
@@ -431,4 +732,18 @@ public final class GenericPath
         if (!fs.provider().equals(other.getFileSystem().provider()))
             throw new ProviderMismatchException();
     }
+
+    private static void appendEscaped(final StringBuilder sb, final String s)
+    {
+        final int len = s.length();
+        char c;
+
+        for (int i = 0; i < len; i++) {
+            c = s.charAt(i);
+            if (c > '\u0001')
+                sb.append(c);
+            else
+                sb.append('\u0001').append((char) (c + 1));
+        }
+    }
 }
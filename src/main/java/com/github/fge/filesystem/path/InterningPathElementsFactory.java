@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.path;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Objects;
+
+/**
+ * A {@link PathElementsFactory} composition implementation interning the name
+ * elements of parsed paths
+ *
+ * @see PathElementsFactory#withInterner(SegmentInterner)
+ */
+@ParametersAreNonnullByDefault
+final class InterningPathElementsFactory
+    extends PathElementsFactory
+{
+    private final PathElementsFactory delegate;
+    private final SegmentInterner interner;
+
+    InterningPathElementsFactory(final PathElementsFactory delegate,
+        final SegmentInterner interner)
+    {
+        super(delegate);
+        this.delegate = delegate;
+        this.interner = Objects.requireNonNull(interner);
+    }
+
+    @Nonnull
+    @Override
+    public SegmentInterner getSegmentInterner()
+    {
+        return interner;
+    }
+
+    @Nonnull
+    @Override
+    protected PathElements parse(final String path)
+    {
+        return intern(delegate.parse(path));
+    }
+
+    @Nonnull
+    @Override
+    protected PathElements parse(final String first, final String[] more)
+    {
+        return intern(delegate.parse(first, more));
+    }
+
+    @Override
+    protected String[] rootAndNames(final String path)
+    {
+        return delegate.rootAndNames(path);
+    }
+
+    @Override
+    protected String[] splitNames(final String names)
+    {
+        return delegate.splitNames(names);
+    }
+
+    @Override
+    protected boolean isValidName(final String name)
+    {
+        return delegate.isValidName(name);
+    }
+
+    @Override
+    protected boolean isSelf(final String name)
+    {
+        return delegate.isSelf(name);
+    }
+
+    @Override
+    protected boolean isParent(final String name)
+    {
+        return delegate.isParent(name);
+    }
+
+    @Override
+    protected boolean isAbsolute(final PathElements pathElements)
+    {
+        return delegate.isAbsolute(pathElements);
+    }
+
+    @Override
+    public PathElements getRootPathElements()
+    {
+        return delegate.getRootPathElements();
+    }
+
+    @Nonnull
+    private PathElements intern(final PathElements elements)
+    {
+        final String[] names = elements.names();
+        final int size = names.length;
+
+        String[] interned = null;
+        String name;
+
+        for (int i = 0; i < size; i++) {
+            name = interner.intern(names[i]);
+            //noinspection StringEquality
+            if (name == names[i])
+                continue;
+            // Do not modify the delegate's array, it may be shared
+            if (interned == null)
+                interned = names.clone();
+            interned[i] = name;
+        }
+
+        return interned == null ? elements
+            : new PathElements(elements.root, interned);
+    }
+}
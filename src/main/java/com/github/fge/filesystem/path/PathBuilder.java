@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.path;
+
+import com.github.fge.filesystem.fs.GenericFileSystem;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.util.Objects;
+
+/**
+ * A builder for paths made of already split name elements
+ *
+ * <p>Unlike {@link GenericFileSystem#getPath(String, String...)}, name
+ * elements given to this builder are not parsed: each of them must be exactly
+ * one name element, and is only checked for validity, once, when appended.
+ * </p>
+ *
+ * <p>Building a path does not reset the builder, and paths built successively
+ * share their common name elements; this makes it cheap to build many paths
+ * with a common prefix:</p>
+ *
+ * <pre>
+ *     final PathBuilder builder = fs.newPathBuilder().root().name(bucket);
+ *     final PathBuilder day = builder.copy().name(date);
+ *
+ *     for (final String shard: shards)
+ *         paths.add(day.copy().name(shard).name(file).build());
+ * </pre>
+ *
+ * <p>This class is not thread safe.</p>
+ *
+ * @see PathElementsFactory#appendName(PathElements, String)
+ */
+@ParametersAreNonnullByDefault
+public final class PathBuilder
+{
+    private final GenericFileSystem fs;
+    private final PathElementsFactory factory;
+
+    private PathElements elements;
+
+    /**
+     * Constructor for an empty path
+     *
+     * @param fs the filesystem
+     */
+    public PathBuilder(final GenericFileSystem fs)
+    {
+        this(fs, fs.getPathElementsFactory(), PathElements.EMPTY);
+    }
+
+    /**
+     * Constructor starting from an existing path
+     *
+     * @param path the path
+     * @throws ProviderMismatchException path is not a {@link GenericPath}
+     */
+    public PathBuilder(final Path path)
+    {
+        if (!(path instanceof GenericPath))
+            throw new ProviderMismatchException();
+
+        final GenericPath genericPath = (GenericPath) path;
+        fs = (GenericFileSystem) genericPath.getFileSystem();
+        factory = genericPath.getFactory();
+        elements = genericPath.elements;
+    }
+
+    private PathBuilder(final GenericFileSystem fs,
+        final PathElementsFactory factory, final PathElements elements)
+    {
+        this.fs = Objects.requireNonNull(fs);
+        this.factory = factory;
+        this.elements = elements;
+    }
+
+    /**
+     * Restart from the root path of the filesystem
+     *
+     * @return this
+     *
+     * @see PathElementsFactory#getRootPathElements()
+     */
+    @Nonnull
+    public PathBuilder root()
+    {
+        elements = factory.getRootPathElements();
+        return this;
+    }
+
+    /**
+     * Restart from an empty path
+     *
+     * @return this
+     */
+    @Nonnull
+    public PathBuilder clear()
+    {
+        elements = PathElements.EMPTY;
+        return this;
+    }
+
+    /**
+     * Append a name element
+     *
+     * @param name the name element
+     * @return this
+     * @throws InvalidPathException the name element is invalid
+     */
+    @Nonnull
+    public PathBuilder name(final String name)
+    {
+        elements = factory.appendName(elements, name);
+        return this;
+    }
+
+    /**
+     * Append name elements
+     *
+     * @param names the name elements
+     * @return this
+     * @throws InvalidPathException one name element is invalid
+     */
+    @Nonnull
+    public PathBuilder names(final String... names)
+    {
+        PathElements newElements = elements;
+
+        for (final String name: names)
+            newElements = factory.appendName(newElements, name);
+
+        elements = newElements;
+        return this;
+    }
+
+    /**
+     * Return a new builder starting from the current state of this builder
+     *
+     * <p>This does not copy any name element.</p>
+     *
+     * @return a new builder
+     */
+    @Nonnull
+    public PathBuilder copy()
+    {
+        return new PathBuilder(fs, factory, elements);
+    }
+
+    /**
+     * Build a path from the current state of this builder
+     *
+     * @return a new path
+     */
+    @Nonnull
+    public Path build()
+    {
+        return new GenericPath(fs, factory, elements);
+    }
+}
@@ -38,6 +38,14 @@ import java.util.Objects;
  * component}, it <em>does not mean</em> that it is {@link Path#isAbsolute()
  * absolute}.</p>
  *
+ * <p>Instances share structure: an instance with at least one name element
+ * is its last name element plus a link to the instance with all other name
+ * elements (and the same root). This means that {@link #parent()} and {@link
+ * #child(String)} are O(1) and do not copy anything. The array of all name
+ * elements, when needed, is built only once and cached; likewise, when an
+ * instance is created from an array, the links are only built when first
+ * needed.</p>
+ *
  * <p>You will not generate instances of this class directly; this is up to
  * a {@link PathElementsFactory} to do so.</p>
  *
@@ -63,11 +71,27 @@ public final class PathElements
      */
     final String root;
 
-    /**
-     * The name components of this path
+    /*
+     * The number of name elements, and the last one (null if there are none)
      */
-    final String[] names;
+    private final int size;
+    private final String lastName;
 
+    /*
+     * The hash code of the name elements, computed as Arrays.hashCode() would
+     */
+    private final int namesHash;
+
+    /*
+     * The instance with the same root and all name elements but the last one,
+     * and all the name elements. When there are name elements, at least one
+     * of these is not null; the other is computed on demand.
+     *
+     * These are volatile since they are computed lazily; no lock is taken, two
+     * threads may compute the same (equal) value.
+     */
+    private volatile PathElements prefix;
+    private volatile String[] names;
 
     /**
      * A {@link PathElements} consisting of a single name, with no root
@@ -94,10 +118,93 @@ public final class PathElements
     PathElements(@Nullable final String root, final String[] names)
     {
         this.root = root;
+        size = names.length;
+        lastName = size == 0 ? null : names[size - 1];
+        namesHash = Arrays.hashCode(names);
+        prefix = null;
         //noinspection AssignmentToCollectionOrArrayFieldFromParameter
         this.names = names;
     }
 
+    /*
+     * Constructor for a child of an existing instance
+     */
+    private PathElements(final PathElements prefix, final String name)
+    {
+        root = prefix.root;
+        size = prefix.size + 1;
+        lastName = name;
+        namesHash = 31 * prefix.namesHash + name.hashCode();
+        this.prefix = prefix;
+        names = null;
+    }
+
+    /**
+     * Return the number of name elements of this instance
+     *
+     * @return the number of name elements
+     *
+     * @see Path#getNameCount()
+     */
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * Return the name elements of this instance
+     *
+     * <p>The returned array is shared: it <strong>must not</strong> be
+     * modified.</p>
+     *
+     * @return the name elements
+     */
+    @Nonnull
+    String[] names()
+    {
+        String[] ret = names;
+
+        if (ret != null)
+            return ret;
+
+        ret = new String[size];
+
+        PathElements current = this;
+        String[] currentNames;
+
+        /*
+         * Walk up the links, until we find an instance which has its names
+         * already computed
+         */
+        for (int i = size - 1; i >= 0; i--) {
+            currentNames = current.names;
+            if (currentNames != null) {
+                System.arraycopy(currentNames, 0, ret, 0, i + 1);
+                break;
+            }
+            ret[i] = current.lastName;
+            current = current.prefix;
+        }
+
+        names = ret;
+        return ret;
+    }
+
+    /**
+     * Return a new instance with an additional name element
+     *
+     * <p>The new instance shares the structure of this instance: this
+     * operation does not depend on the number of name elements.</p>
+     *
+     * @param name the name element to append
+     * @return a new instance
+     */
+    @Nonnull
+    PathElements child(final String name)
+    {
+        return new PathElements(this, Objects.requireNonNull(name));
+    }
+
     /**
      * Return the root PathElements of this instance (null if root is null)
      *
@@ -119,8 +226,8 @@ public final class PathElements
      * <p>If this instance has only one name element and no root, {@code null}
      * is returned.</p>
      *
-     * <p>Otherwise a new instance is returned with all name elements except for
-     * the last one.</p>
+     * <p>Otherwise the instance with all name elements except for the last one
+     * is returned; it is shared, not copied.</p>
      *
      * <p>The root component is preserved.</p>
      *
@@ -131,14 +238,36 @@ public final class PathElements
     @Nullable
     PathElements parent()
     {
-        final int length = names.length;
-        if (length == 0)
+        if (size == 0)
             return null;
-        if (length == 1 && root == null)
+        if (size == 1 && root == null)
             return null;
-        final String[] newNames = length  == 1 ? NO_NAMES
-            : Arrays.copyOf(names, length - 1);
-        return new PathElements(root, newNames);
+        return prefix();
+    }
+
+    /**
+     * Return the instance with the first name elements of this instance
+     *
+     * <p>The root component is preserved. If this instance has no root, this
+     * is equivalent to {@link Path#subpath(int, int) subpath(0, count)}.</p>
+     *
+     * @param count the number of name elements to keep
+     * @return the instance, shared and not copied
+     * @throws IllegalArgumentException count is negative or greater than the
+     * number of name elements
+     */
+    @Nonnull
+    PathElements ancestor(final int count)
+    {
+        if (count < 0 || count > size)
+            throw new IllegalArgumentException("invalid name count " + count);
+
+        PathElements ret = this;
+
+        while (ret.size > count)
+            ret = ret.prefix();
+
+        return ret;
     }
 
     /**
@@ -153,8 +282,7 @@ public final class PathElements
     @Nullable
     PathElements lastName()
     {
-        final int length = names.length;
-        return length == 0 ? null : singleton(names[length - 1]);
+        return size == 0 ? null : singleton(lastName);
     }
 
     /**
@@ -169,6 +297,8 @@ public final class PathElements
     @Override
     public Iterator<PathElements> iterator()
     {
+        final String[] elements = names();
+
         return new Iterator<PathElements>()
         {
             int index = 0;
@@ -176,7 +306,7 @@ public final class PathElements
             @Override
             public boolean hasNext()
             {
-                return index < names.length;
+                return index < elements.length;
             }
 
             @Override
@@ -184,7 +314,7 @@ public final class PathElements
             {
                 if (!hasNext())
                     throw new NoSuchElementException();
-                return singleton(names[index++]);
+                return singleton(elements[index++]);
             }
 
             @Override
@@ -198,7 +328,7 @@ public final class PathElements
     @Override
     public int hashCode()
     {
-        return 31 * Objects.hashCode(root) + Arrays.hashCode(names);
+        return 31 * Objects.hashCode(root) + namesHash;
     }
 
     @Override
@@ -211,7 +341,102 @@ public final class PathElements
         if (getClass() != obj.getClass())
             return false;
         final PathElements other = (PathElements) obj;
-        return Objects.equals(root, other.root)
-            && Arrays.equals(names, other.names);
+        if (size != other.size || namesHash != other.namesHash)
+            return false;
+        if (!Objects.equals(root, other.root))
+            return false;
+
+        /*
+         * Walk up the links of both instances as long as they are not shared;
+         * compare arrays if either instance was created from an array.
+         */
+        PathElements p1 = this;
+        PathElements p2 = other;
+
+        while (p1 != p2 && p1.size > 0) {
+            if (p1.names != null || p2.names != null)
+                return Arrays.equals(p1.names(), p2.names());
+            if (!p1.lastName.equals(p2.lastName))
+                return false;
+            p1 = p1.prefix;
+            p2 = p2.prefix;
+        }
+
+        return true;
+    }
+
+    /**
+     * Compare two instances, root component first, then name element by name
+     * element
+     *
+     * <p>An instance without a root component sorts before an instance with
+     * one; root components, then name elements, are compared using {@link
+     * String#compareTo(String)}; when all name elements of an instance are
+     * the first name elements of the other, the one with fewer name elements
+     * sorts first.</p>
+     *
+     * <p>This is consistent with {@link #equals(Object)}.</p>
+     *
+     * @param e1 the first instance
+     * @param e2 the second instance
+     * @return a negative integer, zero or a positive integer if the first
+     * instance sorts before, the same as or after the second instance
+     */
+    static int compare(final PathElements e1, final PathElements e2)
+    {
+        if (e1 == e2)
+            return 0;
+
+        final String root1 = e1.root;
+        final String root2 = e2.root;
+
+        //noinspection StringEquality
+        if (root1 != root2) {
+            if (root1 == null)
+                return -1;
+            if (root2 == null)
+                return 1;
+            final int ret = root1.compareTo(root2);
+            if (ret != 0)
+                return ret;
+        }
+
+        final String[] names1 = e1.names();
+        final String[] names2 = e2.names();
+        final int size = Math.min(names1.length, names2.length);
+
+        int ret;
+
+        for (int i = 0; i < size; i++) {
+            ret = names1[i].compareTo(names2[i]);
+            if (ret != 0)
+                return ret;
+        }
+
+        return names1.length - names2.length;
+    }
+
+    /*
+     * Only called when there is at least one name element
+     */
+    @Nonnull
+    private PathElements prefix()
+    {
+        PathElements ret = prefix;
+
+        if (ret != null)
+            return ret;
+
+        /*
+         * This instance was created from an array: build all links at once
+         */
+        final String[] array = names;
+        ret = new PathElements(root, NO_NAMES);
+
+        for (int i = 0; i < size - 1; i++)
+            ret = new PathElements(ret, array[i]);
+
+        prefix = ret;
+        return ret;
     }
 }
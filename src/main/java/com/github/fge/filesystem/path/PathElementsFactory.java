@@ -22,11 +22,12 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Objects;
-import java.util.regex.Pattern;
 
 /**
  * Abstract factory for {@link PathElements} instances
@@ -55,8 +56,24 @@ public abstract class PathElementsFactory
 {
     protected static final String[] NO_NAMES = new String[0];
 
-    private static final Pattern SLASHES = Pattern.compile("/+");
-    private static final Pattern TRAILING_SLASHES = Pattern.compile("/+$");
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /*
+     * ASCII characters which can appear unencoded in a URI path (RFC 2396, as
+     * implemented by URI): unreserved and punctuation characters
+     */
+    private static final boolean[] URI_PATH_CHARS = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++)
+            URI_PATH_CHARS[c] = true;
+        for (char c = 'A'; c <= 'Z'; c++)
+            URI_PATH_CHARS[c] = true;
+        for (char c = '0'; c <= '9'; c++)
+            URI_PATH_CHARS[c] = true;
+        for (final char c: "-_.!~*'():@&=+$,;/".toCharArray())
+            URI_PATH_CHARS[c] = true;
+    }
 
     private final String rootSeparator;
     private final String separator;
@@ -79,11 +96,51 @@ public abstract class PathElementsFactory
         this.parentToken = parentToken;
     }
 
+    /*
+     * Used by InterningPathElementsFactory
+     */
+    PathElementsFactory(final PathElementsFactory other)
+    {
+        rootSeparator = other.rootSeparator;
+        separator = other.separator;
+        parentToken = other.parentToken;
+    }
+
     public final String getSeparator()
     {
         return separator;
     }
 
+    /**
+     * Return a factory identical to this one, but which interns name elements
+     *
+     * <p>All paths parsed by the returned factory have their name elements
+     * interned using the supplied interner; other operations are delegated to
+     * this factory.</p>
+     *
+     * @param interner the interner
+     * @return a new factory
+     */
+    @Nonnull
+    public final PathElementsFactory withInterner(
+        final SegmentInterner interner)
+    {
+        return new InterningPathElementsFactory(this, interner);
+    }
+
+    /**
+     * Return the interner used by this factory, if any
+     *
+     * @return the interner; {@code null} by default
+     *
+     * @see #withInterner(SegmentInterner)
+     */
+    @Nullable
+    public SegmentInterner getSegmentInterner()
+    {
+        return null;
+    }
+
     /**
      * Split an input path into the root component and all name elements
      *
@@ -162,11 +219,120 @@ public abstract class PathElementsFactory
      * @return a new {@link PathElements} instance
      * @throws InvalidPathException one name element is invalid
      *
+     * @see #parse(String)
+     */
+    @Nonnull
+    public final PathElements toPathElements(final String path)
+    {
+        return parse(path);
+    }
+
+    /**
+     * Convert a sequence of input strings into a {@link PathElements}
+     *
+     * <p>The result is the same as converting all non empty strings joined
+     * with the {@link #getSeparator() separator}, as {@link
+     * FileSystem#getPath(String, String...)} specifies.</p>
+     *
+     * @param first the first string
+     * @param more the other strings
+     * @return a new {@link PathElements} instance
+     * @throws InvalidPathException one name element is invalid
+     *
+     * @see #parse(String, String[])
+     */
+    @Nonnull
+    public final PathElements toPathElements(final String first,
+        final String... more)
+    {
+        return more.length == 0 ? parse(first) : parse(first, more);
+    }
+
+    /**
+     * Append a single name element to a {@link PathElements}
+     *
+     * <p>Unlike {@link #toPathElements(String, String...)}, the name is not
+     * parsed: it must be exactly one valid name element, and is only checked
+     * for validity. The result shares the structure of the argument.</p>
+     *
+     * @param elements the instance to append to
+     * @param name the name element
+     * @return a new {@link PathElements} instance
+     * @throws InvalidPathException the name element is invalid
+     *
+     * @see #isValidName(String)
+     * @see PathBuilder
+     */
+    @Nonnull
+    public final PathElements appendName(final PathElements elements,
+        final String name)
+    {
+        if (!isValidName(name))
+            throw new InvalidPathException(name,
+                "invalid path element: " + name);
+
+        final SegmentInterner interner = getSegmentInterner();
+        return elements.child(interner == null ? name : interner.intern(name));
+    }
+
+    /**
+     * Parse a sequence of input strings into a {@link PathElements}
+     *
+     * <p>By default, this joins all non empty strings with the {@link
+     * #getSeparator() separator} and calls {@link #parse(String)} on the
+     * result. Implementations can override this method to avoid building the
+     * joined string; they must produce the same results, and fail on the same
+     * inputs.</p>
+     *
+     * @param first the first string
+     * @param more the other strings (at least one)
+     * @return a new {@link PathElements} instance
+     * @throws InvalidPathException one name element is invalid
+     */
+    @Nonnull
+    protected PathElements parse(final String first, final String[] more)
+    {
+        final StringBuilder sb = new StringBuilder(first);
+
+        for (final String s: more)
+            if (!s.isEmpty())
+                sb.append(separator).append(s);
+
+        return parse(sb.toString());
+    }
+
+    /**
+     * Parse an input string into a {@link PathElements}
+     *
+     * <p>By default, this calls {@link #splitAndValidate(String)}.
+     * Implementations can override this method with a faster, dedicated
+     * parser; such a parser must produce the same results, and fail on the
+     * same inputs, as {@link #splitAndValidate(String)}.</p>
+     *
+     * @param path the string to convert
+     * @return a new {@link PathElements} instance
+     * @throws InvalidPathException one name element is invalid
+     */
+    @Nonnull
+    protected PathElements parse(final String path)
+    {
+        return splitAndValidate(path);
+    }
+
+    /**
+     * Convert an input string into a {@link PathElements} using this factory's
+     * primitives
+     *
+     * @param path the string to convert
+     * @return a new {@link PathElements} instance
+     * @throws InvalidPathException one name element is invalid
+     *
      * @see #rootAndNames(String)
+     * @see #splitNames(String)
      * @see #isValidName(String)
      */
     @Nonnull
-    public final PathElements toPathElements(final String path)
+    protected final PathElements splitAndValidate(final String path)
     {
         final String[] rootAndNames = rootAndNames(path);
         final String root = rootAndNames[0];
@@ -195,7 +361,7 @@ public abstract class PathElementsFactory
     @Nonnull
     protected final PathElements normalize(final PathElements elements)
     {
-        final String[] names = elements.names;
+        final String[] names = elements.names();
         final int length = names.length;
         final String[] newNames = new String[length];
 
@@ -245,7 +411,10 @@ public abstract class PathElementsFactory
      *     <li>if the second argument has no name components, the first
      *     argument is returned;</li>
      *     <li>otherwise, resolution is performed by just appending the name
-     *     components of the first argument to the second argument.</li>
+     *     components of the first argument to the second argument; the result
+     *     shares the name components of the first argument, therefore the cost
+     *     of this operation only depends on the number of name components of
+     *     the second argument.</li>
      * </ul>
      *
      * <p>NOTES:</p>
@@ -275,19 +444,16 @@ public abstract class PathElementsFactory
         if (second.root != null)
             throw new UnsupportedOperationException();
 
-        final String[] firstNames = first.names;
-        final String[] secondNames = second.names;
-        final int firstLen = firstNames.length;
-        final int secondLen = secondNames.length;
-
-        if (secondLen == 0)
-            return first;
+        /*
+         * The result shares the structure of the first argument: no copy is
+         * made of its name elements.
+         */
+        PathElements ret = first;
 
-        final String[] newNames
-            = Arrays.copyOf(firstNames, firstLen + secondLen);
-        System.arraycopy(secondNames, 0, newNames, firstLen, secondLen);
+        for (final String name: second.names())
+            ret = ret.child(name);
 
-        return new PathElements(first.root, newNames);
+        return ret;
     }
 
     /**
@@ -363,8 +529,8 @@ public abstract class PathElementsFactory
         if (!Objects.equals(first.root, second.root))
             throw new IllegalArgumentException();
 
-        final String[] firstNames = first.names;
-        final String[] secondNames = second.names;
+        final String[] firstNames = first.names();
+        final String[] secondNames = second.names();
 
         final int firstLen = firstNames.length;
         final int secondLen = secondNames.length;
@@ -436,7 +602,7 @@ public abstract class PathElementsFactory
         final StringBuilder sb = new StringBuilder();
 
         final boolean hasRoot = elements.root != null;
-        final String[] names = elements.names;
+        final String[] names = elements.names();
         final int len = names.length;
 
         if (hasRoot)
@@ -456,6 +622,46 @@ public abstract class PathElementsFactory
         return sb.toString();
     }
 
+    /**
+     * Return the components of the string representation of a {@link
+     * PathElements} instance, without joining them
+     *
+     * <p>The concatenation of the returned strings is equal to {@link
+     * #toString(PathElements)}.</p>
+     *
+     * @param elements the instance
+     * @return the root component and root separator, if any, then the name
+     * elements with separators in between
+     */
+    @Nonnull
+    final String[] toStringComponents(final PathElements elements)
+    {
+        final String root = elements.root;
+        final String[] names = elements.names();
+        final int len = names.length;
+
+        if (len == 0)
+            return root == null ? PathElements.NO_NAMES
+                : new String[] { root };
+
+        final int offset = root == null ? 0 : 2;
+        final String[] ret = new String[offset + 2 * len - 1];
+
+        if (root != null) {
+            ret[0] = root;
+            ret[1] = rootSeparator;
+        }
+
+        ret[offset] = names[0];
+
+        for (int i = 1; i < len; i++) {
+            ret[offset + 2 * i - 1] = separator;
+            ret[offset + 2 * i] = names[i];
+        }
+
+        return ret;
+    }
+
     /**
      * Make a valid, raw URI path from a path's elements and a path prefix
      *
@@ -481,29 +687,150 @@ public abstract class PathElementsFactory
     @Nonnull
     protected final String toUriPath(@Nullable final String prefix,
         final PathElements elements)
+    {
+        final StringBuilder sb = new StringBuilder();
+        appendUriPath(sb, prefix, elements, false);
+        return sb.toString();
+    }
+
+    /**
+     * Append an encoded URI path from a path's elements and an encoded path
+     * prefix
+     *
+     * <p>This produces the same path as {@link #toUriPath(String,
+     * PathElements)}, except that the prefix is expected to be already
+     * encoded (as returned by {@link URI#getRawPath()}) and that the root
+     * component and name elements are encoded, so that the result can be
+     * passed as is to {@link URI#create(String)}.</p>
+     *
+     * <p>Characters are encoded as {@link URI}'s multi-argument constructors
+     * would: ASCII characters which are not legal in a URI path, and non
+     * ASCII space and control characters, are percent-encoded using UTF-8;
+     * other characters are left as is.</p>
+     *
+     * @param sb the string builder to append to
+     * @param rawPrefix the encoded URI path prefix (may be null)
+     * @param elements the path elements
+     * @throws IllegalArgumentException elements are not absolute
+     */
+    protected final void appendRawUriPath(final StringBuilder sb,
+        @Nullable final String rawPrefix, final PathElements elements)
+    {
+        appendUriPath(sb, rawPrefix, elements, true);
+    }
+
+    /**
+     * Convert a URI path into an absolute {@link PathElements}
+     *
+     * <p>This is the reverse operation of {@link #toUriPath(String,
+     * PathElements)}: the URI path, which must be relative to the URI path of
+     * the filesystem, is split on slashes; the name elements are appended to
+     * the {@link #getRootPathElements() root} of this factory. They are not
+     * parsed any further, but are checked for validity.</p>
+     *
+     * @param uriPath the decoded URI path (as returned by {@link
+     * URI#getPath()}), relative to the filesystem URI path
+     * @return a new {@link PathElements} instance
+     * @throws InvalidPathException one name element is invalid
+     */
+    @Nonnull
+    public final PathElements fromUriPath(final String uriPath)
+    {
+        final int len = uriPath.length();
+
+        PathElements ret = getRootPathElements();
+        int start = 0;
+        int end;
+
+        while (true) {
+            while (start < len && uriPath.charAt(start) == '/')
+                start++;
+            if (start == len)
+                break;
+            end = uriPath.indexOf('/', start);
+            if (end == -1)
+                end = len;
+            ret = appendName(ret, uriPath.substring(start, end));
+            start = end;
+        }
+
+        return ret;
+    }
+
+    private void appendUriPath(final StringBuilder sb,
+        @Nullable final String prefix, final PathElements elements,
+        final boolean encode)
     {
         if (!isAbsolute(elements))
             throw new IllegalArgumentException("elements not absolute");
 
-        final StringBuilder sb = new StringBuilder();
+        final int start = sb.length();
+
         if (prefix != null)
-            sb.append(prefix);
+            appendUriPathPart(sb, start, prefix, false);
 
         final PathElements normalized = normalize(elements);
-        final String[] names = normalized.names;
 
-        if (normalized.root != null)
-            sb.append('/').append(normalized.root);
+        if (normalized.root != null) {
+            appendUriPathPart(sb, start, "/", false);
+            appendUriPathPart(sb, start, normalized.root, encode);
+        }
 
         /*
          * Since the path elements are normalized, the only parents we can see
          * are at the beginning.
          */
-        for (final String name: names)
-            if (!isParent(name))
-                sb.append('/').append(name);
+        for (final String name: normalized.names()) {
+            if (isParent(name))
+                continue;
+            appendUriPathPart(sb, start, "/", false);
+            appendUriPathPart(sb, start, name, encode);
+        }
+
+        /*
+         * Remove trailing slashes
+         */
+        int len = sb.length();
 
-        return TRAILING_SLASHES.matcher(SLASHES.matcher(sb).replaceAll("/"))
-            .replaceAll("");
+        while (len > start && sb.charAt(len - 1) == '/')
+            len--;
+
+        sb.setLength(len);
+    }
+
+    /*
+     * Append a part of a URI path, collapsing consecutive slashes (start is
+     * the index of the URI path in the string builder)
+     */
+    private static void appendUriPathPart(final StringBuilder sb,
+        final int start, final String part, final boolean encode)
+    {
+        final int len = part.length();
+        char c;
+
+        for (int i = 0; i < len; i++) {
+            c = part.charAt(i);
+            if (c == '/') {
+                if (sb.length() == start || sb.charAt(sb.length() - 1) != '/')
+                    sb.append(c);
+                continue;
+            }
+            if (!encode || !mustEncode(c)) {
+                sb.append(c);
+                continue;
+            }
+            for (final byte b: String.valueOf(c).getBytes(
+                StandardCharsets.UTF_8)) {
+                sb.append('%').append(HEX_DIGITS[(b >> 4) & 0x0f])
+                    .append(HEX_DIGITS[b & 0x0f]);
+            }
+        }
+    }
+
+    private static boolean mustEncode(final char c)
+    {
+        if (c < 128)
+            return !URI_PATH_CHARS[c];
+        return Character.isSpaceChar(c) || Character.isISOControl(c);
     }
 }
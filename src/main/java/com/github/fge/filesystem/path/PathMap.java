@@ -0,0 +1,515 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.path;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * A map of {@link GenericPath}s to values, organized as a tree of name
+ * elements
+ *
+ * <p>Each path is a node in a tree, where each level is keyed by one name
+ * element; there is one such tree per filesystem and root component. This
+ * makes the following operations O(depth) of the path argument, whatever the
+ * number of entries:</p>
+ *
+ * <ul>
+ *     <li>finding the entries whose keys are ancestors of a path ({@link
+ *     #getAncestors(Path)}, {@link #getLongestAncestor(Path)});</li>
+ *     <li>finding, or removing, all entries under a path ({@link
+ *     #getSubtree(Path)}, {@link #removeSubtree(Path)}), not counting the cost
+ *     of iterating over the entries themselves.</li>
+ * </ul>
+ *
+ * <p>In this class, a path is an ancestor of itself. As with {@link
+ * Path#startsWith(Path)}, paths are compared as they are: they are not
+ * normalized.</p>
+ *
+ * <p>Only {@link GenericPath} instances can be used as keys; lookups with
+ * other paths always fail. Null values are not allowed. This class is not
+ * thread safe.</p>
+ *
+ * @param <V> the type of values
+ *
+ * @see PathSet
+ */
+@ParametersAreNonnullByDefault
+public final class PathMap<V>
+    implements Iterable<Map.Entry<Path, V>>
+{
+    private final Map<Anchor, Node<V>> trees = new HashMap<>();
+    private int size = 0;
+
+    /**
+     * Return the number of entries in this map
+     *
+     * @return the number of entries
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Tell whether this map is empty
+     *
+     * @return true if this map has no entries
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Remove all entries from this map
+     */
+    public void clear()
+    {
+        trees.clear();
+        size = 0;
+    }
+
+    /**
+     * Associate a value with a path
+     *
+     * @param path the path
+     * @param value the value
+     * @return the previous value, or {@code null} if there was none
+     * @throws ProviderMismatchException path is not a {@link GenericPath}
+     */
+    @Nullable
+    public V put(final Path path, final V value)
+    {
+        Objects.requireNonNull(value);
+
+        if (!(path instanceof GenericPath))
+            throw new ProviderMismatchException();
+
+        final GenericPath key = (GenericPath) path;
+        final Anchor anchor = new Anchor(key);
+
+        Node<V> node = trees.get(anchor);
+
+        if (node == null) {
+            node = new Node<>(null, null);
+            trees.put(anchor, node);
+        }
+
+        for (final String name: key.elements.names())
+            node = node.getOrCreateChild(name);
+
+        final V ret = node.value;
+
+        if (ret == null)
+            size++;
+
+        node.key = key;
+        node.value = value;
+        return ret;
+    }
+
+    /**
+     * Return the value associated with a path
+     *
+     * @param path the path
+     * @return the value, or {@code null} if there is none
+     */
+    @Nullable
+    public V get(final Path path)
+    {
+        final Node<V> node = find(path);
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * Tell whether a value is associated with a path
+     *
+     * @param path the path
+     * @return true if there is a value for this path
+     */
+    public boolean containsKey(final Path path)
+    {
+        return get(path) != null;
+    }
+
+    /**
+     * Remove the value associated with a path
+     *
+     * <p>Entries under this path are not removed.</p>
+     *
+     * @param path the path
+     * @return the removed value, or {@code null} if there was none
+     *
+     * @see #removeSubtree(Path)
+     */
+    @Nullable
+    public V remove(final Path path)
+    {
+        final Node<V> node = find(path);
+
+        if (node == null || node.value == null)
+            return null;
+
+        final V ret = node.value;
+        node.key = null;
+        node.value = null;
+        size--;
+        prune(node, (GenericPath) path);
+        return ret;
+    }
+
+    /**
+     * Return the entries whose key is an ancestor of a path
+     *
+     * <p>The path itself is included, if present. Entries are returned from
+     * the shortest key to the longest key.</p>
+     *
+     * @param path the path
+     * @return the matching entries (possibly empty)
+     */
+    @Nonnull
+    public List<Map.Entry<Path, V>> getAncestors(final Path path)
+    {
+        final List<Map.Entry<Path, V>> ret = new ArrayList<>();
+        final Node<V> tree = treeOf(path);
+
+        if (tree == null)
+            return ret;
+
+        Node<V> node = tree;
+
+        if (node.value != null)
+            ret.add(node.toEntry());
+
+        for (final String name: ((GenericPath) path).elements.names()) {
+            node = node.getChild(name);
+            if (node == null)
+                break;
+            if (node.value != null)
+                ret.add(node.toEntry());
+        }
+
+        return ret;
+    }
+
+    /**
+     * Return the entry with the longest key which is an ancestor of a path
+     *
+     * @param path the path
+     * @return the entry, or {@code null} if no key is an ancestor of the path
+     */
+    @Nullable
+    public Map.Entry<Path, V> getLongestAncestor(final Path path)
+    {
+        final Node<V> tree = treeOf(path);
+
+        if (tree == null)
+            return null;
+
+        Node<V> node = tree;
+        Node<V> found = node.value == null ? null : node;
+
+        for (final String name: ((GenericPath) path).elements.names()) {
+            node = node.getChild(name);
+            if (node == null)
+                break;
+            if (node.value != null)
+                found = node;
+        }
+
+        return found == null ? null : found.toEntry();
+    }
+
+    /**
+     * Return the entries whose key starts with a path
+     *
+     * <p>The path itself is included, if present. The returned iterable is a
+     * view; this map must not be modified while iterating over it.</p>
+     *
+     * @param path the path
+     * @return the matching entries, in no particular order
+     */
+    @Nonnull
+    public Iterable<Map.Entry<Path, V>> getSubtree(final Path path)
+    {
+        final Node<V> node = find(path);
+        final List<Node<V>> start = node == null
+            ? Collections.<Node<V>>emptyList()
+            : Collections.singletonList(node);
+
+        return new Iterable<Map.Entry<Path, V>>()
+        {
+            @Override
+            public Iterator<Map.Entry<Path, V>> iterator()
+            {
+                return new SubtreeIterator<>(start);
+            }
+        };
+    }
+
+    /**
+     * Remove all entries whose key starts with a path
+     *
+     * <p>The path itself is included, if present.</p>
+     *
+     * @param path the path
+     * @return the number of removed entries
+     */
+    public int removeSubtree(final Path path)
+    {
+        final Node<V> node = find(path);
+
+        if (node == null)
+            return 0;
+
+        int ret = 0;
+        final Iterator<Map.Entry<Path, V>> iterator
+            = new SubtreeIterator<>(Collections.singletonList(node));
+
+        while (iterator.hasNext()) {
+            iterator.next();
+            ret++;
+        }
+
+        size -= ret;
+        node.key = null;
+        node.value = null;
+        if (node.children != null)
+            node.children.clear();
+        prune(node, (GenericPath) path);
+        return ret;
+    }
+
+    /**
+     * Return an iterator over all entries of this map
+     *
+     * <p>This map must not be modified while iterating.</p>
+     *
+     * @return an iterator, in no particular order
+     */
+    @Override
+    public Iterator<Map.Entry<Path, V>> iterator()
+    {
+        return new SubtreeIterator<>(trees.values());
+    }
+
+    @Nullable
+    private Node<V> treeOf(final Path path)
+    {
+        if (!(path instanceof GenericPath))
+            return null;
+        return trees.get(new Anchor((GenericPath) path));
+    }
+
+    @Nullable
+    private Node<V> find(final Path path)
+    {
+        Node<V> node = treeOf(path);
+
+        if (node == null)
+            return null;
+
+        for (final String name: ((GenericPath) path).elements.names()) {
+            node = node.getChild(name);
+            if (node == null)
+                return null;
+        }
+
+        return node;
+    }
+
+    /*
+     * Remove nodes which have neither a value nor children, starting from the
+     * given node and going up
+     */
+    private void prune(final Node<V> node, final GenericPath path)
+    {
+        Node<V> current = node;
+        Node<V> parent;
+
+        while (current.value == null && current.isLeaf()) {
+            parent = current.parent;
+            if (parent == null) {
+                trees.remove(new Anchor(path));
+                return;
+            }
+            parent.children.remove(current.name);
+            current = parent;
+        }
+    }
+
+    /*
+     * Paths can only share nodes if they have the same filesystem, factory and
+     * root component: see GenericPath's .equals()
+     */
+    private static final class Anchor
+    {
+        private final FileSystem fs;
+        private final PathElementsFactory factory;
+        private final String root;
+
+        private Anchor(final GenericPath path)
+        {
+            fs = path.getFileSystem();
+            factory = path.getFactory();
+            root = path.elements.root;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(fs, factory, root);
+        }
+
+        @Override
+        public boolean equals(@Nullable final Object obj)
+        {
+            if (obj == null)
+                return false;
+            if (this == obj)
+                return true;
+            if (getClass() != obj.getClass())
+                return false;
+            final Anchor other = (Anchor) obj;
+            return fs.equals(other.fs) && factory.equals(other.factory)
+                && Objects.equals(root, other.root);
+        }
+    }
+
+    private static final class Node<V>
+    {
+        private final Node<V> parent;
+        private final String name;
+        private Map<String, Node<V>> children = null;
+        private GenericPath key = null;
+        private V value = null;
+
+        private Node(@Nullable final Node<V> parent,
+            @Nullable final String name)
+        {
+            this.parent = parent;
+            this.name = name;
+        }
+
+        @Nullable
+        private Node<V> getChild(final String childName)
+        {
+            return children == null ? null : children.get(childName);
+        }
+
+        @Nonnull
+        private Node<V> getOrCreateChild(final String childName)
+        {
+            if (children == null)
+                children = new HashMap<>();
+
+            Node<V> ret = children.get(childName);
+
+            if (ret == null) {
+                ret = new Node<>(this, childName);
+                children.put(childName, ret);
+            }
+
+            return ret;
+        }
+
+        private boolean isLeaf()
+        {
+            return children == null || children.isEmpty();
+        }
+
+        @Nonnull
+        private Map.Entry<Path, V> toEntry()
+        {
+            return new AbstractMap.SimpleImmutableEntry<Path, V>(key, value);
+        }
+    }
+
+    /*
+     * Depth first traversal
+     */
+    private static final class SubtreeIterator<V>
+        implements Iterator<Map.Entry<Path, V>>
+    {
+        private final Deque<Node<V>> stack = new ArrayDeque<>();
+        private Node<V> next;
+
+        private SubtreeIterator(final Iterable<Node<V>> start)
+        {
+            for (final Node<V> node: start)
+                stack.push(node);
+            next = advance();
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<Path, V> next()
+        {
+            if (next == null)
+                throw new NoSuchElementException();
+            final Node<V> ret = next;
+            next = advance();
+            return ret.toEntry();
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Nullable
+        private Node<V> advance()
+        {
+            Node<V> node;
+
+            while (!stack.isEmpty()) {
+                node = stack.pop();
+                if (node.children != null)
+                    for (final Node<V> child: node.children.values())
+                        stack.push(child);
+                if (node.value != null)
+                    return node;
+            }
+
+            return null;
+        }
+    }
+}
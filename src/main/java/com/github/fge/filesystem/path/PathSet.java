@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.path;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A set of {@link GenericPath}s, organized as a tree of name elements
+ *
+ * <p>This is a {@link PathMap} without values; see that class for the
+ * complexity of operations and restrictions.</p>
+ */
+@ParametersAreNonnullByDefault
+public final class PathSet
+    implements Iterable<Path>
+{
+    private final PathMap<Boolean> map = new PathMap<>();
+
+    /**
+     * Return the number of paths in this set
+     *
+     * @return the number of paths
+     */
+    public int size()
+    {
+        return map.size();
+    }
+
+    /**
+     * Tell whether this set is empty
+     *
+     * @return true if this set has no paths
+     */
+    public boolean isEmpty()
+    {
+        return map.isEmpty();
+    }
+
+    /**
+     * Remove all paths from this set
+     */
+    public void clear()
+    {
+        map.clear();
+    }
+
+    /**
+     * Add a path to this set
+     *
+     * @param path the path
+     * @return true if the path was not already present
+     * @throws ProviderMismatchException path is not a {@link GenericPath}
+     */
+    public boolean add(final Path path)
+    {
+        return map.put(path, Boolean.TRUE) == null;
+    }
+
+    /**
+     * Tell whether a path is in this set
+     *
+     * @param path the path
+     * @return true if the path is present
+     */
+    public boolean contains(final Path path)
+    {
+        return map.containsKey(path);
+    }
+
+    /**
+     * Remove a path from this set
+     *
+     * <p>Paths under this path are not removed.</p>
+     *
+     * @param path the path
+     * @return true if the path was present
+     *
+     * @see #removeSubtree(Path)
+     */
+    public boolean remove(final Path path)
+    {
+        return map.remove(path) != null;
+    }
+
+    /**
+     * Tell whether this set contains an ancestor of a path
+     *
+     * <p>A path is an ancestor of itself.</p>
+     *
+     * @param path the path
+     * @return true if this set contains an ancestor of the path
+     */
+    public boolean containsAncestorOf(final Path path)
+    {
+        return map.getLongestAncestor(path) != null;
+    }
+
+    /**
+     * Return the paths of this set which are ancestors of a path
+     *
+     * @param path the path
+     * @return the ancestors, shortest first
+     *
+     * @see PathMap#getAncestors(Path)
+     */
+    @Nonnull
+    public List<Path> getAncestors(final Path path)
+    {
+        final List<Path> ret = new ArrayList<>();
+
+        for (final Map.Entry<Path, Boolean> entry: map.getAncestors(path))
+            ret.add(entry.getKey());
+
+        return ret;
+    }
+
+    /**
+     * Return the longest path of this set which is an ancestor of a path
+     *
+     * @param path the path
+     * @return the ancestor, or {@code null} if there is none
+     */
+    @Nullable
+    public Path getLongestAncestor(final Path path)
+    {
+        final Map.Entry<Path, Boolean> entry = map.getLongestAncestor(path);
+        return entry == null ? null : entry.getKey();
+    }
+
+    /**
+     * Return the paths of this set which start with a path
+     *
+     * @param path the path
+     * @return the matching paths, in no particular order
+     *
+     * @see PathMap#getSubtree(Path)
+     */
+    @Nonnull
+    public Iterable<Path> getSubtree(final Path path)
+    {
+        final Iterable<Map.Entry<Path, Boolean>> entries
+            = map.getSubtree(path);
+
+        return new Iterable<Path>()
+        {
+            @Override
+            public Iterator<Path> iterator()
+            {
+                return keys(entries.iterator());
+            }
+        };
+    }
+
+    /**
+     * Remove all paths of this set which start with a path
+     *
+     * @param path the path
+     * @return the number of removed paths
+     */
+    public int removeSubtree(final Path path)
+    {
+        return map.removeSubtree(path);
+    }
+
+    @Override
+    public Iterator<Path> iterator()
+    {
+        return keys(map.iterator());
+    }
+
+    @Nonnull
+    private static Iterator<Path> keys(
+        final Iterator<Map.Entry<Path, Boolean>> iterator)
+    {
+        return new Iterator<Path>()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Path next()
+            {
+                return iterator.next().getKey();
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.path;
+
+import com.github.fge.filesystem.driver.FileSystemDriver;
+import com.github.fge.filesystem.fs.GenericFileSystem;
+import com.github.fge.filesystem.provider.FileSystemProviderBase;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A bounded cache of resolved paths, used by {@link
+ * GenericPath#toRealPath(LinkOption...)}
+ *
+ * <p>When a path is resolved, each of its prefixes is resolved in turn: the
+ * next name element is appended to the already resolved prefix, and the
+ * resulting path is checked for being a symbolic link using {@link
+ * FileSystemDriver#getLinkTarget(Path)}. This cache records, for such a
+ * path, what it resolves to: either itself, if it is not a link, or the
+ * resolved target of the link. Resolving a path whose prefixes are all cached
+ * therefore requires no call to the driver at all. The cache is not used at
+ * all if the driver does not {@link FileSystemDriver#supportsLinks() support
+ * symbolic links}.</p>
+ *
+ * <p>The oldest entries are evicted first. When an operation which may remove
+ * or replace a path (delete, copy, move) is performed, {@link
+ * FileSystemProviderBase} invalidates the entries of this path and of all
+ * paths under it, using {@link #invalidate(Path)}; since the resolution of a
+ * link depends on other paths, entries for links are invalidated as well.
+ * Entries for other paths are kept. Operations which can only create new
+ * files or directories invalidate nothing, since those are not symbolic
+ * links.</p>
+ *
+ * <p>The capacity of the cache can be set for a filesystem using the {@link
+ * #ENV_KEY} key of its environment; see {@link #fromEnv(Map)}.</p>
+ *
+ * <p>This class is thread safe; lookups can run concurrently.</p>
+ */
+@ParametersAreNonnullByDefault
+public final class ResolvedPathCache
+{
+    /**
+     * The environment key for the maximum number of entries
+     */
+    public static final String ENV_KEY = "resolvedPathCacheCapacity";
+
+    /**
+     * The default maximum number of entries
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final int capacity;
+
+    private final Lock readLock;
+    private final Lock writeLock;
+
+    private final PathMap<PathElements> map = new PathMap<>();
+
+    /*
+     * All keys, in order of insertion; and the keys of entries for links
+     */
+    private final Set<Path> keys = new LinkedHashSet<>();
+    private final Set<Path> links = new HashSet<>();
+
+    /*
+     * Incremented on each invalidation; entries computed before an
+     * invalidation are not stored
+     */
+    private volatile long generation = 0L;
+
+    /**
+     * Create a cache from a filesystem environment
+     *
+     * <p>The value of {@link #ENV_KEY} is a capacity, as a number or a
+     * string.</p>
+     *
+     * @param env the environment
+     * @return a cache; it has the {@link #DEFAULT_CAPACITY default capacity}
+     * if the key is not present
+     * @throws IllegalArgumentException illegal value for {@link #ENV_KEY}
+     */
+    @Nonnull
+    public static ResolvedPathCache fromEnv(final Map<String, ?> env)
+    {
+        final Object value = env.get(ENV_KEY);
+
+        if (value == null)
+            return new ResolvedPathCache();
+
+        if (value instanceof Number)
+            return new ResolvedPathCache(((Number) value).intValue());
+
+        if (value instanceof String)
+            try {
+                return new ResolvedPathCache(
+                    Integer.parseInt((String) value));
+            } catch (NumberFormatException ignored) {
+                // Fall through
+            }
+
+        throw new IllegalArgumentException("illegal value for " + ENV_KEY
+            + ": " + value);
+    }
+
+    /**
+     * Constructor with the default capacity
+     */
+    public ResolvedPathCache()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param capacity the maximum number of entries; {@code 0} disables the
+     * cache
+     * @throws IllegalArgumentException capacity is negative
+     */
+    public ResolvedPathCache(final int capacity)
+    {
+        if (capacity < 0)
+            throw new IllegalArgumentException("capacity must not be "
+                + "negative");
+
+        this.capacity = capacity;
+
+        final ReadWriteLock lock = new ReentrantReadWriteLock();
+        readLock = lock.readLock();
+        writeLock = lock.writeLock();
+    }
+
+    /**
+     * Return the maximum number of entries of this cache
+     *
+     * @return the capacity
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Invalidate all entries of this cache
+     */
+    public void invalidate()
+    {
+        writeLock.lock();
+        try {
+            map.clear();
+            keys.clear();
+            links.clear();
+            generation++;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Invalidate the entries for a path and all paths under it, and all
+     * entries for symbolic links
+     *
+     * <p>The path should be resolved: an entry is only invalidated if its
+     * path, as resolved by {@link GenericPath#toRealPath(LinkOption...)},
+     * starts with this path.</p>
+     *
+     * @param path the path
+     */
+    public void invalidate(final Path path)
+    {
+        final List<Path> removed = new ArrayList<>();
+
+        writeLock.lock();
+        try {
+            for (final Map.Entry<Path, PathElements> entry:
+                map.getSubtree(path))
+                removed.add(entry.getKey());
+            map.removeSubtree(path);
+            keys.removeAll(removed);
+
+            for (final Path link: links) {
+                map.remove(link);
+                keys.remove(link);
+            }
+            links.clear();
+
+            generation++;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Return the number of entries in this cache
+     *
+     * @return the number of entries
+     */
+    public int size()
+    {
+        readLock.lock();
+        try {
+            return map.size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Return the real path of a path, using only the entries of this cache
+     *
+     * <p>Unlike {@link GenericPath#toRealPath(LinkOption...)}, this method
+     * never calls the driver: if one of the prefixes of the path has no entry
+     * in this cache, {@code null} is returned.</p>
+     *
+     * @param path the path; it must be absolute
+     * @return the real path, or {@code null} if it cannot be determined
+     */
+    @Nullable
+    public Path getRealPath(final Path path)
+    {
+        if (!(path instanceof GenericPath))
+            return null;
+
+        final GenericPath genericPath = (GenericPath) path;
+        final GenericFileSystem fs
+            = (GenericFileSystem) genericPath.getFileSystem();
+        final PathElementsFactory factory = genericPath.getFactory();
+
+        PathElements ret = genericPath.elements.ancestor(0);
+
+        readLock.lock();
+        try {
+            for (final String name: genericPath.elements.names()) {
+                if (factory.isSelf(name))
+                    continue;
+                if (factory.isParent(name)) {
+                    if (ret.size() > 0)
+                        ret = ret.ancestor(ret.size() - 1);
+                    continue;
+                }
+                ret = map.get(new GenericPath(fs, factory, ret.child(name)));
+                if (ret == null)
+                    return null;
+            }
+        } finally {
+            readLock.unlock();
+        }
+
+        return ret.equals(genericPath.elements) ? path
+            : new GenericPath(fs, factory, ret);
+    }
+
+    @Nullable
+    PathElements get(final GenericPath path)
+    {
+        readLock.lock();
+        try {
+            return map.get(path);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    long getGeneration()
+    {
+        return generation;
+    }
+
+    void put(final GenericPath path, final PathElements resolved,
+        final long expectedGeneration)
+    {
+        if (capacity == 0)
+            return;
+
+        writeLock.lock();
+        try {
+            if (generation != expectedGeneration)
+                return;
+
+            map.put(path, resolved);
+            keys.add(path);
+            if (!resolved.equals(path.elements))
+                links.add(path);
+
+            final Iterator<Path> iterator = keys.iterator();
+            Path eldest;
+
+            while (keys.size() > capacity) {
+                eldest = iterator.next();
+                iterator.remove();
+                map.remove(eldest);
+                links.remove(eldest);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+}
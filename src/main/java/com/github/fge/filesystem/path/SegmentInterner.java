@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.path;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.lang.ref.WeakReference;
+import java.nio.file.FileSystems;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, concurrent, weak interner for path name elements
+ *
+ * <p>When enabled, the name elements of all paths parsed by a filesystem go
+ * through an instance of this class, so that equal names share the same
+ * {@link String} instance.</p>
+ *
+ * <p>The table has a fixed number of slots, each holding a weak reference to a
+ * name. A name is looked up in the slot chosen by its hash code; if another
+ * name is found there, it is replaced. This class is therefore a cache and not
+ * a set: it never grows, never retains names which are no longer used
+ * anywhere else, and takes no lock.</p>
+ *
+ * <p>Interning is enabled per filesystem using the {@link #ENV_KEY} key in the
+ * environment passed to {@link FileSystems#newFileSystem(java.net.URI, Map)};
+ * the value is either {@code true} (for a table of {@link #DEFAULT_CAPACITY}
+ * slots) or a number of slots.</p>
+ *
+ * @see PathElementsFactory#withInterner(SegmentInterner)
+ */
+@ParametersAreNonnullByDefault
+public final class SegmentInterner
+{
+    /**
+     * The key to enable interning in a filesystem environment
+     */
+    public static final String ENV_KEY = "internSegments";
+
+    /**
+     * The default number of slots
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    /*
+     * Estimated sizes, in bytes, of a String and of the header of its char
+     * array (64-bit JVM, compressed oops).
+     */
+    private static final int STRING_SIZE = 24;
+    private static final int ARRAY_HEADER_SIZE = 16;
+
+    private final AtomicReferenceArray<WeakReference<String>> table;
+    private final int mask;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong savedBytes = new AtomicLong();
+
+    /**
+     * Create an interner from a filesystem environment
+     *
+     * @param env the environment
+     * @return an interner, or {@code null} if interning is not enabled
+     * @throws IllegalArgumentException illegal value for {@link #ENV_KEY}
+     */
+    @Nullable
+    public static SegmentInterner fromEnv(final Map<String, ?> env)
+    {
+        final Object value = env.get(ENV_KEY);
+
+        if (value == null)
+            return null;
+
+        if (value instanceof Boolean)
+            return (Boolean) value ? new SegmentInterner() : null;
+
+        if (value instanceof Number)
+            return new SegmentInterner(((Number) value).intValue());
+
+        if (value instanceof String) {
+            final String s = (String) value;
+            if ("true".equals(s))
+                return new SegmentInterner();
+            if ("false".equals(s))
+                return null;
+            try {
+                return new SegmentInterner(Integer.parseInt(s));
+            } catch (NumberFormatException ignored) {
+                // Fall through
+            }
+        }
+
+        throw new IllegalArgumentException("illegal value for " + ENV_KEY
+            + ": " + value);
+    }
+
+    /**
+     * Constructor with the default number of slots
+     */
+    public SegmentInterner()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param capacity the number of slots; rounded up to a power of two
+     * @throws IllegalArgumentException capacity is not strictly positive
+     */
+    public SegmentInterner(final int capacity)
+    {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be strictly "
+                + "positive");
+
+        final int size = capacity >= MAX_CAPACITY ? MAX_CAPACITY
+            : Integer.highestOneBit(capacity - 1) << 1;
+
+        table = new AtomicReferenceArray<>(Math.max(size, 1));
+        mask = table.length() - 1;
+    }
+
+    /**
+     * Intern a name element
+     *
+     * @param name the name
+     * @return an equal name, possibly a previously interned instance
+     */
+    @Nonnull
+    public String intern(final String name)
+    {
+        final int hash = name.hashCode();
+        final int index = (hash ^ hash >>> 16) & mask;
+
+        final WeakReference<String> ref = table.get(index);
+        final String candidate = ref == null ? null : ref.get();
+
+        if (candidate != null && candidate.equals(name)) {
+            hits.incrementAndGet();
+            //noinspection StringEquality
+            if (candidate != name)
+                savedBytes.addAndGet(sizeOf(name));
+            return candidate;
+        }
+
+        table.set(index, new WeakReference<>(name));
+        misses.incrementAndGet();
+        return name;
+    }
+
+    /**
+     * Return the number of slots of this interner
+     *
+     * @return the number of slots
+     */
+    public int getCapacity()
+    {
+        return table.length();
+    }
+
+    /**
+     * Return the number of lookups which found an equal name
+     *
+     * @return the number of hits
+     */
+    public long getHitCount()
+    {
+        return hits.get();
+    }
+
+    /**
+     * Return the number of lookups which did not find an equal name
+     *
+     * @return the number of misses
+     */
+    public long getMissCount()
+    {
+        return misses.get();
+    }
+
+    /**
+     * Return an estimate of the memory saved by interning, in bytes
+     *
+     * <p>This is the estimated size of all the strings which have been
+     * replaced by an interned instance, assuming a 64-bit JVM with compressed
+     * pointers. Note that this is memory which <em>could</em> be reclaimed:
+     * the actual savings depend on how long paths are kept around.</p>
+     *
+     * @return the estimated number of bytes saved
+     */
+    public long getSavedBytes()
+    {
+        return savedBytes.get();
+    }
+
+    private static long sizeOf(final String s)
+    {
+        final long arraySize = ARRAY_HEADER_SIZE + 2L * s.length();
+        // Objects are 8-byte aligned
+        return STRING_SIZE + (arraySize + 7L & ~7L);
+    }
+}
@@ -18,7 +18,10 @@
 
 package com.github.fge.filesystem.path;
 
+import javax.annotation.Nonnull;
 import javax.annotation.ParametersAreNonnullByDefault;
+import java.nio.file.InvalidPathException;
+import java.util.Arrays;
 import java.util.regex.Pattern;
 
 /**
@@ -40,6 +43,96 @@ public final class UnixPathElementsFactory
         super("", "/", "..");
     }
 
+    /**
+     * Parse a path in a single pass
+     *
+     * <p>Separators are skipped and name elements validated as the input is
+     * scanned; the only strings created are the name elements themselves.</p>
+     *
+     * @param path the string to convert
+     * @return a new {@link PathElements} instance
+     */
+    @Nonnull
+    @Override
+    protected PathElements parse(final String path)
+    {
+        final int len = path.length();
+
+        int index = 0;
+
+        while (index < len && path.charAt(index) == '/')
+            index++;
+
+        final String root = index == 0 ? null : "/";
+
+        if (index == len)
+            return root == null ? PathElements.EMPTY : ROOT;
+
+        String[] names = new String[8];
+        int nrNames = 0;
+
+        int start;
+        boolean valid;
+        char c;
+        String name;
+
+        while (index < len) {
+            start = index;
+            valid = true;
+            while (index < len && (c = path.charAt(index)) != '/') {
+                if (c == '\0')
+                    valid = false;
+                index++;
+            }
+            name = path.substring(start, index);
+            if (!valid)
+                throw new InvalidPathException(path,
+                    "invalid path element: " + name);
+            if (nrNames == names.length)
+                names = Arrays.copyOf(names, nrNames * 2);
+            names[nrNames++] = name;
+            while (index < len && path.charAt(index) == '/')
+                index++;
+        }
+
+        if (nrNames != names.length)
+            names = Arrays.copyOf(names, nrNames);
+
+        return new PathElements(root, names);
+    }
+
+    /**
+     * Parse a sequence of strings without joining them
+     *
+     * <p>Each string is parsed on its own; the name elements of all strings
+     * after the first are then appended to the result of the first, and their
+     * root, if any, is ignored (joining would have merged it with the
+     * preceding separator).</p>
+     *
+     * <p>If the first string is empty, joining makes the result absolute if
+     * any of the other strings is not empty; this (rare) case is left to the
+     * default implementation.</p>
+     *
+     * @param first the first string
+     * @param more the other strings
+     * @return a new {@link PathElements} instance
+     */
+    @Nonnull
+    @Override
+    protected PathElements parse(final String first, final String[] more)
+    {
+        if (first.isEmpty())
+            return super.parse(first, more);
+
+        PathElements ret = parse(first);
+
+        for (final String s: more)
+            for (final String name: parse(s).names())
+                ret = ret.child(name);
+
+        return ret;
+    }
+
     @Override
     protected String[] rootAndNames(final String path)
     {
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.path.matchers;
+
+import com.github.fge.filesystem.path.GenericPath;
+
+import javax.annotation.Nonnull;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.Objects;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A {@link PathMatcher} for glob patterns, compiled to a deterministic
+ * automaton
+ *
+ * <p>This matcher accepts the same patterns, and matches the same paths, as
+ * {@link GlobPathMatcher}; but it does not use regexes, and matching takes a
+ * time linear in the length of the path, with no backtracking.</p>
+ *
+ * <p>Unlike {@link PathMatcherBase} implementations, this matcher does not
+ * need the string representation of a {@link GenericPath}: the automaton is
+ * run over {@link GenericPath#getStringComponents() its components} one after
+ * the other, and matching fails as soon as a component (for instance, the
+ * first name element for a pattern such as {@code src/**}) cannot match.
+ * Other {@link Path} implementations are matched using their string
+ * representation.</p>
+ *
+ * <p>This is the default implementation for the {@code glob} syntax.</p>
+ *
+ * @see PathMatcherFactory
+ */
+public final class CompiledGlobPathMatcher
+    implements PathMatcher
+{
+    private final GlobAutomaton automaton;
+
+    /**
+     * Constructor
+     *
+     * @param glob the glob pattern
+     * @throws PatternSyntaxException the pattern is invalid
+     */
+    public CompiledGlobPathMatcher(@Nonnull final String glob)
+    {
+        automaton = GlobCompiler.compile(Objects.requireNonNull(glob));
+    }
+
+    @Override
+    public boolean matches(@Nonnull final Path path)
+    {
+        final String[] components
+            = GlobAutomaton.components(Objects.requireNonNull(path));
+
+        return automaton.isAccepting(automaton.run(GlobAutomaton.INITIAL,
+            components));
+    }
+
+    boolean match(final String input)
+    {
+        return automaton.matches(input);
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.path.matchers;
+
+import com.github.fge.filesystem.path.GenericPath;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A deterministic automaton compiled from one or more glob patterns
+ *
+ * <p>Chars are first mapped to an equivalence class (a table lookup for ASCII
+ * chars, a binary search otherwise); the automaton then has one transition
+ * per state and class. Matching an input is therefore linear in the length of
+ * the input, does not depend on the complexity of the patterns, and allocates
+ * nothing.</p>
+ *
+ * <p>The initial state is {@code 0}. A transition to {@link #DEAD} means that
+ * no pattern can match the input, whatever follows.</p>
+ *
+ * <p>An automaton compiled from several patterns may have early matches:
+ * patterns which are known to match when a state is entered, whatever
+ * follows. Those are only taken into account by {@link
+ * #collect(CharSequence[], int[], boolean[])} and {@link
+ * #matchesAny(CharSequence[])}; an automaton compiled from a single pattern
+ * has none.</p>
+ *
+ * <p>Instances of this class are immutable.</p>
+ *
+ * @see GlobCompiler
+ */
+@ParametersAreNonnullByDefault
+final class GlobAutomaton
+{
+    /**
+     * The state reached when no pattern can match anymore
+     */
+    static final int DEAD = -1;
+
+    /**
+     * The initial state
+     */
+    static final int INITIAL = 0;
+
+    static final int[] NO_PATTERNS = new int[0];
+
+    private static final int ASCII_SIZE = 128;
+
+    private final char[] classStarts;
+    private final int[] asciiClasses = new int[ASCII_SIZE];
+    private final int classCount;
+    private final int[] transitions;
+    private final boolean[] accepting;
+    private final int[][] accepts;
+    private final boolean[] matchingEarly;
+    private final int[][] earlyMatches;
+
+    /**
+     * Constructor
+     *
+     * @param classStarts the first char of each class of chars, sorted; the
+     * first element is {@code 0}
+     * @param transitions the target state for each state and class, indexed
+     * by {@code state * classCount + class}
+     * @param accepts the patterns accepted by each state
+     * @param earlyMatches the early matches of each state
+     */
+    GlobAutomaton(final char[] classStarts, final int[] transitions,
+        final int[][] accepts, final int[][] earlyMatches)
+    {
+        this.classStarts = classStarts;
+        classCount = classStarts.length;
+        this.transitions = transitions;
+        this.accepts = accepts;
+
+        accepting = new boolean[accepts.length];
+        for (int state = 0; state < accepts.length; state++)
+            accepting[state] = accepts[state].length != 0;
+
+        this.earlyMatches = earlyMatches;
+        matchingEarly = new boolean[earlyMatches.length];
+        for (int state = 0; state < earlyMatches.length; state++)
+            matchingEarly[state] = earlyMatches[state].length != 0;
+
+        for (char c = 0; c < ASCII_SIZE; c++)
+            asciiClasses[c] = search(c);
+    }
+
+    /**
+     * Return the number of states of this automaton
+     *
+     * @return the number of states
+     */
+    int getStateCount()
+    {
+        return accepts.length;
+    }
+
+    /**
+     * Return the state reached from a state with one char
+     *
+     * @param state the state (must not be {@link #DEAD})
+     * @param c the char
+     * @return the new state
+     */
+    int step(final int state, final char c)
+    {
+        final int charClass = c < ASCII_SIZE ? asciiClasses[c] : search(c);
+        return transitions[state * classCount + charClass];
+    }
+
+    /**
+     * Return the state reached from a state with a sequence of chars
+     *
+     * @param state the state
+     * @param input the chars
+     * @return the new state; {@link #DEAD} as soon as it is reached
+     */
+    int run(final int state, final CharSequence input)
+    {
+        final int length = input.length();
+        int ret = state;
+
+        for (int i = 0; i < length && ret != DEAD; i++)
+            ret = step(ret, input.charAt(i));
+
+        return ret;
+    }
+
+    /**
+     * Return the state reached from a state with several sequences of chars
+     *
+     * @param state the state
+     * @param inputs the sequences of chars, in order
+     * @return the new state; {@link #DEAD} as soon as it is reached
+     *
+     * @see #components(Path)
+     */
+    int run(final int state, final CharSequence[] inputs)
+    {
+        int ret = state;
+
+        for (final CharSequence input: inputs) {
+            ret = run(ret, input);
+            if (ret == DEAD)
+                break;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Tell whether at least one pattern matches in a given state
+     *
+     * @param state the state
+     * @return true if the state is not {@link #DEAD} and is accepting
+     */
+    boolean isAccepting(final int state)
+    {
+        return state != DEAD && accepting[state];
+    }
+
+    /**
+     * Return the indices of the patterns matching in a given state
+     *
+     * <p>The returned array is shared: it <strong>must not</strong> be
+     * modified.</p>
+     *
+     * @param state the state
+     * @return the indices, in increasing order; empty if none
+     */
+    @Nonnull
+    int[] getAcceptedPatterns(final int state)
+    {
+        return state == DEAD ? NO_PATTERNS : accepts[state];
+    }
+
+    /**
+     * Tell whether at least one pattern matches a whole input
+     *
+     * @param input the input
+     * @return true if at least one pattern matches
+     */
+    boolean matches(final CharSequence input)
+    {
+        return isAccepting(run(INITIAL, input));
+    }
+
+    /**
+     * Collect all patterns matching a whole input, including early matches
+     *
+     * <p>For each matching pattern, with index {@code i}, {@code
+     * matched[ids[i]]} is set to {@code true}.</p>
+     *
+     * @param inputs the input, as sequences of chars
+     * @param ids the identifier of each pattern
+     * @param matched the array of flags to set
+     */
+    void collect(final CharSequence[] inputs, final int[] ids,
+        final boolean[] matched)
+    {
+        int state = INITIAL;
+        int length;
+
+        if (matchingEarly[state])
+            mark(earlyMatches[state], ids, matched);
+
+        for (final CharSequence input: inputs) {
+            length = input.length();
+            for (int i = 0; i < length; i++) {
+                state = step(state, input.charAt(i));
+                if (state == DEAD)
+                    return;
+                if (matchingEarly[state])
+                    mark(earlyMatches[state], ids, matched);
+            }
+        }
+
+        mark(accepts[state], ids, matched);
+    }
+
+    /**
+     * Tell whether at least one pattern matches a whole input, including
+     * early matches
+     *
+     * @param inputs the input, as sequences of chars
+     * @return true if at least one pattern matches
+     */
+    boolean matchesAny(final CharSequence[] inputs)
+    {
+        int state = INITIAL;
+        int length;
+
+        if (matchingEarly[state])
+            return true;
+
+        for (final CharSequence input: inputs) {
+            length = input.length();
+            for (int i = 0; i < length; i++) {
+                state = step(state, input.charAt(i));
+                if (state == DEAD)
+                    return false;
+                if (matchingEarly[state])
+                    return true;
+            }
+        }
+
+        return accepting[state];
+    }
+
+    /**
+     * Return the components of the string representation of a path
+     *
+     * <p>For a {@link GenericPath}, these are {@link
+     * GenericPath#getStringComponents() its components}, and its string
+     * representation is not built; for other paths, this is a single element
+     * array with the string representation.</p>
+     *
+     * @param path the path
+     * @return the components
+     */
+    @Nonnull
+    static String[] components(final Path path)
+    {
+        return path instanceof GenericPath
+            ? ((GenericPath) path).getStringComponents()
+            : new String[] { path.toString() };
+    }
+
+    private static void mark(final int[] patterns, final int[] ids,
+        final boolean[] matched)
+    {
+        for (final int pattern: patterns)
+            matched[ids[pattern]] = true;
+    }
+
+    private int search(final char c)
+    {
+        final int index = Arrays.binarySearch(classStarts, c);
+        return index >= 0 ? index : -index - 2;
+    }
+}
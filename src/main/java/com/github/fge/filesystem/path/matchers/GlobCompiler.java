@@ -0,0 +1,988 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.path.matchers;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.nio.file.FileSystem;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A compiler of glob patterns into a {@link GlobAutomaton}
+ *
+ * <p>The syntax and semantics are those documented by {@link
+ * FileSystem#getPathMatcher(String)}, as implemented by the JDK for Unix
+ * filesystems; in particular, the pattern must match the whole input, {@code
+ * /} is the name separator, groups cannot be nested and a backslash has no
+ * special meaning in a bracket expression.</p>
+ *
+ * <p>Compilation works in two steps:</p>
+ *
+ * <ul>
+ *     <li>each pattern is parsed into a nondeterministic automaton, whose
+ *     transitions are on ranges of {@code char}s; characters outside of the
+ *     basic multilingual plane are matched as a high surrogate followed by a
+ *     low surrogate;</li>
+ *     <li>this automaton is then made deterministic (subset construction),
+ *     and states from which no accepting state can be reached are removed.
+ *     </li>
+ * </ul>
+ *
+ * <p>Several patterns can be compiled into a single automaton; its accepting
+ * states then tell which patterns match. In this case, when a pattern matches
+ * whatever follows (for instance, {@code src/**} once {@code src/} has been
+ * read), this is reported as an early match when the state is entered, and
+ * the corresponding nodes are then dropped: otherwise, the automaton would
+ * need a different state for each combination of such patterns.</p>
+ *
+ * <p>This class is not thread safe.</p>
+ */
+@ParametersAreNonnullByDefault
+final class GlobCompiler
+{
+    /**
+     * The maximum number of states of a deterministic automaton
+     */
+    static final int MAX_STATES = 10000;
+
+    private static final char SEPARATOR = '/';
+
+    /*
+     * Ranges of chars, and of code points, are flattened arrays of inclusive
+     * bounds
+     */
+    private static final int[] ANY_CHAR = { 0, Character.MAX_VALUE };
+    private static final int[] ANY_CHAR_BUT_SEPARATOR
+        = { 0, SEPARATOR - 1, SEPARATOR + 1, Character.MAX_VALUE };
+    private static final int[] ANY_CODE_POINT_BUT_SEPARATOR
+        = { 0, SEPARATOR - 1, SEPARATOR + 1, Character.MAX_CODE_POINT };
+
+    private final List<Node> nodes = new ArrayList<>();
+    private final Node start = newNode();
+    private final StringBuilder patterns = new StringBuilder();
+
+    private int patternCount = 0;
+
+    /*
+     * The pattern being parsed, and the index of the next character
+     */
+    private String glob;
+    private int index;
+
+    /**
+     * Compile a single glob pattern
+     *
+     * @param glob the pattern
+     * @return the automaton; its only pattern has index {@code 0}
+     * @throws PatternSyntaxException the pattern is invalid, or too complex
+     */
+    @Nonnull
+    static GlobAutomaton compile(final String glob)
+    {
+        final GlobCompiler compiler = new GlobCompiler();
+        compiler.add(glob);
+        return compiler.compile();
+    }
+
+    /**
+     * Add a pattern
+     *
+     * @param glob the pattern
+     * @return the index of this pattern
+     * @throws PatternSyntaxException the pattern is invalid
+     */
+    int add(final String glob)
+    {
+        this.glob = glob;
+        index = 0;
+
+        final int first = nodes.size();
+        final Node node = newNode();
+        start.epsilons.add(node);
+
+        final Node accept = sequence(node, false);
+        accept.pattern = patternCount;
+
+        /*
+         * Find the nodes from which the pattern matches whatever follows:
+         * loops on any char which can reach the accepting node
+         */
+        final BitSet reachable = new BitSet();
+        Node current;
+
+        for (int i = first; i < nodes.size(); i++) {
+            current = nodes.get(i);
+            current.owner = patternCount;
+            //noinspection ArrayEquality
+            if (current.ranges != ANY_CHAR || current.target != current)
+                continue;
+            reachable.clear();
+            closure(current, reachable);
+            current.universal = reachable.get(accept.id);
+        }
+
+        if (patternCount > 0)
+            patterns.append(", ");
+        patterns.append(glob);
+
+        return patternCount++;
+    }
+
+    /**
+     * Build the deterministic automaton for all added patterns
+     *
+     * @return the automaton
+     * @throws PatternSyntaxException the automaton has more than {@link
+     * #MAX_STATES} states
+     */
+    @Nonnull
+    GlobAutomaton compile()
+    {
+        return compile(MAX_STATES);
+    }
+
+    /**
+     * Build the deterministic automaton for all added patterns, with a given
+     * maximum number of states
+     *
+     * @param maxStates the maximum number of states
+     * @return the automaton
+     * @throws PatternSyntaxException the automaton has more than {@code
+     * maxStates} states
+     */
+    @Nonnull
+    GlobAutomaton compile(final int maxStates)
+    {
+        final char[] classStarts = classStarts();
+        final int classCount = classStarts.length;
+        final int nodeCount = nodes.size();
+
+        /*
+         * Only nodes with a transition, and accepting nodes, make a difference
+         * between two sets of nodes; others are left out of the sets, which
+         * makes them smaller and merges equivalent states
+         */
+        final BitSet significant = new BitSet(nodeCount);
+        Node node;
+
+        for (int i = 0; i < nodeCount; i++) {
+            node = nodes.get(i);
+            if (node.pattern >= 0
+                || node.ranges != null && node.ranges.length != 0)
+                significant.set(i);
+        }
+
+        /*
+         * For each node with a transition: the classes of chars of this
+         * transition, as inclusive bounds of class indices (shared by nodes
+         * with the same ranges), and the closure of its target
+         */
+        final int[][] classes = new int[nodeCount][];
+        final BitSet[] targets = new BitSet[nodeCount];
+        final Map<int[], int[]> classesByRanges = new IdentityHashMap<>();
+        int[] nodeClasses;
+
+        for (int i = 0; i < nodeCount; i++) {
+            node = nodes.get(i);
+            if (node.ranges == null || node.ranges.length == 0)
+                continue;
+            nodeClasses = classesByRanges.get(node.ranges);
+            if (nodeClasses == null) {
+                nodeClasses = classIntervals(classStarts, node.ranges);
+                classesByRanges.put(node.ranges, nodeClasses);
+            }
+            classes[i] = nodeClasses;
+            targets[i] = new BitSet(nodeCount);
+            closure(node.target, targets[i]);
+            targets[i].and(significant);
+        }
+
+        final StateTable table = new StateTable(maxStates);
+        final BitSet initial = new BitSet(nodeCount);
+
+        closure(start, initial);
+        initial.and(significant);
+        table.add(initial);
+
+        /*
+         * The sets of nodes reached with each class; transitions on several
+         * classes are first merged by group of classes
+         */
+        final BitSet[] next = new BitSet[classCount];
+        final Map<int[], BitSet> groups = new IdentityHashMap<>();
+        int[] transitions = new int[16 * classCount];
+        BitSet set, group;
+        int k;
+
+        for (int state = 0; state < table.sets.size(); state++) {
+            set = table.sets.get(state);
+            Arrays.fill(next, null);
+            groups.clear();
+
+            for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+                nodeClasses = classes[i];
+                if (nodeClasses == null)
+                    continue;
+                k = nodeClasses[0];
+                if (nodeClasses.length == 2 && nodeClasses[1] == k) {
+                    if (next[k] == null)
+                        next[k] = new BitSet(nodeCount);
+                    next[k].or(targets[i]);
+                    continue;
+                }
+                group = groups.get(nodeClasses);
+                if (group == null) {
+                    group = new BitSet(nodeCount);
+                    groups.put(nodeClasses, group);
+                }
+                group.or(targets[i]);
+            }
+
+            for (final Map.Entry<int[], BitSet> entry: groups.entrySet()) {
+                nodeClasses = entry.getKey();
+                for (int j = 0; j < nodeClasses.length; j += 2)
+                    for (k = nodeClasses[j]; k <= nodeClasses[j + 1]; k++) {
+                        if (next[k] == null)
+                            next[k] = new BitSet(nodeCount);
+                        next[k].or(entry.getValue());
+                    }
+            }
+
+            if (transitions.length < (state + 1) * classCount)
+                transitions = Arrays.copyOf(transitions,
+                    transitions.length * 2);
+
+            for (k = 0; k < classCount; k++)
+                transitions[state * classCount + k] = next[k] == null
+                    ? GlobAutomaton.DEAD : table.add(next[k]);
+        }
+
+        final int stateCount = table.sets.size();
+        final int[][] accepts = new int[stateCount][];
+
+        for (int state = 0; state < stateCount; state++)
+            accepts[state] = acceptedPatterns(table.sets.get(state));
+
+        return prune(classStarts, stateCount, transitions, accepts,
+            table.earlyMatches.toArray(new int[stateCount][]));
+    }
+
+    /*
+     * Parsing
+     */
+
+    @Nonnull
+    private Node sequence(final Node from, final boolean inGroup)
+    {
+        final int length = glob.length();
+        Node current = from;
+        char c;
+
+        while (index < length) {
+            c = glob.charAt(index);
+            if (inGroup && (c == ',' || c == '}'))
+                break;
+            index++;
+            switch (c) {
+                case '\\':
+                    if (index == length)
+                        throw error("No character to escape", index - 1);
+                    current = literal(current, glob.charAt(index++));
+                    break;
+                case '[':
+                    current = codePoints(current, bracketExpression());
+                    break;
+                case '{':
+                    if (inGroup)
+                        throw error("Cannot nest groups", index - 1);
+                    current = group(current);
+                    break;
+                case '*':
+                    if (index < length && glob.charAt(index) == '*') {
+                        index++;
+                        current = repeat(current, ANY_CHAR);
+                    } else
+                        current = repeat(current, ANY_CHAR_BUT_SEPARATOR);
+                    break;
+                case '?':
+                    current = codePoints(current,
+                        ANY_CODE_POINT_BUT_SEPARATOR);
+                    break;
+                default:
+                    current = literal(current, c);
+            }
+        }
+
+        return current;
+    }
+
+    @Nonnull
+    private Node group(final Node from)
+    {
+        final Node join = newNode();
+        Node alternative;
+        char c;
+
+        do {
+            alternative = newNode();
+            from.epsilons.add(alternative);
+            sequence(alternative, true).epsilons.add(join);
+            if (index == glob.length())
+                throw error("Missing '}'", index - 1);
+            c = glob.charAt(index++);
+        } while (c == ',');
+
+        return join;
+    }
+
+    /*
+     * Called with the index after the opening bracket; returns normalized
+     * ranges of code points, without the separator
+     */
+    @Nonnull
+    private int[] bracketExpression()
+    {
+        final int length = glob.length();
+        int[] ranges = new int[8];
+        int size = 0;
+        boolean negated = false;
+
+        if (index < length && glob.charAt(index) == '^') {
+            ranges = addRange(ranges, size, '^', '^');
+            size += 2;
+            index++;
+        } else {
+            if (index < length && glob.charAt(index) == '!') {
+                negated = true;
+                index++;
+            }
+            if (index < length && glob.charAt(index) == '-') {
+                ranges = addRange(ranges, size, '-', '-');
+                size += 2;
+                index++;
+            }
+        }
+
+        boolean hasRangeStart = false;
+        boolean closed = false;
+        int last = 0;
+        int c;
+
+        while (index < length) {
+            c = nextCodePoint();
+            if (c == ']') {
+                closed = true;
+                break;
+            }
+            if (c == SEPARATOR)
+                throw error("Explicit 'name separator' in class", index - 1);
+            if (c != '-') {
+                ranges = addRange(ranges, size, c, c);
+                size += 2;
+                hasRangeStart = true;
+                last = c;
+                continue;
+            }
+            if (!hasRangeStart)
+                throw error("Invalid range", index - 1);
+            if (index == length)
+                break;
+            c = nextCodePoint();
+            if (c == ']') {
+                ranges = addRange(ranges, size, '-', '-');
+                size += 2;
+                closed = true;
+                break;
+            }
+            if (c < last)
+                throw error("Invalid range", index - 3);
+            ranges = addRange(ranges, size, last, c);
+            size += 2;
+            hasRangeStart = false;
+        }
+
+        if (!closed)
+            throw error("Missing ']'", index - 1);
+
+        // The JDK rejects "[]" and "[!]", since no regex can be generated
+        if (size == 0)
+            throw error("Invalid class", index - 1);
+
+        ranges = normalize(ranges, size);
+        if (negated)
+            ranges = complement(ranges);
+        return intersect(ranges, ANY_CODE_POINT_BUT_SEPARATOR);
+    }
+
+    private int nextCodePoint()
+    {
+        final char c = glob.charAt(index++);
+
+        if (!Character.isHighSurrogate(c) || index == glob.length())
+            return c;
+
+        final char low = glob.charAt(index);
+
+        if (!Character.isLowSurrogate(low))
+            return c;
+
+        index++;
+        return Character.toCodePoint(c, low);
+    }
+
+    @Nonnull
+    private PatternSyntaxException error(final String description,
+        final int errorIndex)
+    {
+        return new PatternSyntaxException(description, glob, errorIndex);
+    }
+
+    /*
+     * Automaton construction
+     */
+
+    @Nonnull
+    private Node newNode()
+    {
+        final Node node = new Node(nodes.size());
+        nodes.add(node);
+        return node;
+    }
+
+    @Nonnull
+    private Node literal(final Node from, final char c)
+    {
+        final Node to = newNode();
+
+        from.ranges = new int[] { c, c };
+        from.target = to;
+        return to;
+    }
+
+    @Nonnull
+    private Node repeat(final Node from, final int[] ranges)
+    {
+        final Node loop = newNode();
+        final Node next = newNode();
+
+        from.epsilons.add(loop);
+        loop.ranges = ranges;
+        loop.target = loop;
+        loop.epsilons.add(next);
+        return next;
+    }
+
+    /*
+     * Match one code point among the given ranges.
+     *
+     * Unpaired high surrogates are not matched: accepting them alone would
+     * allow the first half of a pair to match on its own.
+     */
+    @Nonnull
+    private Node codePoints(final Node from, final int[] ranges)
+    {
+        final Node to = newNode();
+        final int[] bmp = intersect(ranges, new int[] {
+            0, Character.MIN_HIGH_SURROGATE - 1,
+            Character.MAX_HIGH_SURROGATE + 1, Character.MAX_VALUE
+        });
+        final int[] supplementary = intersect(ranges, new int[] {
+            Character.MIN_SUPPLEMENTARY_CODE_POINT, Character.MAX_CODE_POINT
+        });
+
+        if (supplementary.length == 0) {
+            from.ranges = bmp;
+            from.target = to;
+            return to;
+        }
+
+        if (bmp.length != 0)
+            branch(from, bmp).target = to;
+
+        for (int i = 0; i < supplementary.length; i += 2)
+            surrogates(from, to, supplementary[i], supplementary[i + 1]);
+
+        return to;
+    }
+
+    private void surrogates(final Node from, final Node to, final int first,
+        final int last)
+    {
+        char high = Character.highSurrogate(first);
+        char lastHigh = Character.highSurrogate(last);
+        final char low = Character.lowSurrogate(first);
+        final char lastLow = Character.lowSurrogate(last);
+
+        if (high == lastHigh) {
+            pair(from, to, high, high, low, lastLow);
+            return;
+        }
+
+        if (low != Character.MIN_LOW_SURROGATE) {
+            pair(from, to, high, high, low, Character.MAX_LOW_SURROGATE);
+            high++;
+        }
+
+        if (lastLow != Character.MAX_LOW_SURROGATE) {
+            pair(from, to, lastHigh, lastHigh, Character.MIN_LOW_SURROGATE,
+                lastLow);
+            lastHigh--;
+        }
+
+        if (high <= lastHigh)
+            pair(from, to, high, lastHigh, Character.MIN_LOW_SURROGATE,
+                Character.MAX_LOW_SURROGATE);
+    }
+
+    private void pair(final Node from, final Node to, final char firstHigh,
+        final char lastHigh, final char firstLow, final char lastLow)
+    {
+        final Node middle = newNode();
+
+        branch(from, new int[] { firstHigh, lastHigh }).target = middle;
+        middle.ranges = new int[] { firstLow, lastLow };
+        middle.target = to;
+    }
+
+    @Nonnull
+    private Node branch(final Node from, final int[] ranges)
+    {
+        final Node node = newNode();
+
+        from.epsilons.add(node);
+        node.ranges = ranges;
+        return node;
+    }
+
+    /*
+     * Determinization
+     */
+
+    /*
+     * The equivalence classes of chars: all chars of a class have the same
+     * transitions from all nodes. Returns the first char of each class.
+     */
+    @Nonnull
+    private char[] classStarts()
+    {
+        final BitSet starts = new BitSet(Character.MAX_VALUE + 1);
+        int[] ranges;
+
+        starts.set(0);
+        for (final Node node: nodes) {
+            ranges = node.ranges;
+            if (ranges == null)
+                continue;
+            for (int i = 0; i < ranges.length; i += 2) {
+                starts.set(ranges[i]);
+                if (ranges[i + 1] < Character.MAX_VALUE)
+                    starts.set(ranges[i + 1] + 1);
+            }
+        }
+
+        final char[] ret = new char[starts.cardinality()];
+        int i = 0;
+
+        for (int c = starts.nextSetBit(0); c >= 0; c = starts.nextSetBit(c + 1))
+            ret[i++] = (char) c;
+
+        return ret;
+    }
+
+    private void closure(final Node node, final BitSet set)
+    {
+        final Deque<Node> stack = new ArrayDeque<>();
+
+        stack.push(node);
+        set.set(node.id);
+
+        Node current;
+
+        while (!stack.isEmpty()) {
+            current = stack.pop();
+            for (final Node epsilon: current.epsilons)
+                if (!set.get(epsilon.id)) {
+                    set.set(epsilon.id);
+                    stack.push(epsilon);
+                }
+        }
+    }
+
+    /*
+     * The classes of chars covered by ranges of chars, as inclusive bounds of
+     * class indices
+     */
+    @Nonnull
+    private static int[] classIntervals(final char[] classStarts,
+        final int[] ranges)
+    {
+        final int[] ret = new int[ranges.length];
+        int first, last;
+
+        for (int i = 0; i < ranges.length; i += 2) {
+            first = Arrays.binarySearch(classStarts, (char) ranges[i]);
+            if (ranges[i + 1] == Character.MAX_VALUE)
+                last = classStarts.length - 1;
+            else
+                last = Arrays.binarySearch(classStarts,
+                    (char) (ranges[i + 1] + 1)) - 1;
+            ret[i] = first;
+            ret[i + 1] = last;
+        }
+
+        return ret;
+    }
+
+    /*
+     * All nodes reachable from a node, including itself
+     */
+    @Nonnull
+    private BitSet reachable(final Node node)
+    {
+        final BitSet ret = new BitSet();
+        final Deque<Node> stack = new ArrayDeque<>();
+
+        stack.push(node);
+        ret.set(node.id);
+
+        Node current;
+
+        while (!stack.isEmpty()) {
+            current = stack.pop();
+            if (current.target != null && !ret.get(current.target.id)) {
+                ret.set(current.target.id);
+                stack.push(current.target);
+            }
+            for (final Node epsilon: current.epsilons)
+                if (!ret.get(epsilon.id)) {
+                    ret.set(epsilon.id);
+                    stack.push(epsilon);
+                }
+        }
+
+        return ret;
+    }
+
+    @Nonnull
+    private int[] acceptedPatterns(final BitSet set)
+    {
+        final BitSet accepted = new BitSet(patternCount);
+        int pattern;
+
+        for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+            pattern = nodes.get(i).pattern;
+            if (pattern >= 0)
+                accepted.set(pattern);
+        }
+
+        return toArray(accepted);
+    }
+
+    /*
+     * Remove states from which no accepting state, or state with early
+     * matches, can be reached; the initial state is always kept, and remains
+     * state 0
+     */
+    @Nonnull
+    private static GlobAutomaton prune(final char[] classStarts,
+        final int stateCount, final int[] transitions, final int[][] accepts,
+        final int[][] earlyMatches)
+    {
+        final int classCount = classStarts.length;
+        final boolean[] live = new boolean[stateCount];
+        boolean changed;
+        int target;
+
+        for (int state = 0; state < stateCount; state++)
+            live[state] = accepts[state].length != 0
+                || earlyMatches[state].length != 0;
+
+        do {
+            changed = false;
+            for (int state = 0; state < stateCount; state++) {
+                if (live[state])
+                    continue;
+                for (int k = 0; k < classCount; k++) {
+                    target = transitions[state * classCount + k];
+                    if (target != GlobAutomaton.DEAD && live[target]) {
+                        live[state] = true;
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        } while (changed);
+
+        final int[] renumbered = new int[stateCount];
+        int liveCount = 0;
+
+        for (int state = 0; state < stateCount; state++)
+            renumbered[state] = live[state] || state == 0 ? liveCount++
+                : GlobAutomaton.DEAD;
+
+        final int[] newTransitions = new int[liveCount * classCount];
+        final int[][] newAccepts = new int[liveCount][];
+        final int[][] newEarlyMatches = new int[liveCount][];
+        int newState;
+
+        for (int state = 0; state < stateCount; state++) {
+            newState = renumbered[state];
+            if (newState == GlobAutomaton.DEAD)
+                continue;
+            newAccepts[newState] = accepts[state];
+            newEarlyMatches[newState] = earlyMatches[state];
+            for (int k = 0; k < classCount; k++) {
+                target = transitions[state * classCount + k];
+                newTransitions[newState * classCount + k]
+                    = target == GlobAutomaton.DEAD || !live[target]
+                    ? GlobAutomaton.DEAD : renumbered[target];
+            }
+        }
+
+        return new GlobAutomaton(classStarts, newTransitions, newAccepts,
+            newEarlyMatches);
+    }
+
+    @Nonnull
+    private static int[] toArray(final BitSet set)
+    {
+        if (set.isEmpty())
+            return GlobAutomaton.NO_PATTERNS;
+
+        final int[] ret = new int[set.cardinality()];
+        int j = 0;
+
+        for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1))
+            ret[j++] = i;
+
+        return ret;
+    }
+
+    /*
+     * Operations on ranges
+     */
+
+    @Nonnull
+    private static int[] addRange(final int[] ranges, final int size,
+        final int first, final int last)
+    {
+        final int[] ret = size == ranges.length
+            ? Arrays.copyOf(ranges, size * 2) : ranges;
+
+        ret[size] = first;
+        ret[size + 1] = last;
+        return ret;
+    }
+
+    /*
+     * Sort ranges and merge overlapping or adjacent ones
+     */
+    @Nonnull
+    private static int[] normalize(final int[] ranges, final int size)
+    {
+        final int count = size / 2;
+        final long[] sorted = new long[count];
+
+        for (int i = 0; i < count; i++)
+            sorted[i] = (long) ranges[2 * i] << 32 | ranges[2 * i + 1];
+
+        Arrays.sort(sorted);
+
+        final int[] ret = new int[size];
+        int retSize = 0;
+        int first, last;
+
+        for (final long range: sorted) {
+            first = (int) (range >>> 32);
+            last = (int) range;
+            if (retSize > 0 && first <= ret[retSize - 1] + 1) {
+                ret[retSize - 1] = Math.max(ret[retSize - 1], last);
+                continue;
+            }
+            ret[retSize++] = first;
+            ret[retSize++] = last;
+        }
+
+        return Arrays.copyOf(ret, retSize);
+    }
+
+    @Nonnull
+    private static int[] complement(final int[] ranges)
+    {
+        final int[] ret = new int[ranges.length + 2];
+        int size = 0;
+        int next = 0;
+
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > next) {
+                ret[size++] = next;
+                ret[size++] = ranges[i] - 1;
+            }
+            next = ranges[i + 1] + 1;
+        }
+
+        if (next <= Character.MAX_CODE_POINT) {
+            ret[size++] = next;
+            ret[size++] = Character.MAX_CODE_POINT;
+        }
+
+        return Arrays.copyOf(ret, size);
+    }
+
+    @Nonnull
+    private static int[] intersect(final int[] ranges1, final int[] ranges2)
+    {
+        final int[] ret = new int[ranges1.length + ranges2.length];
+        int size = 0;
+        int i = 0, j = 0;
+        int first, last;
+
+        while (i < ranges1.length && j < ranges2.length) {
+            first = Math.max(ranges1[i], ranges2[j]);
+            last = Math.min(ranges1[i + 1], ranges2[j + 1]);
+            if (first <= last) {
+                ret[size++] = first;
+                ret[size++] = last;
+            }
+            if (ranges1[i + 1] < ranges2[j + 1])
+                i += 2;
+            else
+                j += 2;
+        }
+
+        return Arrays.copyOf(ret, size);
+    }
+
+    /*
+     * The states of the deterministic automaton being built, and their early
+     * matches
+     */
+    private final class StateTable
+    {
+        private final int maxStates;
+        private final Map<BitSet, Integer> ids = new HashMap<>();
+        private final List<BitSet> sets = new ArrayList<>();
+        private final List<int[]> earlyMatches = new ArrayList<>();
+
+        /*
+         * With several patterns: the nodes from which a pattern matches
+         * whatever follows, and for each of them, all nodes reachable from it
+         */
+        private final BitSet universalNodes = new BitSet();
+        private final Map<Integer, BitSet> tails = new HashMap<>();
+
+        private StateTable(final int maxStates)
+        {
+            this.maxStates = maxStates;
+
+            if (patternCount < 2)
+                return;
+
+            for (final Node node: nodes)
+                if (node.universal) {
+                    universalNodes.set(node.id);
+                    tails.put(node.id, reachable(node));
+                }
+        }
+
+        /*
+         * Return the state for a set of nodes, creating it if needed; the set
+         * is modified if it contains early matches
+         */
+        private int add(final BitSet set)
+        {
+            BitSet key = set;
+            int[] matched = GlobAutomaton.NO_PATTERNS;
+
+            if (set.intersects(universalNodes)) {
+                final BitSet owners = new BitSet(patternCount);
+                final BitSet dropped = new BitSet();
+                for (int i = set.nextSetBit(0); i >= 0;
+                    i = set.nextSetBit(i + 1))
+                    if (universalNodes.get(i)) {
+                        owners.set(nodes.get(i).owner);
+                        dropped.or(tails.get(i));
+                    }
+                matched = toArray(owners);
+                set.andNot(dropped);
+                /*
+                 * States with the same nodes but different early matches are
+                 * different states
+                 */
+                key = (BitSet) set.clone();
+                for (final int pattern: matched)
+                    key.set(nodes.size() + pattern);
+            }
+
+            Integer id = ids.get(key);
+
+            if (id != null)
+                return id;
+
+            id = sets.size();
+            if (id == maxStates)
+                throw new PatternSyntaxException("pattern too complex",
+                    patterns.toString(), -1);
+
+            ids.put(key, id);
+            sets.add(set);
+            earlyMatches.add(matched);
+            return id;
+        }
+    }
+
+    private static final class Node
+    {
+        private final int id;
+        private final List<Node> epsilons = new ArrayList<>(2);
+
+        /*
+         * The chars of the transition to the target node, if any
+         */
+        private int[] ranges;
+        private Node target;
+
+        /*
+         * The index of the pattern this node accepts, if any
+         */
+        private int pattern = -1;
+
+        /*
+         * The index of the pattern this node belongs to (-1 for the start
+         * node), and whether this pattern matches whatever follows once this
+         * node is reached
+         */
+        private int owner = -1;
+        private boolean universal = false;
+
+        private Node(final int id)
+        {
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,440 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.path.matchers;
+
+import com.github.fge.filesystem.fs.GenericFileSystem;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A search for all paths of a filesystem matching a glob pattern
+ *
+ * <p>The search returns the same paths as walking the whole tree from the
+ * root directory and testing every path against {@link
+ * FileSystem#getPathMatcher(String) a glob matcher}, but it only lists the
+ * directories in which a path can match:</p>
+ *
+ * <ul>
+ *     <li>if the glob is absolute, the search starts from its literal
+ *     directory prefix; for instance, <code>/data/2014/*&#47;logs/*.gz</code>
+ *     starts from {@code /data/2014};</li>
+ *     <li>the glob is compiled to a {@link GlobAutomaton deterministic
+ *     automaton}, which is run over each directory entry; an entry is only
+ *     descended into if the automaton can still reach an accepting state
+ *     after the entry and a separator. In the example above, only the {@code
+ *     logs} subdirectories of the directories in {@code /data/2014} are
+ *     listed.</li>
+ * </ul>
+ *
+ * <p>Each directory is listed by a separate task submitted to an {@link
+ * Executor}, so that directories are listed in parallel. Matching paths are
+ * returned by the iterator as soon as they are found, in no particular
+ * order. Symbolic links to directories are not followed. At most {@link
+ * #QUEUE_CAPACITY} paths are buffered: listing tasks wait for the iterator
+ * to consume results when this limit is reached. Tasks run by the thread
+ * using the iterator itself (for instance, with an executor which runs tasks
+ * in the calling thread, or which does so when saturated) do not wait, and
+ * buffer their results without limit.</p>
+ *
+ * <p>Errors while listing a directory, or if the executor rejects a task, end
+ * the search; the iterator then throws a {@link DirectoryIteratorException}.
+ * Directories which do not exist, or are not directories, are skipped, since
+ * they may have been removed while the search is running.</p>
+ *
+ * <p>As with any {@link DirectoryStream}, only one iterator can be obtained;
+ * the search starts when it is first asked for a result. Closing the stream,
+ * or interrupting the thread waiting for results in the iterator, stops the
+ * search.</p>
+ *
+ * @see GenericFileSystem#find(String, Executor)
+ */
+@ParametersAreNonnullByDefault
+public final class GlobFinder
+    implements DirectoryStream<Path>
+{
+    /**
+     * The maximum number of paths waiting to be returned by the iterator
+     */
+    public static final int QUEUE_CAPACITY = 1024;
+
+    /*
+     * How long the iterator, and tasks, wait for the queue before checking
+     * whether the search is closed
+     */
+    private static final long POLL_MILLIS = 100L;
+
+    /*
+     * Put in the queue to wake up the iterator, when all tasks have completed
+     * or the search is closed
+     */
+    private static final Object END = new Object();
+
+    private final FileSystem fs;
+    private final FileSystemProvider provider;
+    private final String separator;
+    private final GlobAutomaton automaton;
+    private final Path start;
+    private final Executor executor;
+
+    private final BlockingQueue<Object> queue
+        = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+
+    /*
+     * The thread using the iterator, once the search has started; the results
+     * of tasks run by this thread go to the overflow queue when the queue is
+     * full, since nothing would ever consume them otherwise. The overflow
+     * queue is only used by this thread.
+     */
+    private volatile Thread consumer;
+    private final Queue<Object> overflow = new ArrayDeque<>();
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final AtomicReference<IOException> failure
+        = new AtomicReference<>();
+
+    /**
+     * Constructor
+     *
+     * @param fs the filesystem
+     * @param glob the glob pattern
+     * @param executor the executor to list directories with
+     * @throws PatternSyntaxException the glob is invalid
+     */
+    public GlobFinder(final FileSystem fs, final String glob,
+        final Executor executor)
+    {
+        this.fs = Objects.requireNonNull(fs);
+        provider = fs.provider();
+        separator = fs.getSeparator();
+        automaton = GlobCompiler.compile(Objects.requireNonNull(glob));
+        start = startDirectory(fs, separator, glob);
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    /**
+     * Return the directory from which the search starts
+     *
+     * @return the directory
+     */
+    @Nonnull
+    public Path getStartDirectory()
+    {
+        return start;
+    }
+
+    @Override
+    public Iterator<Path> iterator()
+    {
+        if (closed.get())
+            throw new IllegalStateException("stream is closed");
+        if (started.getAndSet(true))
+            throw new IllegalStateException("iterator already obtained");
+
+        return new FinderIterator();
+    }
+
+    @Override
+    public void close()
+    {
+        closed.set(true);
+        queue.clear();
+        // Wake up the iterator, if it is waiting
+        queue.offer(END);
+    }
+
+    /*
+     * Start the search; called by the iterator when it is first asked for a
+     * result, so that the consumer is known when tasks start running
+     */
+    private void startSearch()
+    {
+        consumer = Thread.currentThread();
+
+        /*
+         * The state of the automaton for the children of the start directory
+         * is the state reached with the start directory and a separator
+         */
+        final String prefix = start.toString();
+        int state = automaton.run(GlobAutomaton.INITIAL, prefix);
+
+        if (state != GlobAutomaton.DEAD && !prefix.endsWith(separator))
+            state = automaton.run(state, separator);
+
+        if (state != GlobAutomaton.DEAD)
+            submit(start, state);
+    }
+
+    private void submit(final Path dir, final int state)
+    {
+        pendingTasks.incrementAndGet();
+
+        try {
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    list(dir, state);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            fail(new IOException("cannot list directory " + dir, e));
+            taskDone();
+        }
+    }
+
+    private void list(final Path dir, final int state)
+    {
+        try {
+            if (!closed.get())
+                listEntries(dir, state);
+        } catch (NoSuchFileException | NotDirectoryException ignored) {
+            // The directory has been removed or replaced meanwhile
+        } catch (IOException | DirectoryIteratorException e) {
+            fail(e instanceof DirectoryIteratorException
+                ? ((DirectoryIteratorException) e).getCause()
+                : (IOException) e);
+        } catch (RuntimeException e) {
+            fail(new IOException("cannot list directory " + dir, e));
+        } finally {
+            taskDone();
+        }
+    }
+
+    private void listEntries(final Path dir, final int state)
+        throws IOException
+    {
+        int entryState;
+
+        try (
+            final DirectoryStream<Path> stream
+                = provider.newDirectoryStream(dir, AcceptAll.INSTANCE);
+        ) {
+            for (final Path entry: stream) {
+                if (closed.get())
+                    return;
+                entryState = automaton.run(state,
+                    entry.getFileName().toString());
+                if (entryState == GlobAutomaton.DEAD)
+                    continue;
+                if (automaton.isAccepting(entryState) && !emit(entry))
+                    return;
+                entryState = automaton.run(entryState, separator);
+                if (entryState != GlobAutomaton.DEAD && isDirectory(entry))
+                    submit(entry, entryState);
+            }
+        }
+    }
+
+    private boolean isDirectory(final Path path)
+        throws IOException
+    {
+        try {
+            return provider.readAttributes(path, BasicFileAttributes.class,
+                LinkOption.NOFOLLOW_LINKS).isDirectory();
+        } catch (NoSuchFileException ignored) {
+            return false;
+        }
+    }
+
+    /*
+     * Put an element in the queue, waiting for space if needed; return false
+     * if the search is closed meanwhile
+     */
+    private boolean emit(final Object element)
+    {
+        if (Thread.currentThread() == consumer) {
+            if (!queue.offer(element))
+                overflow.add(element);
+            return !closed.get();
+        }
+
+        try {
+            while (!closed.get())
+                if (queue.offer(element, POLL_MILLIS, TimeUnit.MILLISECONDS))
+                    return true;
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+            closed.set(true);
+        }
+
+        return false;
+    }
+
+    private void fail(final IOException exception)
+    {
+        if (failure.compareAndSet(null, exception)) {
+            closed.set(true);
+            queue.clear();
+            queue.offer(END);
+        }
+    }
+
+    /*
+     * If the queue is full, there is no need to wake up the iterator: it
+     * checks for the end of the search once the queue is empty
+     */
+    private void taskDone()
+    {
+        if (pendingTasks.decrementAndGet() == 0)
+            queue.offer(END);
+    }
+
+    /*
+     * The literal directory prefix of an absolute glob, or the root directory
+     */
+    @Nonnull
+    private static Path startDirectory(final FileSystem fs,
+        final String separator, final String glob)
+    {
+        final Path root = fs.getRootDirectories().iterator().next();
+
+        if (!glob.startsWith(separator))
+            return root;
+
+        int end = 0;
+
+        while (end < glob.length() && "*?[{\\".indexOf(glob.charAt(end)) == -1)
+            end++;
+
+        end = glob.lastIndexOf(separator, end - 1);
+
+        return end <= 0 ? root : fs.getPath(glob.substring(0, end));
+    }
+
+    private final class FinderIterator
+        implements Iterator<Path>
+    {
+        private boolean searching = false;
+        private Object next;
+
+        @Override
+        public boolean hasNext()
+        {
+            if (!searching) {
+                searching = true;
+                startSearch();
+            }
+
+            if (next == null)
+                next = take();
+
+            if (next instanceof IOException) {
+                final IOException exception = (IOException) next;
+                next = END;
+                throw new DirectoryIteratorException(exception);
+            }
+
+            return next != END;
+        }
+
+        @Override
+        public Path next()
+        {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            final Path ret = (Path) next;
+            next = null;
+            return ret;
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        /*
+         * END only wakes up the iterator: the search is over when it is
+         * closed, or when no task is pending and all results have been
+         * returned. Tasks emit their results before they are done, so the
+         * number of pending tasks is read before checking the queue.
+         */
+        private Object take()
+        {
+            Object ret;
+
+            try {
+                while (true) {
+                    if (failure.get() != null)
+                        return failure.get();
+                    ret = queue.poll();
+                    if (ret == null && !closed.get())
+                        ret = overflow.poll();
+                    if (ret == null) {
+                        if (closed.get() || pendingTasks.get() == 0
+                            && queue.isEmpty())
+                            break;
+                        ret = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    }
+                    if (ret != null && ret != END && failure.get() == null)
+                        return ret;
+                }
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+                // Stop listing tasks
+                closed.set(true);
+                return new InterruptedIOException("interrupted while waiting"
+                    + " for results");
+            }
+
+            return failure.get() != null ? failure.get() : END;
+        }
+    }
+
+    private enum AcceptAll
+        implements DirectoryStream.Filter<Path>
+    {
+        INSTANCE;
+
+        @Override
+        public boolean accept(final Path entry)
+        {
+            return true;
+        }
+    }
+}
@@ -23,14 +23,37 @@ import javax.annotation.ParametersAreNonnullByDefault;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
+import java.nio.file.FileSystem;
 import java.nio.file.PathMatcher;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * A factory of {@link PathMatcher}s, by syntax
+ *
+ * <p>Compiled matchers are kept in a bounded cache, keyed by syntax and
+ * pattern, so that asking repeatedly for the same matcher (for instance, using
+ * {@link FileSystem#getPathMatcher(String)} in a loop) does not compile the
+ * pattern again each time. The cache has a fixed number of slots; a matcher
+ * is stored in the slot chosen by the hash code of its syntax and pattern,
+ * replacing whatever was there. It takes no lock.</p>
+ *
+ * <p>Since cached matchers are shared, all registered implementations must be
+ * thread safe.</p>
+ */
 @ParametersAreNonnullByDefault
 public class PathMatcherFactory
 {
+    /**
+     * The default number of slots of the matcher cache
+     */
+    public static final int DEFAULT_CACHE_CAPACITY = 256;
+
+    private static final int MAX_CACHE_CAPACITY = 1 << 30;
+
     private static final MethodHandles.Lookup LOOKUP
         = MethodHandles.publicLookup();
     private static final MethodType CONSTRUCTOR_TYPE
@@ -38,10 +61,49 @@ public class PathMatcherFactory
 
     private final Map<String, MethodHandle> handleMap
         = new HashMap<>();
+    private final Map<String, Class<? extends PathMatcher>> classMap
+        = new HashMap<>();
+
+    private final AtomicReferenceArray<CacheEntry> cache;
+    private final int mask;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
 
+    /**
+     * Constructor with the default cache capacity
+     */
     public PathMatcherFactory()
     {
-        registerPathMatcher("glob", GlobPathMatcher.class);
+        this(DEFAULT_CACHE_CAPACITY);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param cacheCapacity the number of slots of the matcher cache; rounded
+     * up to a power of two; {@code 0} disables the cache
+     * @throws IllegalArgumentException capacity is negative
+     */
+    public PathMatcherFactory(final int cacheCapacity)
+    {
+        if (cacheCapacity < 0)
+            throw new IllegalArgumentException("capacity must not be "
+                + "negative");
+
+        final int size;
+
+        if (cacheCapacity == 0)
+            size = 0;
+        else if (cacheCapacity >= MAX_CACHE_CAPACITY)
+            size = MAX_CACHE_CAPACITY;
+        else
+            size = Math.max(Integer.highestOneBit(cacheCapacity - 1) << 1, 1);
+
+        cache = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+
+        registerPathMatcher("glob", CompiledGlobPathMatcher.class);
         registerPathMatcher("regex", RegexPathMatcher.class);
     }
 
@@ -50,17 +112,77 @@ public class PathMatcherFactory
         Objects.requireNonNull(name);
         Objects.requireNonNull(arg);
 
-        final MethodHandle handle = handleMap.get(name);
-        if (handle == null)
-            throw new UnsupportedOperationException();
+        if (mask < 0)
+            return newPathMatcher(name, arg);
 
-        try {
-            return (PathMatcher) handle.invokeExact(arg);
-        } catch (Error error) {
-            throw error;
-        } catch (Throwable throwable) {
-            throw new RuntimeException("Unhandled exception", throwable);
+        final int hash = 31 * name.hashCode() + arg.hashCode();
+        final int index = (hash ^ hash >>> 16) & mask;
+        final CacheEntry entry = cache.get(index);
+
+        if (entry != null && entry.name.equals(name) && entry.arg.equals(arg)) {
+            hits.incrementAndGet();
+            return entry.matcher;
         }
+
+        final PathMatcher matcher = newPathMatcher(name, arg);
+
+        cache.set(index, new CacheEntry(name, arg, matcher));
+        misses.incrementAndGet();
+        return matcher;
+    }
+
+    /**
+     * Return the number of slots of the matcher cache
+     *
+     * @return the number of slots; {@code 0} if the cache is disabled
+     */
+    public final int getCacheCapacity()
+    {
+        return cache.length();
+    }
+
+    /**
+     * Return the number of matchers found in the cache
+     *
+     * @return the number of hits
+     */
+    public final long getCacheHitCount()
+    {
+        return hits.get();
+    }
+
+    /**
+     * Return the number of matchers which had to be compiled and were then
+     * stored in the cache
+     *
+     * @return the number of misses
+     */
+    public final long getCacheMissCount()
+    {
+        return misses.get();
+    }
+
+    /**
+     * Return a builder for a set of path matchers
+     *
+     * <p>See {@link PathMatcherSet} for how patterns are combined.</p>
+     *
+     * @return a new builder
+     */
+    @Nonnull
+    public final PathMatcherSet.Builder newPathMatcherSetBuilder()
+    {
+        return new PathMatcherSet.Builder(this);
+    }
+
+    /*
+     * Whether patterns of this syntax can be compiled into a combined
+     * automaton; this is only the case if the default implementation of the
+     * glob syntax is used
+     */
+    final boolean isCompiledGlob(final String name)
+    {
+        return classMap.get(name) == CompiledGlobPathMatcher.class;
     }
 
     protected final void registerPathMatcher(@Nonnull final String name,
@@ -80,5 +202,40 @@ public class PathMatcherFactory
 
         type = handle.type().changeReturnType(PathMatcher.class);
         handleMap.put(name, handle.asType(type));
+        classMap.put(name, matcherClass);
+
+        // Matchers cached for this syntax, if any, are now stale
+        for (int i = 0; i < cache.length(); i++)
+            cache.set(i, null);
+    }
+
+    private PathMatcher newPathMatcher(final String name, final String arg)
+    {
+        final MethodHandle handle = handleMap.get(name);
+        if (handle == null)
+            throw new UnsupportedOperationException();
+
+        try {
+            return (PathMatcher) handle.invokeExact(arg);
+        } catch (Error error) {
+            throw error;
+        } catch (Throwable throwable) {
+            throw new RuntimeException("Unhandled exception", throwable);
+        }
+    }
+
+    private static final class CacheEntry
+    {
+        private final String name;
+        private final String arg;
+        private final PathMatcher matcher;
+
+        private CacheEntry(final String name, final String arg,
+            final PathMatcher matcher)
+        {
+            this.name = name;
+            this.arg = arg;
+            this.matcher = matcher;
+        }
     }
 }
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.path.matchers;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A set of path matchers, matched against a path all at once
+ *
+ * <p>Each pattern added to the set is given an identifier, which is its index
+ * in the order of addition (starting from 0); {@link #match(Path)} returns the
+ * identifiers of all matching patterns.</p>
+ *
+ * <p>Glob patterns, when the {@code glob} syntax uses its default
+ * implementation ({@link CompiledGlobPathMatcher}), are all compiled into a
+ * single deterministic automaton: the path is then scanned only once,
+ * whatever the number of globs. If the combined automaton would be too large,
+ * globs are split into several automata. Patterns of other syntaxes, such as
+ * regexes, cannot be combined and are matched one after the other.</p>
+ *
+ * <p>Instances of this class are immutable and thread safe; they are obtained
+ * using {@link PathMatcherFactory#newPathMatcherSetBuilder()}.</p>
+ */
+@ParametersAreNonnullByDefault
+public final class PathMatcherSet
+{
+    private static final int[] NO_IDS = new int[0];
+
+    /*
+     * The maximum number of states of each automaton combining several globs;
+     * this is lower than GlobCompiler.MAX_STATES since a failed attempt to
+     * combine globs costs as much as building that many states. A single glob
+     * has the same limit as with PathMatcherFactory#getPathMatcher().
+     */
+    private static final int MAX_STATES = 4096;
+
+    private final int size;
+
+    /*
+     * For each automaton, the identifier of each of its patterns
+     */
+    private final GlobAutomaton[] automata;
+    private final int[][] automatonIds;
+
+    /*
+     * Matchers which could not be combined, and their identifiers
+     */
+    private final PathMatcher[] matchers;
+    private final int[] matcherIds;
+
+    private PathMatcherSet(final Builder builder)
+    {
+        size = builder.size;
+
+        final List<GlobAutomaton> automatonList = new ArrayList<>();
+        final List<int[]> idList = new ArrayList<>();
+
+        compile(builder.globs, builder.globIds, 0, builder.globs.size(),
+            automatonList, idList);
+
+        automata = automatonList.toArray(new GlobAutomaton[0]);
+        automatonIds = idList.toArray(new int[0][]);
+        matchers = builder.matchers.toArray(new PathMatcher[0]);
+
+        final int count = builder.matcherIds.size();
+        matcherIds = new int[count];
+        for (int i = 0; i < count; i++)
+            matcherIds[i] = builder.matcherIds.get(i);
+    }
+
+    /**
+     * Return the number of patterns in this set
+     *
+     * @return the number of patterns
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Return the identifiers of all patterns matching a path
+     *
+     * @param path the path
+     * @return the identifiers, in increasing order; empty if no pattern
+     * matches
+     */
+    @Nonnull
+    public int[] match(final Path path)
+    {
+        Objects.requireNonNull(path);
+
+        final boolean[] matched = new boolean[size];
+
+        if (automata.length != 0) {
+            final String[] components = GlobAutomaton.components(path);
+            for (int i = 0; i < automata.length; i++)
+                automata[i].collect(components, automatonIds[i], matched);
+        }
+
+        for (int i = 0; i < matchers.length; i++)
+            if (matchers[i].matches(path))
+                matched[matcherIds[i]] = true;
+
+        int count = 0;
+
+        for (final boolean b: matched)
+            if (b)
+                count++;
+
+        if (count == 0)
+            return NO_IDS;
+
+        final int[] ret = new int[count];
+        int index = 0;
+
+        for (int id = 0; id < size; id++)
+            if (matched[id])
+                ret[index++] = id;
+
+        return ret;
+    }
+
+    /**
+     * Tell whether at least one pattern of this set matches a path
+     *
+     * @param path the path
+     * @return true if at least one pattern matches
+     */
+    public boolean matchesAny(final Path path)
+    {
+        Objects.requireNonNull(path);
+
+        if (automata.length != 0) {
+            final String[] components = GlobAutomaton.components(path);
+            for (final GlobAutomaton automaton: automata)
+                if (automaton.matchesAny(components))
+                    return true;
+        }
+
+        for (final PathMatcher matcher: matchers)
+            if (matcher.matches(path))
+                return true;
+
+        return false;
+    }
+
+    /*
+     * Compile globs into as few automata as possible: if there are too many
+     * states, split the list of globs in two and try again
+     */
+    private static void compile(final List<String> globs,
+        final List<Integer> globIds, final int start, final int end,
+        final List<GlobAutomaton> automatonList, final List<int[]> idList)
+    {
+        if (start == end)
+            return;
+
+        final GlobCompiler compiler = new GlobCompiler();
+        final int[] ids = new int[end - start];
+
+        for (int i = start; i < end; i++) {
+            compiler.add(globs.get(i));
+            ids[i - start] = globIds.get(i);
+        }
+
+        final int maxStates = end - start == 1 ? GlobCompiler.MAX_STATES
+            : MAX_STATES;
+
+        try {
+            automatonList.add(compiler.compile(maxStates));
+            idList.add(ids);
+        } catch (PatternSyntaxException e) {
+            if (end - start == 1)
+                throw e;
+            final int middle = (start + end) >>> 1;
+            compile(globs, globIds, start, middle, automatonList, idList);
+            compile(globs, globIds, middle, end, automatonList, idList);
+        }
+    }
+
+    /**
+     * A builder for a {@link PathMatcherSet}
+     *
+     * <p>This class is not thread safe.</p>
+     */
+    public static final class Builder
+    {
+        private final PathMatcherFactory factory;
+
+        private int size = 0;
+
+        private final List<String> globs = new ArrayList<>();
+        private final List<Integer> globIds = new ArrayList<>();
+
+        private final List<PathMatcher> matchers = new ArrayList<>();
+        private final List<Integer> matcherIds = new ArrayList<>();
+
+        Builder(final PathMatcherFactory factory)
+        {
+            this.factory = factory;
+        }
+
+        /**
+         * Add a pattern
+         *
+         * @param syntax the syntax (for instance, {@code glob})
+         * @param pattern the pattern
+         * @return the identifier of this pattern
+         * @throws UnsupportedOperationException syntax is not supported
+         * @throws PatternSyntaxException the pattern is invalid
+         *
+         * @see PathMatcherFactory#getPathMatcher(String, String)
+         */
+        public int add(final String syntax, final String pattern)
+        {
+            Objects.requireNonNull(syntax);
+            Objects.requireNonNull(pattern);
+
+            if (factory.isCompiledGlob(syntax)) {
+                // Check the syntax now rather than when building
+                new GlobCompiler().add(pattern);
+                globs.add(pattern);
+                globIds.add(size);
+            } else {
+                matchers.add(factory.getPathMatcher(syntax, pattern));
+                matcherIds.add(size);
+            }
+
+            return size++;
+        }
+
+        /**
+         * Build the set of matchers
+         *
+         * <p>The builder can still be used afterwards.</p>
+         *
+         * @return a new set of matchers
+         * @throws PatternSyntaxException a glob is too complex to be compiled
+         */
+        @Nonnull
+        public PathMatcherSet build()
+        {
+            return new PathMatcherSet(this);
+        }
+    }
+}
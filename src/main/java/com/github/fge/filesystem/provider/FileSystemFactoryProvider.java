@@ -21,11 +21,13 @@ package com.github.fge.filesystem.provider;
 import com.github.fge.filesystem.attributes.FileAttributesFactory;
 import com.github.fge.filesystem.options.FileSystemOptionsFactory;
 import com.github.fge.filesystem.path.PathElementsFactory;
+import com.github.fge.filesystem.path.SegmentInterner;
 import com.github.fge.filesystem.path.UnixPathElementsFactory;
 import com.github.fge.filesystem.path.matchers.PathMatcherFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Map;
 import java.util.Objects;
 
 @ParametersAreNonnullByDefault
@@ -56,6 +58,27 @@ public class FileSystemFactoryProvider
         return pathElementsFactory;
     }
 
+    /**
+     * Return the path elements factory for a new filesystem
+     *
+     * <p>If the environment enables {@link SegmentInterner#ENV_KEY name
+     * element interning}, this is a factory with a new interner; otherwise it
+     * is the same as {@link #getPathElementsFactory()}.</p>
+     *
+     * @param env the environment of the new filesystem
+     * @return a path elements factory
+     * @throws IllegalArgumentException illegal interning value in the
+     * environment
+     */
+    @Nonnull
+    public final PathElementsFactory getPathElementsFactory(
+        final Map<String, ?> env)
+    {
+        final SegmentInterner interner = SegmentInterner.fromEnv(env);
+        return interner == null ? pathElementsFactory
+            : pathElementsFactory.withInterner(interner);
+    }
+
     @Nonnull
     public final PathMatcherFactory getPathMatcherFactory()
     {
@@ -21,13 +21,18 @@ package com.github.fge.filesystem.provider;
 import com.github.fge.filesystem.driver.FileSystemDriver;
 import com.github.fge.filesystem.exceptions.IllegalOptionSetException;
 import com.github.fge.filesystem.exceptions.UnsupportedOptionException;
+import com.github.fge.filesystem.fs.GenericFileSystem;
 import com.github.fge.filesystem.options.FileSystemOptionsFactory;
+import com.github.fge.filesystem.path.AbsentPathCache;
+import com.github.fge.filesystem.path.ResolvedPathCache;
 
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.AccessDeniedException;
 import java.nio.file.AccessMode;
@@ -39,6 +44,7 @@ import java.nio.file.FileStore;
 import java.nio.file.FileSystem;
 import java.nio.file.LinkOption;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.NotLinkException;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
@@ -142,8 +148,10 @@ public abstract class FileSystemProviderBase
      * Open an input stream to an existing path
      *
      * <p>This method checks the existence of the file before delegating the
-     * creation of the input stream to the relevant driver. The driver is also
-     * responsible to deal with the target not being a directory.</p>
+     * creation of the input stream to the relevant driver, unless the driver
+     * {@link FileSystemDriver#performsAccessChecks() performs this check
+     * itself}. The driver is also responsible to deal with the target not
+     * being a directory.</p>
      *
      * @param path the path to open
      * @param options open options
@@ -162,9 +170,19 @@ public abstract class FileSystemProviderBase
             = optionsFactory.compileReadOptions(options);
         final FileSystemDriver driver = repository.getDriver(path);
 
-        driver.checkAccess(path);
+        if (!driver.performsAccessChecks()) {
+            probe(driver, path);
+            return driver.newInputStream(path, optionSet);
+        }
+
+        final long generation = checkNotAbsent(path);
 
-        return driver.newInputStream(path, optionSet);
+        try {
+            return driver.newInputStream(path, optionSet);
+        } catch (NoSuchFileException e) {
+            absent(path, generation);
+            throw e;
+        }
     }
 
     /**
@@ -184,7 +202,12 @@ public abstract class FileSystemProviderBase
      * </ul>
      *
      * <p>All other checks, such as for instance the target being a directory
-     * and not a file, are left to the driver.</p>
+     * and not a file, are left to the driver. If the driver {@link
+     * FileSystemDriver#performsAccessChecks() performs access checks itself},
+     * the checks above are left to the driver as well; if neither {@link
+     * StandardOpenOption#CREATE} nor {@link StandardOpenOption#CREATE_NEW} is
+     * set, paths known to be absent are still reported as such without
+     * calling the driver.</p>
      *
      * @param path the path to open
      * @param options the set of open options
@@ -204,17 +227,43 @@ public abstract class FileSystemProviderBase
         final Set<OpenOption> optionSet
             = optionsFactory.compileWriteOptions(options);
         final FileSystemDriver driver = repository.getDriver(path);
+        final boolean mustExist = driver.performsAccessChecks()
+            && !optionSet.contains(StandardOpenOption.CREATE)
+            && !optionSet.contains(StandardOpenOption.CREATE_NEW);
+        long generation = 0L;
+
+        if (mustExist)
+            generation = checkNotAbsent(path);
+        else if (!driver.performsAccessChecks()) {
+            if (exists(driver, path, AccessMode.WRITE)) {
+                if (optionSet.contains(StandardOpenOption.CREATE_NEW))
+                    throw new FileAlreadyExistsException(path.toString());
+            } else if (!optionSet.contains(StandardOpenOption.CREATE))
+                throw new NoSuchFileException(path.toString());
+        }
+
+        invalidateMetadata(driver, path);
+
+        final OutputStream out;
 
         try {
-            driver.checkAccess(path, AccessMode.WRITE);
-            if (optionSet.contains(StandardOpenOption.CREATE_NEW))
-                throw new FileAlreadyExistsException(path.toString());
+            out = driver.newOutputStream(path, optionSet);
         } catch (NoSuchFileException e) {
-            if (!optionSet.contains(StandardOpenOption.CREATE))
-                throw e;
+            /*
+             * Nothing has been created; if the path had to exist, the driver
+             * has just told us that it does not
+             */
+            if (mustExist)
+                absent(path, generation);
+            throw e;
+        } catch (IOException | RuntimeException | Error e) {
+            created(path);
+            throw e;
         }
 
-        return driver.newOutputStream(path, optionSet);
+        created(path);
+
+        return new MetadataInvalidatingOutputStream(out, driver, path);
     }
 
     /**
@@ -239,7 +288,22 @@ public abstract class FileSystemProviderBase
             throw new UnsupportedOperationException("TODO");
         final FileSystemDriver driver = repository.getDriver(path);
         // TODO: check existence/creation
-        return driver.newByteChannel(path, options, attrs);
+        final SeekableByteChannel channel;
+
+        try {
+            channel = driver.newByteChannel(path, options, attrs);
+        } finally {
+            if (options.contains(StandardOpenOption.CREATE)
+                || options.contains(StandardOpenOption.CREATE_NEW))
+                created(path);
+        }
+
+        if (!options.contains(StandardOpenOption.WRITE)
+            && !options.contains(StandardOpenOption.APPEND))
+            return channel;
+
+        invalidateMetadata(driver, path);
+        return new MetadataInvalidatingChannel(channel, driver, path);
     }
 
     /**
@@ -267,7 +331,7 @@ public abstract class FileSystemProviderBase
     {
         // TODO: EXECUTE permission not checked; unneeded on Unix. Others?
         final FileSystemDriver driver = repository.getDriver(dir);
-        driver.checkAccess(dir, AccessMode.READ);
+        probe(driver, dir, AccessMode.READ);
         return driver.newDirectoryStream(dir, filter);
     }
 
@@ -296,24 +360,23 @@ public abstract class FileSystemProviderBase
 
         final FileSystemDriver driver = repository.getDriver(dir);
 
-        try {
-            checkAccess(dir);
+        if (exists(driver, dir))
             throw new FileAlreadyExistsException(dir.toString());
-        } catch (NoSuchFileException ignored) {
-            /*
-             * We only ignore the exception if the entry does NOT exist; any
-             * other IOException is a problem, so let it through
-             */
-        }
 
-        driver.createDirectory(dir, attrs);
+        try {
+            driver.createDirectory(dir, attrs);
+        } finally {
+            invalidateMetadata(driver, dir);
+            created(dir);
+        }
     }
 
     /**
      * Delete an entry on the filesystem
      *
      * <p>This method will check whether the path actually exists before
-     * delegating to the driver.</p>
+     * delegating to the driver, unless the driver {@link
+     * FileSystemDriver#performsAccessChecks() performs this check itself}.</p>
      *
      * <p><strong>Recall:</strong> this operation does <em>not</em> perform
      * recursive deletions. It is up to the driver to check whether the target
@@ -331,8 +394,27 @@ public abstract class FileSystemProviderBase
         throws IOException
     {
         final FileSystemDriver driver = repository.getDriver(path);
-        driver.checkAccess(path);
-        driver.delete(path);
+        final boolean checked = driver.performsAccessChecks();
+        final long generation;
+
+        if (checked) {
+            generation = checkNotAbsent(path);
+        } else {
+            probe(driver, path);
+            generation = 0L;
+        }
+
+        try {
+            driver.delete(path);
+            removed(path);
+        } catch (NoSuchFileException e) {
+            if (checked)
+                absent(path, generation);
+            throw e;
+        } finally {
+            invalidateResolvedPaths(path);
+            invalidateMetadata(driver, path);
+        }
     }
 
     /**
@@ -375,47 +457,53 @@ public abstract class FileSystemProviderBase
         final FileSystemDriver src = repository.getDriver(source);
         final FileSystemDriver dst = repository.getDriver(target);
 
-        src.checkAccess(source);
-        try {
-            dst.checkAccess(target);
-            if (!optionSet.contains(StandardCopyOption.REPLACE_EXISTING))
-                throw new FileAlreadyExistsException(target.toString());
-        } catch (NoSuchFileException ignored) {
-        }
-
-        /*
-         * If the same filesystem, call the (hopefully optimize) copy method
-         * from the driver.
-         */
-        //noinspection ObjectEquality
-        if (src == dst) {
-            src.copy(source, target, optionSet);
-            return;
-        }
+        probe(src, source);
+        if (exists(dst, target)
+            && !optionSet.contains(StandardCopyOption.REPLACE_EXISTING))
+            throw new FileAlreadyExistsException(target.toString());
 
-        /*
-         * Otherwise, translate the copy options and do a regular stream copy.
-         */
-        final Set<OpenOption> readOptions
-            = optionsFactory.toReadOptions(optionSet);
-        final Set<OpenOption> writeOptions
-            = optionsFactory.toWriteOptions(optionSet);
+        try {
+            /*
+             * If the same filesystem, call the (hopefully optimize) copy
+             * method from the driver.
+             */
+            //noinspection ObjectEquality
+            if (src == dst) {
+                src.copy(source, target, optionSet);
+                return;
+            }
 
-        try (
             /*
-             * It is delegated to the drivers to see whether the source or
-             * target are directories
+             * Otherwise, translate the copy options and do a regular stream
+             * copy.
              */
-            final InputStream in = src.newInputStream(source, readOptions);
-            final OutputStream out = dst.newOutputStream(source, writeOptions);
-        ) {
-            final byte[] buf = new byte[BUFSIZE];
-            int bytesRead;
+            final Set<OpenOption> readOptions
+                = optionsFactory.toReadOptions(optionSet);
+            final Set<OpenOption> writeOptions
+                = optionsFactory.toWriteOptions(optionSet);
 
-            while ((bytesRead = in.read(buf)) != -1)
-                out.write(buf, 0, bytesRead);
+            try (
+                /*
+                 * It is delegated to the drivers to see whether the source or
+                 * target are directories
+                 */
+                final InputStream in
+                    = src.newInputStream(source, readOptions);
+                final OutputStream out
+                    = dst.newOutputStream(source, writeOptions);
+            ) {
+                final byte[] buf = new byte[BUFSIZE];
+                int bytesRead;
 
-            out.flush();
+                while ((bytesRead = in.read(buf)) != -1)
+                    out.write(buf, 0, bytesRead);
+
+                out.flush();
+            }
+        } finally {
+            invalidateResolvedPaths(target);
+            invalidateSubtreeMetadata(dst, target);
+            created(target);
         }
     }
 
@@ -457,38 +545,51 @@ public abstract class FileSystemProviderBase
         final FileSystemDriver src = repository.getDriver(source);
         final FileSystemDriver dst = repository.getDriver(target);
 
-        /*
-         * If the same filesystem, call the (hopefully optimize) move method
-         * from the driver.
-         */
-        //noinspection ObjectEquality
-        if (src == dst) {
-            src.move(source, target, optionSet);
-            return;
-        }
+        try {
+            /*
+             * If the same filesystem, call the (hopefully optimize) move
+             * method from the driver.
+             */
+            //noinspection ObjectEquality
+            if (src == dst) {
+                src.move(source, target, optionSet);
+                removed(source);
+                return;
+            }
+
+            /*
+             * Otherwise, translate the copy options and do a regular stream
+             * copy.
+             */
+            // TODO!!
+            final Set<OpenOption> readOptions
+                = optionsFactory.toReadOptions(optionSet);
+            final Set<OpenOption> writeOptions
+                = optionsFactory.toWriteOptions(optionSet);
+            try (
+                final InputStream in
+                    = src.newInputStream(source, readOptions);
+                final OutputStream out
+                    = dst.newOutputStream(source, writeOptions);
+            ) {
+                final byte[] buf = new byte[BUFSIZE];
+                int bytesRead;
 
-        /*
-         * Otherwise, translate the copy options and do a regular stream copy.
-         */
-        // TODO!!
-        final Set<OpenOption> readOptions
-            = optionsFactory.toReadOptions(optionSet);
-        final Set<OpenOption> writeOptions
-            = optionsFactory.toWriteOptions(optionSet);
-        try (
-            final InputStream in = src.newInputStream(source, readOptions);
-            final OutputStream out = dst.newOutputStream(source, writeOptions);
-        ) {
-            final byte[] buf = new byte[BUFSIZE];
-            int bytesRead;
-
-            while ((bytesRead = in.read(buf)) != -1)
-                out.write(buf, 0, bytesRead);
+                while ((bytesRead = in.read(buf)) != -1)
+                    out.write(buf, 0, bytesRead);
 
-            out.flush();
-        }
+                out.flush();
+            }
 
-        src.delete(source);
+            src.delete(source);
+            removed(source);
+        } finally {
+            invalidateResolvedPaths(source);
+            invalidateResolvedPaths(target);
+            invalidateSubtreeMetadata(src, source);
+            invalidateSubtreeMetadata(dst, target);
+            created(target);
+        }
     }
 
     /**
@@ -519,8 +620,8 @@ public abstract class FileSystemProviderBase
         if (driver != driver2)
             return false;
 
-        driver.checkAccess(path);
-        driver.checkAccess(path2);
+        probe(driver, path);
+        probe(driver, path2);
 
         return driver.isSameFile(path, path2);
     }
@@ -549,6 +650,12 @@ public abstract class FileSystemProviderBase
      *
      * <p>Passing no modes argument typically only makes an existence check.</p>
      *
+     * <p>If the filesystem has a {@link GenericFileSystem#getAbsentPathCache()
+     * cache of absent paths}, a {@link NoSuchFileException} is thrown without
+     * calling the driver if the path, or one of its ancestors, is known not to
+     * exist; this is also the case of all existence checks made by other
+     * methods of this class.</p>
+     *
      * @param path the path to check
      * @param modes the modes to check against
      * @throws IOException error accessing path information
@@ -559,7 +666,7 @@ public abstract class FileSystemProviderBase
     public final void checkAccess(final Path path, final AccessMode... modes)
         throws IOException
     {
-        repository.getDriver(path).checkAccess(path, modes);
+        probe(repository.getDriver(path), path, modes);
     }
 
     @Override
@@ -597,8 +704,34 @@ public abstract class FileSystemProviderBase
         throws IOException
     {
         optionsFactory.checkLinkOptions(options);
-        repository.getDriver(path)
-            .setAttribute(path, attribute, value, options);
+        final FileSystemDriver driver = repository.getDriver(path);
+        try {
+            driver.setAttribute(path, attribute, value, options);
+        } finally {
+            invalidateMetadata(driver, path);
+        }
+    }
+
+    /**
+     * Read the target of a symbolic link
+     *
+     * @param link the path to the symbolic link
+     * @return the target of the link
+     * @throws NotLinkException the path is not a symbolic link
+     * @throws IOException other I/O error
+     *
+     * @see FileSystemDriver#getLinkTarget(Path)
+     */
+    @Override
+    public final Path readSymbolicLink(final Path link)
+        throws IOException
+    {
+        final Path target = repository.getDriver(link).getLinkTarget(link);
+
+        if (target == null)
+            throw new NotLinkException(link.toString());
+
+        return target;
     }
 
     @Override
@@ -608,4 +741,316 @@ public abstract class FileSystemProviderBase
         // See GenericFileSystem: only one file store per filesystem
         return path.getFileSystem().getFileStores().iterator().next();
     }
+
+    /*
+     * Invalidate the resolved paths under a path, after an operation which may
+     * have removed or replaced it
+     *
+     * The operation applies to the path itself, not to what it resolves to if
+     * it is a link: what is invalidated is the real path of its parent with
+     * its file name appended. Since the real parent has no links, normalizing
+     * the result is safe.
+     *
+     * See ResolvedPathCache
+     */
+    private static void invalidateResolvedPaths(final Path path)
+    {
+        final FileSystem fs = path.getFileSystem();
+
+        if (!(fs instanceof GenericFileSystem))
+            return;
+
+        final GenericFileSystem genericFs = (GenericFileSystem) fs;
+
+        if (!genericFs.getDriver().supportsLinks())
+            return;
+
+        final ResolvedPathCache cache = genericFs.getResolvedPathCache();
+        final Path absolute = path.toAbsolutePath();
+        final Path parent = absolute.getParent();
+        final Path name = absolute.getFileName();
+
+        if (parent == null || name == null) {
+            cache.invalidate();
+            return;
+        }
+
+        try {
+            cache.invalidate(parent.toRealPath().resolve(name).normalize());
+        } catch (IOException ignored) {
+            cache.invalidate();
+        }
+    }
+
+    /*
+     * Check access to a path, using the cache of absent paths of its
+     * filesystem if any
+     *
+     * See AbsentPathCache
+     */
+    private static void probe(final FileSystemDriver driver, final Path path,
+        final AccessMode... modes)
+        throws IOException
+    {
+        if (!exists(driver, path, modes))
+            throw new NoSuchFileException(path.toString());
+    }
+
+    /*
+     * Same as probe(), but return false instead of throwing an exception if
+     * the path does not exist; for paths which are expected not to exist,
+     * such as the target of a creation
+     *
+     * See FileSystemDriver#checkAccessIfExists()
+     */
+    private static boolean exists(final FileSystemDriver driver,
+        final Path path, final AccessMode... modes)
+        throws IOException
+    {
+        final AbsentPathCache cache = absentPaths(path);
+
+        if (cache == null)
+            return driver.checkAccessIfExists(path, modes);
+
+        if (cache.isAbsent(path))
+            return false;
+
+        final long generation = cache.getGeneration();
+
+        if (driver.checkAccessIfExists(path, modes))
+            return true;
+
+        cache.absent(path, generation);
+        return false;
+    }
+
+    /*
+     * Used when the driver checks access by itself: fail if a path is known
+     * to be absent; otherwise, return the generation to pass to absent() if
+     * the driver reports that the path does not exist
+     *
+     * See FileSystemDriver#performsAccessChecks()
+     */
+    private static long checkNotAbsent(final Path path)
+        throws NoSuchFileException
+    {
+        final AbsentPathCache cache = absentPaths(path);
+
+        if (cache == null)
+            return 0L;
+
+        if (cache.isAbsent(path))
+            throw new NoSuchFileException(path.toString());
+
+        return cache.getGeneration();
+    }
+
+    /*
+     * Record that the driver reported a path as absent
+     */
+    private static void absent(final Path path, final long generation)
+    {
+        final AbsentPathCache cache = absentPaths(path);
+
+        if (cache != null)
+            cache.absent(path, generation);
+    }
+
+    /*
+     * Record that a path may have been created
+     */
+    private static void created(final Path path)
+    {
+        final AbsentPathCache cache = absentPaths(path);
+
+        if (cache != null)
+            cache.created(path);
+    }
+
+    /*
+     * Record that a path has been removed
+     */
+    private static void removed(final Path path)
+    {
+        final AbsentPathCache cache = absentPaths(path);
+
+        if (cache != null)
+            cache.absent(path);
+    }
+
+    @Nullable
+    private static AbsentPathCache absentPaths(final Path path)
+    {
+        final FileSystem fs = path.getFileSystem();
+
+        return fs instanceof GenericFileSystem
+            ? ((GenericFileSystem) fs).getAbsentPathCache() : null;
+    }
+
+    /*
+     * Invalidate cached metadata for a path which may have been modified,
+     * created or removed; this also modifies its parent directory, if any
+     *
+     * See PathMetadataCache
+     */
+    private static void invalidateMetadata(final FileSystemDriver driver,
+        final Path path)
+    {
+        driver.invalidatePathMetadata(path);
+
+        final Path parent = path.toAbsolutePath().getParent();
+
+        if (parent != null)
+            driver.invalidatePathMetadata(parent);
+    }
+
+    /*
+     * Same as invalidateMetadata(), for a path which may be a directory which
+     * has been moved or replaced; the metadata of all paths under it is
+     * invalidated as well
+     */
+    private static void invalidateSubtreeMetadata(
+        final FileSystemDriver driver, final Path path)
+    {
+        driver.invalidateSubtreeMetadata(path);
+
+        final Path parent = path.toAbsolutePath().getParent();
+
+        if (parent != null)
+            driver.invalidatePathMetadata(parent);
+    }
+
+    /*
+     * An output stream invalidating cached metadata for its path when closed
+     *
+     * Unlike FilterOutputStream, errors when closing the underlying stream
+     * are not ignored
+     */
+    private static final class MetadataInvalidatingOutputStream
+        extends OutputStream
+    {
+        private final OutputStream out;
+        private final FileSystemDriver driver;
+        private final Path path;
+
+        private MetadataInvalidatingOutputStream(final OutputStream out,
+            final FileSystemDriver driver, final Path path)
+        {
+            this.out = out;
+            this.driver = driver;
+            this.path = path;
+        }
+
+        @Override
+        public void write(final int b)
+            throws IOException
+        {
+            out.write(b);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len)
+            throws IOException
+        {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush()
+            throws IOException
+        {
+            out.flush();
+        }
+
+        @Override
+        public void close()
+            throws IOException
+        {
+            try {
+                out.close();
+            } finally {
+                invalidateMetadata(driver, path);
+            }
+        }
+    }
+
+    /*
+     * A channel invalidating cached metadata for its path when closed
+     */
+    private static final class MetadataInvalidatingChannel
+        implements SeekableByteChannel
+    {
+        private final SeekableByteChannel channel;
+        private final FileSystemDriver driver;
+        private final Path path;
+
+        private MetadataInvalidatingChannel(final SeekableByteChannel channel,
+            final FileSystemDriver driver, final Path path)
+        {
+            this.channel = channel;
+            this.driver = driver;
+            this.path = path;
+        }
+
+        @Override
+        public int read(final ByteBuffer dst)
+            throws IOException
+        {
+            return channel.read(dst);
+        }
+
+        @Override
+        public int write(final ByteBuffer src)
+            throws IOException
+        {
+            return channel.write(src);
+        }
+
+        @Override
+        public long position()
+            throws IOException
+        {
+            return channel.position();
+        }
+
+        @Override
+        public SeekableByteChannel position(final long newPosition)
+            throws IOException
+        {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size()
+            throws IOException
+        {
+            return channel.size();
+        }
+
+        @Override
+        public SeekableByteChannel truncate(final long size)
+            throws IOException
+        {
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close()
+            throws IOException
+        {
+            try {
+                channel.close();
+            } finally {
+                invalidateMetadata(driver, path);
+            }
+        }
+    }
 }
@@ -20,11 +20,16 @@ package com.github.fge.filesystem.provider;
 
 import com.github.fge.filesystem.driver.FileSystemDriver;
 import com.github.fge.filesystem.fs.GenericFileSystem;
+import com.github.fge.filesystem.path.AbsentPathCache;
+import com.github.fge.filesystem.path.PathElementsFactory;
+import com.github.fge.filesystem.path.ResolvedPathCache;
+import com.github.fge.filesystem.path.SegmentInterner;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.nio.file.ClosedFileSystemException;
 import java.nio.file.FileSystem;
@@ -32,16 +37,42 @@ import java.nio.file.FileSystemAlreadyExistsException;
 import java.nio.file.FileSystemNotFoundException;
 import java.nio.file.Path;
 import java.nio.file.spi.FileSystemProvider;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 
 @ParametersAreNonnullByDefault
 public abstract class FileSystemRepositoryBase
     implements FileSystemRepository
 {
     private final String scheme;
-    private final Map<URI, GenericFileSystem> filesystems = new HashMap<>();
+    /*
+     * No lock is ever taken on this map, see createFileSystem() for how
+     * creations are serialized per URI.
+     */
+    private final Map<URI, GenericFileSystem> filesystems
+        = new ConcurrentHashMap<>();
+    /*
+     * Filesystem creations in progress. An entry is only removed once the
+     * filesystem, if successfully created, has been put in the map above.
+     */
+    private final ConcurrentMap<URI, FutureTask<GenericFileSystem>> creations
+        = new ConcurrentHashMap<>();
+    /*
+     * Used by getPath(URI)
+     */
+    private final UriPrefixIndex index = new UriPrefixIndex();
+    /*
+     * Null unless driver eviction is enabled
+     */
+    private volatile IdleDriverPool pool = null;
 
     protected final FileSystemFactoryProvider factoryProvider;
 
@@ -72,6 +103,120 @@ public abstract class FileSystemRepositoryBase
         Map<String, ?> env)
         throws IOException;
 
+    /**
+     * Enable eviction of idle drivers
+     *
+     * <p>Once enabled, the drivers of the filesystems created by this
+     * repository are closed when idle, or when there are too many active
+     * drivers (least recently used first). The filesystems themselves remain
+     * open and registered: a driver which has been evicted is created again,
+     * using {@link #createDriver(URI, Map)} with the URI and environment
+     * originally used to create the filesystem, when it is next used.</p>
+     *
+     * <p>A driver is never evicted while one of its methods is executing, nor
+     * while a stream, channel or directory stream obtained from it is open;
+     * its idle time only starts once all of them have been closed.</p>
+     *
+     * <p>This method must be called before any filesystem is created,
+     * typically from the constructor of the implementation.</p>
+     *
+     * @param maxActiveDrivers the maximum number of active drivers ({@code 0}
+     * for no limit)
+     * @param idleTime the time after which an idle driver is evicted ({@code
+     * 0} for no limit)
+     * @param unit the time unit of the idle time
+     * @throws IllegalStateException filesystems have already been created
+     * @throws IllegalArgumentException a negative limit has been supplied
+     *
+     * @see #evictIdleDrivers()
+     */
+    protected final void setDriverEviction(final int maxActiveDrivers,
+        final long idleTime, final TimeUnit unit)
+    {
+        Objects.requireNonNull(unit);
+        if (!filesystems.isEmpty() || !creations.isEmpty())
+            throw new IllegalStateException("filesystems have already been"
+                + " created");
+        pool = new IdleDriverPool(maxActiveDrivers, idleTime, unit);
+    }
+
+    /**
+     * Evict all drivers which have been idle for longer than the configured
+     * idle time
+     *
+     * <p>Idle drivers are also swept when a driver is created, at most once
+     * per idle time period; this method can be used if there is no such
+     * activity, for instance from a scheduled task.</p>
+     *
+     * @return the number of evicted drivers; always {@code 0} if eviction is
+     * not enabled
+     */
+    public final int evictIdleDrivers()
+    {
+        final IdleDriverPool p = pool;
+        return p == null ? 0 : p.evictIdle();
+    }
+
+    /**
+     * Get the number of drivers which are currently active
+     *
+     * @return the number of active drivers; always {@code 0} if eviction is
+     * not enabled
+     */
+    public final int getActiveDriverCount()
+    {
+        final IdleDriverPool p = pool;
+        return p == null ? 0 : p.getActiveCount();
+    }
+
+    /**
+     * Get the total number of drivers evicted so far
+     *
+     * @return the number of evictions; always {@code 0} if eviction is not
+     * enabled
+     */
+    public final long getDriverEvictionCount()
+    {
+        final IdleDriverPool p = pool;
+        return p == null ? 0L : p.getEvictionCount();
+    }
+
+    /**
+     * Get the total number of drivers created again after an eviction
+     *
+     * @return the number of drivers created again; always {@code 0} if
+     * eviction is not enabled
+     */
+    public final long getDriverReloadCount()
+    {
+        final IdleDriverPool p = pool;
+        return p == null ? 0L : p.getReloadCount();
+    }
+
+    /**
+     * Create a new filesystem for this repository
+     *
+     * <p>No lock is held while {@link #createDriver(URI, Map)} is called:
+     * creations for different URIs proceed in parallel and do not block any
+     * other operation of this repository.</p>
+     *
+     * <p>If a creation for the same URI is already in progress, this method
+     * waits for it to complete; if it succeeds, a {@link
+     * FileSystemAlreadyExistsException} is thrown, otherwise creation is
+     * attempted again.</p>
+     *
+     * @param provider the provider creating this filesystem
+     * @param uri the URI of the filesystem
+     * @param env the environment to create the driver with
+     * @return a new filesystem
+     * @throws FileSystemAlreadyExistsException a filesystem already exists for
+     * this URI
+     * @throws InterruptedIOException interrupted while waiting for another
+     * creation for the same URI
+     * @throws IOException failed to create the driver
+     * @throws IllegalArgumentException the environment has an illegal value
+     * for {@link SegmentInterner#ENV_KEY} or {@link AbsentPathCache#ENV_KEY}
+     */
     @Override
     @Nonnull
     public final FileSystem createFileSystem(final FileSystemProvider provider,
@@ -82,14 +227,55 @@ public abstract class FileSystemRepositoryBase
         Objects.requireNonNull(env);
         checkURI(uri);
 
-        synchronized (filesystems) {
+        final PathElementsFactory pathElementsFactory
+            = factoryProvider.getPathElementsFactory(env);
+        final AbsentPathCache absentPathCache = AbsentPathCache.fromEnv(env);
+        final ResolvedPathCache resolvedPathCache
+            = ResolvedPathCache.fromEnv(env);
+
+        final FutureTask<GenericFileSystem> task = new FutureTask<>(
+            new Callable<GenericFileSystem>()
+            {
+                @Override
+                public GenericFileSystem call()
+                    throws IOException
+                {
+                    final IdleDriverPool p = pool;
+                    FileSystemDriver driver = createDriver(uri, env);
+                    if (p != null)
+                        driver = p.wrap(FileSystemRepositoryBase.this, uri,
+                            Collections.unmodifiableMap(
+                                new HashMap<String, Object>(env)), driver);
+                    return new GenericFileSystem(uri,
+                        FileSystemRepositoryBase.this, driver, provider,
+                        pathElementsFactory, absentPathCache,
+                        resolvedPathCache);
+                }
+            }
+        );
+
+        FutureTask<GenericFileSystem> other;
+
+        while ((other = creations.putIfAbsent(uri, task)) != null) {
+            if (getCreated(other) != null)
+                throw new FileSystemAlreadyExistsException();
+            /*
+             * The other creation failed; its thread may not have removed it
+             * yet, so do it ourselves rather than spin until it does
+             */
+            creations.remove(uri, other);
+        }
+
+        try {
             if (filesystems.containsKey(uri))
                 throw new FileSystemAlreadyExistsException();
-            final FileSystemDriver driver = createDriver(uri, env);
-            final GenericFileSystem fs
-                = new GenericFileSystem(uri, this, driver, provider);
+            task.run();
+            final GenericFileSystem fs = getResult(task);
             filesystems.put(uri, fs);
+            index.put(uri, fs);
             return fs;
+        } finally {
+            creations.remove(uri, task);
         }
     }
 
@@ -99,11 +285,7 @@ public abstract class FileSystemRepositoryBase
     {
         checkURI(uri);
 
-        final FileSystem fs;
-
-        synchronized (filesystems) {
-            fs = filesystems.get(uri);
-        }
+        final FileSystem fs = filesystems.get(uri);
 
         if (fs == null)
             throw new FileSystemNotFoundException();
@@ -111,55 +293,74 @@ public abstract class FileSystemRepositoryBase
         return fs;
     }
 
-    // Note: fs never created automatically
+    /**
+     * Get a path from a URI
+     *
+     * <p>The filesystem is the open filesystem of this repository with the
+     * longest URI matching the beginning of the URI argument; the lookup is
+     * done on a {@link UriPrefixIndex prefix index}, its cost therefore does
+     * not depend on the number of registered filesystems.</p>
+     *
+     * <p>The returned path is absolute; its names are the path segments of the
+     * URI which follow the path of the filesystem URI. Note that filesystems
+     * are never created automatically.</p>
+     *
+     * @param uri the URI
+     * @return the path
+     * @throws FileSystemNotFoundException no open filesystem matches this URI
+     */
     @Override
     @Nonnull
     public final Path getPath(final URI uri)
     {
         checkURI(uri);
 
-        URI tmp;
-        GenericFileSystem fs;
-        String path;
-
-        synchronized (filesystems) {
-            for (final Map.Entry<URI, GenericFileSystem> entry:
-                filesystems.entrySet()) {
-                tmp = uri.relativize(entry.getKey());
-                if (tmp.isAbsolute())
-                    continue;
-                fs = entry.getValue();
-                // TODO: can happen...
-                if (!fs.isOpen())
-                    continue;
-                path = tmp.getPath();
-                if (path == null)
-                    path = "";
-                return entry.getValue().getPath(path);
-            }
-        }
+        final UriPrefixIndex.Match match = index.find(uri);
+
+        if (match == null)
+            throw new FileSystemNotFoundException();
 
-        throw new FileSystemNotFoundException();
+        return match.toPath();
     }
 
+    /**
+     * Get the driver associated with a path
+     *
+     * <p>The driver is obtained directly from the path's filesystem; the only
+     * check performed against this repository is a lookup by the filesystem's
+     * URI in order to ensure that this filesystem is registered here. No lock
+     * is taken.</p>
+     *
+     * <p>The open state of the filesystem is checked first; as {@link
+     * GenericFileSystem#close()} marks the filesystem as closed before it
+     * unregisters it, a filesystem being closed concurrently will be reported
+     * as such and not as missing.</p>
+     *
+     * @param path the path
+     * @return the driver
+     * @throws ClosedFileSystemException the filesystem of this path is closed
+     * @throws FileSystemNotFoundException the filesystem of this path is not
+     * registered with this repository
+     */
     @Nonnull
     @Override
     public final FileSystemDriver getDriver(final Path path)
     {
         final FileSystem fs = Objects.requireNonNull(path).getFileSystem();
 
-        synchronized (filesystems) {
-            for (final GenericFileSystem gfs: filesystems.values()) {
-                //noinspection ObjectEquality
-                if (gfs != fs)
-                    continue;
-                if (!gfs.isOpen())
-                    throw new ClosedFileSystemException();
-                return gfs.getDriver();
-            }
-        }
+        if (!(fs instanceof GenericFileSystem))
+            throw new FileSystemNotFoundException();
+
+        final GenericFileSystem gfs = (GenericFileSystem) fs;
+
+        if (!gfs.isOpen())
+            throw new ClosedFileSystemException();
 
-        throw new FileSystemNotFoundException();
+        //noinspection ObjectEquality
+        if (filesystems.get(gfs.getUri()) != gfs)
+            throw new FileSystemNotFoundException();
+
+        return gfs.getDriver();
     }
 
     // Called ONLY after the driver and fs have been successfully closed
@@ -167,10 +368,58 @@ public abstract class FileSystemRepositoryBase
     @Override
     public final void unregister(final URI uri)
     {
-        Objects.requireNonNull(uri);
-        synchronized (filesystems) {
-            filesystems.remove(uri);
+        final GenericFileSystem fs
+            = filesystems.remove(Objects.requireNonNull(uri));
+
+        if (fs != null)
+            index.remove(uri, fs);
+    }
+
+    /*
+     * Wait for a creation made by another thread; return null if it failed
+     */
+    @Nullable
+    private static GenericFileSystem getCreated(
+        final FutureTask<GenericFileSystem> task)
+        throws InterruptedIOException
+    {
+        try {
+            return task.get();
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for"
+                + " filesystem creation");
+        } catch (ExecutionException ignored) {
+            return null;
+        }
+    }
+
+    /*
+     * Get the result of a creation made by the current thread
+     */
+    @Nonnull
+    private static GenericFileSystem getResult(
+        final FutureTask<GenericFileSystem> task)
+        throws IOException
+    {
+        final Throwable cause;
+
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            // Cannot happen: the task has already run in this thread
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            cause = e.getCause();
         }
+
+        if (cause instanceof IOException)
+            throw (IOException) cause;
+        if (cause instanceof RuntimeException)
+            throw (RuntimeException) cause;
+        if (cause instanceof Error)
+            throw (Error) cause;
+        throw new IOException(cause);
     }
 
     // TODO: should be checked at the provider level, not here
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.provider;
+
+import com.github.fge.filesystem.driver.FileSystemDriver;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bookkeeping of {@link PooledDriver}s for a repository
+ *
+ * <p>Two limits can be set:</p>
+ *
+ * <ul>
+ *     <li>a maximum number of active drivers; when a driver is created and
+ *     this number is exceeded, the least recently used drivers are evicted
+ *     first;</li>
+ *     <li>an idle time, after which a driver is evicted.</li>
+ * </ul>
+ *
+ * <p>There is no background thread: idle drivers are swept at most once per
+ * idle time period when a driver is created, or on demand using {@link
+ * #evictIdle()}.</p>
+ *
+ * @see FileSystemRepositoryBase#setDriverEviction(int, long, TimeUnit)
+ */
+@ParametersAreNonnullByDefault
+final class IdleDriverPool
+{
+    private static final Comparator<Candidate> LEAST_RECENTLY_USED
+        = new Comparator<Candidate>()
+    {
+        @Override
+        public int compare(final Candidate o1, final Candidate o2)
+        {
+            return Long.compare(o2.idle, o1.idle);
+        }
+    };
+
+    private final int maxActive;
+    private final long idleNanos;
+
+    private final Set<PooledDriver> drivers = Collections.newSetFromMap(
+        new ConcurrentHashMap<PooledDriver, Boolean>());
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    /**
+     * Constructor
+     *
+     * @param maxActive the maximum number of active drivers ({@code 0} for no
+     * limit)
+     * @param idleTime the idle time after which a driver is evicted ({@code 0}
+     * for no limit)
+     * @param unit the time unit of the idle time
+     */
+    IdleDriverPool(final int maxActive, final long idleTime,
+        final TimeUnit unit)
+    {
+        if (maxActive < 0)
+            throw new IllegalArgumentException("maximum number of active "
+                + "drivers cannot be negative");
+        if (idleTime < 0L)
+            throw new IllegalArgumentException("idle time cannot be "
+                + "negative");
+        this.maxActive = maxActive == 0 ? Integer.MAX_VALUE : maxActive;
+        idleNanos = idleTime == 0L ? Long.MAX_VALUE : unit.toNanos(idleTime);
+    }
+
+    @Nonnull
+    FileSystemDriver wrap(final FileSystemRepositoryBase repository,
+        final URI uri, final Map<String, ?> env, final FileSystemDriver driver)
+    {
+        final PooledDriver ret
+            = new PooledDriver(this, repository, uri, env, driver);
+        drivers.add(ret);
+        active.incrementAndGet();
+        enforceLimits();
+        return ret;
+    }
+
+    int getActiveCount()
+    {
+        return active.get();
+    }
+
+    long getEvictionCount()
+    {
+        return evictions.get();
+    }
+
+    long getReloadCount()
+    {
+        return reloads.get();
+    }
+
+    /**
+     * Evict all drivers which have been idle for longer than the idle time
+     *
+     * @return the number of evicted drivers
+     */
+    int evictIdle()
+    {
+        final long now = System.nanoTime();
+        lastSweep.set(now);
+
+        if (idleNanos == Long.MAX_VALUE)
+            return 0;
+
+        int ret = 0;
+
+        for (final PooledDriver driver: drivers)
+            if (driver.isActive() && now - driver.getLastUsed() >= idleNanos
+                && driver.evict())
+                ret++;
+
+        return ret;
+    }
+
+    void reloaded()
+    {
+        reloads.incrementAndGet();
+        active.incrementAndGet();
+        enforceLimits();
+    }
+
+    void evicted()
+    {
+        evictions.incrementAndGet();
+        active.decrementAndGet();
+    }
+
+    void closed(final PooledDriver driver, final boolean wasActive)
+    {
+        drivers.remove(driver);
+        if (wasActive)
+            active.decrementAndGet();
+    }
+
+    private void enforceLimits()
+    {
+        final long last = lastSweep.get();
+
+        if (System.nanoTime() - last >= idleNanos
+            && lastSweep.compareAndSet(last, System.nanoTime()))
+            evictIdle();
+
+        if (active.get() > maxActive)
+            evictLeastRecentlyUsed();
+    }
+
+    private synchronized void evictLeastRecentlyUsed()
+    {
+        /*
+         * The time of last use of drivers keeps changing while we sort:
+         * sort a snapshot of it, or the comparator would be inconsistent.
+         * Idle times, unlike nanoTime() values, cannot overflow.
+         */
+        final List<Candidate> candidates = new ArrayList<>(drivers.size());
+        final long now = System.nanoTime();
+
+        for (final PooledDriver driver: drivers)
+            if (driver.isActive())
+                candidates.add(new Candidate(driver,
+                    now - driver.getLastUsed()));
+
+        Collections.sort(candidates, LEAST_RECENTLY_USED);
+
+        for (final Candidate candidate: candidates) {
+            if (active.get() <= maxActive)
+                return;
+            candidate.driver.evict();
+        }
+    }
+
+    private static final class Candidate
+    {
+        private final PooledDriver driver;
+        private final long idle;
+
+        private Candidate(final PooledDriver driver, final long idle)
+        {
+            this.driver = driver;
+            this.idle = idle;
+        }
+    }
+}
@@ -0,0 +1,728 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.provider;
+
+import com.github.fge.filesystem.driver.FileSystemDriver;
+import com.github.fge.filesystem.exceptions.UncaughtIOException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AccessMode;
+import java.nio.file.ClosedFileSystemException;
+import java.nio.file.CopyOption;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.LinkOption;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link FileSystemDriver} composition implementation which can close its
+ * underlying driver when idle, and create it again when needed
+ *
+ * <p>The underlying driver is created again using {@link
+ * FileSystemRepositoryBase#createDriver(URI, Map)} with the URI and
+ * environment originally used to create the filesystem.</p>
+ *
+ * <p>Each call records the time of last use and counts itself as in flight
+ * for its duration; a driver is never evicted while a call is in flight.
+ * Streams, channels and directory streams obtained from the underlying driver
+ * also count as in flight until they are closed.</p>
+ *
+ * @see IdleDriverPool
+ */
+@SuppressWarnings("OverloadedVarargsMethod")
+@ParametersAreNonnullByDefault
+final class PooledDriver
+    implements FileSystemDriver
+{
+    private final IdleDriverPool pool;
+    private final FileSystemRepositoryBase repository;
+    private final URI uri;
+    private final Map<String, ?> env;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile FileSystemDriver driver;
+    private volatile long lastUsed;
+    private volatile boolean closed = false;
+
+    PooledDriver(final IdleDriverPool pool,
+        final FileSystemRepositoryBase repository, final URI uri,
+        final Map<String, ?> env, final FileSystemDriver driver)
+    {
+        this.pool = pool;
+        this.repository = repository;
+        this.uri = uri;
+        this.env = env;
+        this.driver = driver;
+        lastUsed = System.nanoTime();
+    }
+
+    long getLastUsed()
+    {
+        return lastUsed;
+    }
+
+    boolean isActive()
+    {
+        return driver != null;
+    }
+
+    /**
+     * Close the underlying driver if no call is in flight
+     *
+     * @return true if the underlying driver has been closed
+     */
+    boolean evict()
+    {
+        final FileSystemDriver victim;
+
+        synchronized (this) {
+            victim = driver;
+            if (victim == null)
+                return false;
+            /*
+             * See acquire(): a caller increments the in flight count _then_
+             * reads the driver, we do the reverse here.
+             */
+            driver = null;
+            if (inFlight.get() != 0) {
+                driver = victim;
+                return false;
+            }
+        }
+
+        pool.evicted();
+
+        try {
+            victim.close();
+        } catch (IOException ignored) {
+            // Nothing we can do; the driver is discarded anyway
+        }
+
+        return true;
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        final FileSystemDriver victim;
+
+        synchronized (this) {
+            closed = true;
+            victim = driver;
+            driver = null;
+        }
+
+        pool.closed(this, victim != null);
+
+        if (victim != null)
+            victim.close();
+    }
+
+    @Nonnull
+    @Override
+    public FileStore getFileStore()
+    {
+        final FileSystemDriver delegate = acquireUnchecked();
+        try {
+            return delegate.getFileStore();
+        } finally {
+            release();
+        }
+    }
+
+    @Nonnull
+    @Override
+    public UserPrincipalLookupService getUserPrincipalLookupService()
+    {
+        final FileSystemDriver delegate = acquireUnchecked();
+        try {
+            return delegate.getUserPrincipalLookupService();
+        } finally {
+            release();
+        }
+    }
+
+    @Nonnull
+    @Override
+    public WatchService newWatchService()
+    {
+        final FileSystemDriver delegate = acquireUnchecked();
+        try {
+            return delegate.newWatchService();
+        } finally {
+            release();
+        }
+    }
+
+    @Nonnull
+    @Override
+    public InputStream newInputStream(final Path path,
+        final Set<OpenOption> options)
+        throws IOException
+    {
+        final FileSystemDriver delegate = acquire();
+        try {
+            return new PooledInputStream(
+                delegate.newInputStream(path, options));
+        } catch (IOException | RuntimeException | Error e) {
+            release();
+            throw e;
+        }
+    }
+
+    @Nonnull
+    @Override
+    public OutputStream newOutputStream(final Path path,
+        final Set<OpenOption> options)
+        throws IOException
+    {
+        final FileSystemDriver delegate = acquire();
+        try {
+            return new PooledOutputStream(
+                delegate.newOutputStream(path, options));
+        } catch (IOException | RuntimeException | Error e) {
+            release();
+            throw e;
+        }
+    }
+
+    @Nonnull
+    @Override
+    public SeekableByteChannel newByteChannel(final Path path,
+        final Set<? extends OpenOption> options,
+        final FileAttribute<?>... attrs)
+        throws IOException
+    {
+        final FileSystemDriver delegate = acquire();
+        try {
+            return new PooledChannel(
+                delegate.newByteChannel(path, options, attrs));
+        } catch (IOException | RuntimeException | Error e) {
+            release();
+            throw e;
+        }
+    }
+
+    @Nonnull
+    @Override
+    public DirectoryStream<Path> newDirectoryStream(final Path dir,
+        final DirectoryStream.Filter<? super Path> filter)
+        throws IOException
+    {
+        final FileSystemDriver delegate = acquire();
+        try {
+            return new PooledDirectoryStream(
+                delegate.newDirectoryStream(dir, filter));
+        } catch (IOException | RuntimeException | Error e) {
+            release();
+            throw e;
+        }
+    }
+
+    @Override
+    public void createDirectory(final Path dir, final FileAttribute<?>... attrs)
+        throws IOException
+    {
+        final FileSystemDriver delegate = acquire();
+        try {
+            delegate.createDirectory(dir, attrs);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public void delete(final Path path)
+        throws IOException
+    {
+        final FileSystemDriver delegate = acquire();
+        try {
+            delegate.delete(path);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public void copy(final Path source, final Path target,
+        final Set<CopyOption> options)
+        throws IOException
+    {
+        final FileSystemDriver delegate = acquire();
+        try {
+            delegate.copy(source, target, options);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public void move(final Path source, final Path target,
+        final Set<CopyOption> options)
+        throws IOException
+    {
+        final FileSystemDriver delegate = acquire();
+        try {
+            delegate.move(source, target, options);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public boolean isSameFile(final Path path, final Path path2)
+        throws IOException
+    {
+        final FileSystemDriver delegate = acquire();
+        try {
+            return delegate.isSameFile(path, path2);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public boolean isHidden(final Path path)
+        throws IOException
+    {
+        final FileSystemDriver delegate = acquire();
+        try {
+            return delegate.isHidden(path);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public void checkAccess(final Path path, final AccessMode... modes)
+        throws IOException
+    {
+        final FileSystemDriver delegate = acquire();
+        try {
+            delegate.checkAccess(path, modes);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public boolean checkAccessIfExists(final Path path,
+        final AccessMode... modes)
+        throws IOException
+    {
+        final FileSystemDriver delegate = acquire();
+        try {
+            return delegate.checkAccessIfExists(path, modes);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public boolean performsAccessChecks()
+    {
+        final FileSystemDriver delegate = acquireUnchecked();
+        try {
+            return delegate.performsAccessChecks();
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public boolean supportsLinks()
+    {
+        final FileSystemDriver delegate = acquireUnchecked();
+        try {
+            return delegate.supportsLinks();
+        } finally {
+            release();
+        }
+    }
+
+    @Nullable
+    @Override
+    public Path getLinkTarget(final Path path)
+        throws IOException
+    {
+        final FileSystemDriver delegate = acquire();
+        try {
+            return delegate.getLinkTarget(path);
+        } finally {
+            release();
+        }
+    }
+
+    @Nullable
+    @Override
+    public <V extends FileAttributeView> V getFileAttributeView(
+        final Path path, final Class<V> type, final LinkOption... options)
+    {
+        final FileSystemDriver delegate = acquireUnchecked();
+        try {
+            return delegate.getFileAttributeView(path, type, options);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public <A extends BasicFileAttributes> A readAttributes(final Path path,
+        final Class<A> type, final LinkOption... options)
+        throws IOException
+    {
+        final FileSystemDriver delegate = acquire();
+        try {
+            return delegate.readAttributes(path, type, options);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public Map<String, Object> readAttributes(final Path path,
+        final String attributes, final LinkOption... options)
+        throws IOException
+    {
+        final FileSystemDriver delegate = acquire();
+        try {
+            return delegate.readAttributes(path, attributes, options);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public void setAttribute(final Path path, final String attribute,
+        final Object value, final LinkOption... options)
+        throws IOException
+    {
+        final FileSystemDriver delegate = acquire();
+        try {
+            delegate.setAttribute(path, attribute, value, options);
+        } finally {
+            release();
+        }
+    }
+
+    @Nonnull
+    @Override
+    public Object getPathMetadata(final Path path)
+        throws IOException
+    {
+        final FileSystemDriver delegate = acquire();
+        try {
+            return delegate.getPathMetadata(path);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public void invalidatePathMetadata(final Path path)
+    {
+        // If the driver has been evicted, so has its cache
+        final FileSystemDriver delegate = driver;
+
+        if (delegate != null)
+            delegate.invalidatePathMetadata(path);
+    }
+
+    @Override
+    public void invalidateSubtreeMetadata(final Path path)
+    {
+        final FileSystemDriver delegate = driver;
+
+        if (delegate != null)
+            delegate.invalidateSubtreeMetadata(path);
+    }
+
+    /*
+     * The fast path is lock free: increment the in flight count, record the
+     * time of use and read the driver. The lock is only taken if the driver
+     * has to be created again.
+     *
+     * On success, the caller MUST call release().
+     */
+    @Nonnull
+    private FileSystemDriver acquire()
+        throws IOException
+    {
+        inFlight.incrementAndGet();
+        lastUsed = System.nanoTime();
+
+        final FileSystemDriver ret = driver;
+
+        if (ret != null)
+            return ret;
+
+        try {
+            return reload();
+        } catch (IOException | RuntimeException | Error e) {
+            release();
+            throw e;
+        }
+    }
+
+    @Nonnull
+    private FileSystemDriver acquireUnchecked()
+    {
+        try {
+            return acquire();
+        } catch (IOException e) {
+            throw new UncaughtIOException("cannot create driver again", e);
+        }
+    }
+
+    private void release()
+    {
+        inFlight.decrementAndGet();
+    }
+
+    /*
+     * Release for a resource which is closed; the driver has been in use
+     * until now
+     */
+    private void releaseResource()
+    {
+        lastUsed = System.nanoTime();
+        release();
+    }
+
+    @Nonnull
+    private FileSystemDriver reload()
+        throws IOException
+    {
+        final FileSystemDriver ret;
+
+        synchronized (this) {
+            if (closed)
+                throw new ClosedFileSystemException();
+            if (driver != null)
+                return driver;
+            ret = repository.createDriver(uri, env);
+            driver = ret;
+        }
+
+        /*
+         * Outside of the lock: this may evict other drivers, which requires
+         * taking their own lock.
+         */
+        pool.reloaded();
+        return ret;
+    }
+
+    /*
+     * Resources obtained from the underlying driver: they are accounted as in
+     * flight until closed (the first time only)
+     */
+    private final class PooledInputStream
+        extends FilterInputStream
+    {
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private PooledInputStream(final InputStream in)
+        {
+            super(in);
+        }
+
+        @Override
+        public void close()
+            throws IOException
+        {
+            try {
+                in.close();
+            } finally {
+                if (closed.compareAndSet(false, true))
+                    releaseResource();
+            }
+        }
+    }
+
+    private final class PooledOutputStream
+        extends OutputStream
+    {
+        private final OutputStream out;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private PooledOutputStream(final OutputStream out)
+        {
+            this.out = out;
+        }
+
+        @Override
+        public void write(final int b)
+            throws IOException
+        {
+            out.write(b);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len)
+            throws IOException
+        {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush()
+            throws IOException
+        {
+            out.flush();
+        }
+
+        @Override
+        public void close()
+            throws IOException
+        {
+            try {
+                out.close();
+            } finally {
+                if (closed.compareAndSet(false, true))
+                    releaseResource();
+            }
+        }
+    }
+
+    private final class PooledChannel
+        implements SeekableByteChannel
+    {
+        private final SeekableByteChannel channel;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private PooledChannel(final SeekableByteChannel channel)
+        {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read(final ByteBuffer dst)
+            throws IOException
+        {
+            return channel.read(dst);
+        }
+
+        @Override
+        public int write(final ByteBuffer src)
+            throws IOException
+        {
+            return channel.write(src);
+        }
+
+        @Override
+        public long position()
+            throws IOException
+        {
+            return channel.position();
+        }
+
+        @Override
+        public SeekableByteChannel position(final long newPosition)
+            throws IOException
+        {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size()
+            throws IOException
+        {
+            return channel.size();
+        }
+
+        @Override
+        public SeekableByteChannel truncate(final long size)
+            throws IOException
+        {
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close()
+            throws IOException
+        {
+            try {
+                channel.close();
+            } finally {
+                if (closed.compareAndSet(false, true))
+                    releaseResource();
+            }
+        }
+    }
+
+    private final class PooledDirectoryStream
+        implements DirectoryStream<Path>
+    {
+        private final DirectoryStream<Path> stream;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private PooledDirectoryStream(final DirectoryStream<Path> stream)
+        {
+            this.stream = stream;
+        }
+
+        @Override
+        public Iterator<Path> iterator()
+        {
+            return stream.iterator();
+        }
+
+        @Override
+        public void close()
+            throws IOException
+        {
+            try {
+                stream.close();
+            } finally {
+                if (closed.compareAndSet(false, true))
+                    releaseResource();
+            }
+        }
+    }
+}
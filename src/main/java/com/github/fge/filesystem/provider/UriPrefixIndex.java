@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.provider;
+
+import com.github.fge.filesystem.fs.GenericFileSystem;
+import com.github.fge.filesystem.path.GenericPath;
+import com.github.fge.filesystem.path.PathElementsFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An index of filesystems by URI prefix
+ *
+ * <p>This is a trie; the first level is keyed on the (raw) authority of the
+ * filesystem URIs, and each subsequent level on one segment of their (decoded)
+ * path. Empty path segments are ignored, which means that, for instance, {@code
+ * foo://bar} and {@code foo://bar/} share the same node.</p>
+ *
+ * <p>Finding the filesystem for a URI costs one map lookup per path segment of
+ * that URI, whatever the number of registered filesystems. Lookups take no
+ * lock; modifications are serialized.</p>
+ *
+ * @see FileSystemRepositoryBase#getPath(URI)
+ */
+@ParametersAreNonnullByDefault
+final class UriPrefixIndex
+{
+    private final Node root = new Node();
+
+    /**
+     * Register a filesystem
+     *
+     * @param uri the URI of the filesystem
+     * @param fs the filesystem
+     */
+    synchronized void put(final URI uri, final GenericFileSystem fs)
+    {
+        Node node = root.getOrCreate(authorityOf(uri));
+
+        final String path = pathOf(uri);
+        final int len = path.length();
+        int start = 0;
+        int end;
+
+        while ((start = skipSlashes(path, start)) < len) {
+            end = segmentEnd(path, start);
+            node = node.getOrCreate(path.substring(start, end));
+            start = end;
+        }
+
+        node.fs = fs;
+    }
+
+    /**
+     * Unregister a filesystem
+     *
+     * <p>Nothing is done if another filesystem has been registered for this
+     * URI in the meanwhile.</p>
+     *
+     * @param uri the URI of the filesystem
+     * @param fs the filesystem
+     */
+    synchronized void remove(final URI uri, final GenericFileSystem fs)
+    {
+        final List<Node> nodes = new ArrayList<>();
+        final List<String> keys = new ArrayList<>();
+
+        String key = authorityOf(uri);
+        Node node = root.children.get(key);
+
+        final String path = pathOf(uri);
+        final int len = path.length();
+        int start = 0;
+        int end;
+
+        while (node != null) {
+            nodes.add(node);
+            keys.add(key);
+            if ((start = skipSlashes(path, start)) == len)
+                break;
+            end = segmentEnd(path, start);
+            key = path.substring(start, end);
+            node = node.children.get(key);
+            start = end;
+        }
+
+        //noinspection ObjectEquality
+        if (node == null || node.fs != fs)
+            return;
+
+        node.fs = null;
+
+        /*
+         * Prune the nodes which are now useless, starting from the deepest one
+         */
+        Node parent;
+
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            node = nodes.get(i);
+            if (node.fs != null || !node.children.isEmpty())
+                return;
+            parent = i == 0 ? root : nodes.get(i - 1);
+            parent.children.remove(keys.get(i));
+        }
+    }
+
+    /**
+     * Find the open filesystem with the longest URI prefix matching a URI
+     *
+     * @param uri the URI
+     * @return a match, or {@code null} if no open filesystem matches
+     */
+    @Nullable
+    Match find(final URI uri)
+    {
+        Node node = root.children.get(authorityOf(uri));
+
+        if (node == null)
+            return null;
+
+        final String path = pathOf(uri);
+        final int len = path.length();
+        int start = 0;
+        int end;
+
+        GenericFileSystem fs;
+        GenericFileSystem found = null;
+        int foundAt = 0;
+
+        while (node != null) {
+            fs = node.fs;
+            if (fs != null && fs.isOpen()) {
+                found = fs;
+                foundAt = start;
+            }
+            if ((start = skipSlashes(path, start)) == len)
+                break;
+            end = segmentEnd(path, start);
+            node = node.children.get(path.substring(start, end));
+            start = end;
+        }
+
+        if (found == null)
+            return null;
+
+        foundAt = skipSlashes(path, foundAt);
+        return new Match(found, foundAt == len ? "" : path.substring(foundAt));
+    }
+
+    private static String authorityOf(final URI uri)
+    {
+        final String authority = uri.getRawAuthority();
+        return authority == null ? "" : authority;
+    }
+
+    private static String pathOf(final URI uri)
+    {
+        final String path = uri.getPath();
+        return path == null ? "" : path;
+    }
+
+    private static int skipSlashes(final String path, final int index)
+    {
+        final int len = path.length();
+        int ret = index;
+
+        while (ret < len && path.charAt(ret) == '/')
+            ret++;
+
+        return ret;
+    }
+
+    private static int segmentEnd(final String path, final int start)
+    {
+        final int index = path.indexOf('/', start);
+        return index == -1 ? path.length() : index;
+    }
+
+    /**
+     * The result of a successful lookup
+     */
+    static final class Match
+    {
+        private final GenericFileSystem fs;
+        private final String remainder;
+
+        private Match(final GenericFileSystem fs, final String remainder)
+        {
+            this.fs = fs;
+            this.remainder = remainder;
+        }
+
+        /**
+         * Return the matching filesystem
+         *
+         * @return the filesystem
+         */
+        @Nonnull
+        GenericFileSystem getFileSystem()
+        {
+            return fs;
+        }
+
+        /**
+         * Return the part of the URI path after the filesystem URI prefix
+         *
+         * <p>It never begins with a slash; it is empty if the URI path is
+         * exactly the URI path of the filesystem.</p>
+         *
+         * @return the remainder of the path, relative to the filesystem
+         */
+        @Nonnull
+        String getRemainder()
+        {
+            return remainder;
+        }
+
+        /**
+         * Return the absolute path matching the looked up URI
+         *
+         * @return the path
+         */
+        @Nonnull
+        Path toPath()
+        {
+            final PathElementsFactory factory = fs.getPathElementsFactory();
+            return new GenericPath(fs, factory,
+                factory.fromUriPath(remainder));
+        }
+    }
+
+    private static final class Node
+    {
+        private final Map<String, Node> children = new ConcurrentHashMap<>();
+        private volatile GenericFileSystem fs = null;
+
+        private Node getOrCreate(final String key)
+        {
+            Node ret = children.get(key);
+            if (ret == null) {
+                ret = new Node();
+                children.put(key, ret);
+            }
+            return ret;
+        }
+    }
+}
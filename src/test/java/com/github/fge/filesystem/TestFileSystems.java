@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem;
+
+import com.github.fge.filesystem.driver.FileSystemDriver;
+import com.github.fge.filesystem.fs.GenericFileSystem;
+import com.github.fge.filesystem.provider.FileSystemFactoryProvider;
+import com.github.fge.filesystem.provider.FileSystemRepository;
+
+import java.net.URI;
+import java.nio.file.spi.FileSystemProvider;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Generic filesystems with a mock driver, for tests which only need paths
+ */
+public final class TestFileSystems
+{
+    private TestFileSystems()
+    {
+    }
+
+    public static GenericFileSystem newFileSystem()
+    {
+        return newFileSystem(mock(FileSystemProvider.class));
+    }
+
+    public static GenericFileSystem newFileSystem(
+        final FileSystemProvider provider)
+    {
+        final FileSystemRepository repository
+            = mock(FileSystemRepository.class);
+        when(repository.getFactoryProvider())
+            .thenReturn(new FileSystemFactoryProvider());
+        return new GenericFileSystem(URI.create("foo://bar"), repository,
+            mock(FileSystemDriver.class), provider);
+    }
+}
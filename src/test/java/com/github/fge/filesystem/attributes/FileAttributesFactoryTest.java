@@ -29,6 +29,7 @@ import org.testng.annotations.Test;
 import java.io.IOException;
 import java.nio.file.attribute.AclFileAttributeView;
 import java.nio.file.attribute.FileOwnerAttributeView;
+import java.nio.file.attribute.PosixFileAttributeView;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
@@ -207,4 +208,29 @@ public final class FileAttributesFactoryTest
             .as("attribute provider extending basic supports basic")
             .isTrue();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void registrationsAfterLookupsAreTakenIntoAccount()
+        throws IOException
+    {
+        final FileAttributesFactory factory
+            = new FileAttributesFactory()
+        {
+            {
+                setMetadataClass(ArgType1.class);
+                assertThat(supportsFileAttributeView(
+                    FileOwnerAttributeView.class)).isFalse();
+                addImplementation("acl", PublicAcl.class);
+            }
+        };
+
+        assertThat(factory.supportsFileAttributeView(
+            FileOwnerAttributeView.class)).isTrue();
+        assertThat(factory.supportsFileAttributeView("acl")).isTrue();
+        assertThat(factory.supportsFileAttributeView("posix")).isFalse();
+        assertThat(factory.getFileAttributeView(FileOwnerAttributeView.class,
+            mock(ArgType1.class))).isExactlyInstanceOf(PublicAcl.class);
+        assertThat(factory.getFileAttributeView(PosixFileAttributeView.class,
+            mock(ArgType1.class))).isNull();
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.driver;
+
+import com.github.fge.filesystem.TestFileSystems;
+import com.github.fge.filesystem.driver.PathMetadataCache.Eviction;
+import com.github.fge.filesystem.fs.GenericFileSystem;
+import org.assertj.core.api.SoftAssertions;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.fge.filesystem.CustomAssertions.shouldHaveThrown;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class PathMetadataCacheTest
+{
+    private static final Object METADATA = new Object();
+
+    private GenericFileSystem fs;
+
+    @BeforeMethod
+    public void init()
+    {
+        fs = TestFileSystems.newFileSystem();
+    }
+
+    @Test
+    public void entriesAreCachedAndCounted()
+    {
+        final PathMetadataCache cache = new PathMetadataCache(16, 1L,
+            TimeUnit.HOURS, Eviction.LRU);
+        final Path path = fs.getPath("/a");
+
+        final SoftAssertions soft = new SoftAssertions();
+
+        soft.assertThat(cache.get(path)).isNull();
+        cache.put(path, METADATA, cache.getGeneration());
+        soft.assertThat(cache.get(path)).isSameAs(METADATA);
+        soft.assertThat(cache.getHitCount()).isEqualTo(1L);
+        soft.assertThat(cache.getMissCount()).isEqualTo(1L);
+        soft.assertThat(cache.size()).isEqualTo(1);
+
+        cache.invalidate(path);
+        soft.assertThat(cache.get(path)).isNull();
+
+        soft.assertAll();
+    }
+
+    @Test
+    public void subtreesAreInvalidated()
+    {
+        final PathMetadataCache cache = new PathMetadataCache(16, 1L,
+            TimeUnit.HOURS, Eviction.TINY_LFU);
+
+        for (final String name: new String[] { "/a", "/a/b", "/a/b/c", "/ab" })
+            cache.put(fs.getPath(name), METADATA, cache.getGeneration());
+
+        cache.invalidateSubtree(fs.getPath("/a/b"));
+
+        final SoftAssertions soft = new SoftAssertions();
+
+        soft.assertThat(cache.size()).isEqualTo(2);
+        soft.assertThat(cache.get(fs.getPath("/a"))).isSameAs(METADATA);
+        soft.assertThat(cache.get(fs.getPath("/a/b"))).isNull();
+        soft.assertThat(cache.get(fs.getPath("/a/b/c"))).isNull();
+        soft.assertThat(cache.get(fs.getPath("/ab"))).isSameAs(METADATA);
+
+        soft.assertAll();
+    }
+
+    @Test
+    public void onlyGenericPathsAreCached()
+    {
+        final PathMetadataCache cache = new PathMetadataCache(16, 1L,
+            TimeUnit.HOURS, Eviction.LRU);
+        final Path path = Paths.get("/a");
+
+        cache.put(path, METADATA, cache.getGeneration());
+
+        assertThat(cache.get(path)).isNull();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void metadataObtainedBeforeAnInvalidationIsNotStored()
+    {
+        final PathMetadataCache cache = new PathMetadataCache(16, 1L,
+            TimeUnit.HOURS, Eviction.LRU);
+        final Path path = fs.getPath("/a");
+        final long generation = cache.getGeneration();
+
+        cache.invalidate(fs.getPath("/b"));
+        cache.put(path, METADATA, generation);
+
+        assertThat(cache.get(path)).isNull();
+    }
+
+    @Test
+    public void entriesExpire()
+        throws InterruptedException
+    {
+        final PathMetadataCache cache = new PathMetadataCache(16, 1L,
+            TimeUnit.MILLISECONDS, Eviction.LRU);
+        final Path path = fs.getPath("/a");
+
+        cache.put(path, METADATA, cache.getGeneration());
+        TimeUnit.MILLISECONDS.sleep(10L);
+
+        assertThat(cache.get(path)).isNull();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted()
+    {
+        final PathMetadataCache cache = new PathMetadataCache(2, 1L,
+            TimeUnit.HOURS, Eviction.LRU);
+        final Path a = fs.getPath("/a");
+        final Path b = fs.getPath("/b");
+        final Path c = fs.getPath("/c");
+
+        cache.put(a, METADATA, cache.getGeneration());
+        cache.put(b, METADATA, cache.getGeneration());
+        cache.get(a);
+        cache.put(c, METADATA, cache.getGeneration());
+
+        final SoftAssertions soft = new SoftAssertions();
+
+        soft.assertThat(cache.get(a)).isSameAs(METADATA);
+        soft.assertThat(cache.get(b)).isNull();
+        soft.assertThat(cache.get(c)).isSameAs(METADATA);
+        soft.assertThat(cache.getEvictionCount()).isEqualTo(1L);
+
+        soft.assertAll();
+    }
+
+    @Test
+    public void tinyLfuKeepsFrequentEntriesDuringScans()
+    {
+        final int size = 100;
+        final PathMetadataCache lru = new PathMetadataCache(size, 1L,
+            TimeUnit.HOURS, Eviction.LRU);
+        final PathMetadataCache tinyLfu = new PathMetadataCache(size, 1L,
+            TimeUnit.HOURS, Eviction.TINY_LFU);
+
+        // A working set looked up several times, then a scan
+        for (int round = 0; round < 3; round++)
+            for (int i = 0; i < size / 2; i++) {
+                lookup(lru, "/hot/" + i);
+                lookup(tinyLfu, "/hot/" + i);
+            }
+
+        for (int i = 0; i < 10 * size; i++) {
+            lookup(lru, "/scan/" + i);
+            lookup(tinyLfu, "/scan/" + i);
+        }
+
+        int lruHits = 0;
+        int tinyLfuHits = 0;
+
+        for (int i = 0; i < size / 2; i++) {
+            if (lru.get(fs.getPath("/hot/" + i)) != null)
+                lruHits++;
+            if (tinyLfu.get(fs.getPath("/hot/" + i)) != null)
+                tinyLfuHits++;
+        }
+
+        assertThat(lruHits).isEqualTo(0);
+        assertThat(tinyLfuHits).isGreaterThan(size / 2 * 9 / 10);
+        assertThat(tinyLfu.size()).isLessThanOrEqualTo(size);
+    }
+
+    @Test
+    public void cacheIsConfiguredFromTheEnvironment()
+    {
+        final Map<String, Object> env = new HashMap<>();
+
+        assertThat(PathMetadataCache.fromEnv(env)).isNull();
+
+        env.put(PathMetadataCache.MAX_ENTRIES_KEY, "10");
+        env.put(PathMetadataCache.EVICTION_KEY, "tinyLFU");
+
+        final PathMetadataCache cache = PathMetadataCache.fromEnv(env);
+
+        assertThat(cache.getMaxEntries()).isEqualTo(10);
+        assertThat(cache.getEviction()).isEqualTo(Eviction.TINY_LFU);
+
+        env.put(PathMetadataCache.TTL_KEY, "foo");
+
+        try {
+            PathMetadataCache.fromEnv(env);
+            shouldHaveThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("illegal value for "
+                + PathMetadataCache.TTL_KEY + ": foo");
+        }
+    }
+
+    private void lookup(final PathMetadataCache cache,
+        final String name)
+    {
+        final Path path = fs.getPath(name);
+
+        if (cache.get(path) == null)
+            cache.put(path, METADATA, cache.getGeneration());
+    }
+}
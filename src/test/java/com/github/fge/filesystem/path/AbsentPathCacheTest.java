@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.path;
+
+import com.github.fge.filesystem.TestFileSystems;
+import com.github.fge.filesystem.fs.GenericFileSystem;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.fge.filesystem.CustomAssertions.shouldHaveThrown;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class AbsentPathCacheTest
+{
+    private GenericFileSystem fs;
+
+    @BeforeMethod
+    public void init()
+    {
+        fs = TestFileSystems.newFileSystem();
+    }
+
+    @Test
+    public void descendantsOfAbsentPathsAreAbsent()
+    {
+        final AbsentPathCache cache
+            = new AbsentPathCache(1L, TimeUnit.HOURS, 16);
+
+        cache.absent(fs.getPath("/a/b"));
+
+        assertThat(cache.isAbsent(fs.getPath("/a/b"))).isTrue();
+        assertThat(cache.isAbsent(fs.getPath("/a/b/c/d"))).isTrue();
+        assertThat(cache.isAbsent(fs.getPath("/a/b/../b/c"))).isTrue();
+        assertThat(cache.isAbsent(fs.getPath("/a"))).isFalse();
+        assertThat(cache.isAbsent(fs.getPath("/a/c"))).isFalse();
+        assertThat(cache.getHitCount()).isEqualTo(3L);
+    }
+
+    @Test
+    public void creatingAPathRemovesItsAncestorsAndDescendants()
+    {
+        final AbsentPathCache cache
+            = new AbsentPathCache(1L, TimeUnit.HOURS, 16);
+
+        cache.absent(fs.getPath("/a"));
+        cache.absent(fs.getPath("/a/b"));
+        cache.absent(fs.getPath("/a/b/c"));
+        cache.absent(fs.getPath("/a/d"));
+        cache.created(fs.getPath("/a/b"));
+
+        assertThat(cache.isAbsent(fs.getPath("/a"))).isFalse();
+        assertThat(cache.isAbsent(fs.getPath("/a/b"))).isFalse();
+        assertThat(cache.isAbsent(fs.getPath("/a/b/c"))).isFalse();
+        assertThat(cache.isAbsent(fs.getPath("/a/d"))).isTrue();
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void checksStartedBeforeACreationAreNotRecorded()
+    {
+        final AbsentPathCache cache
+            = new AbsentPathCache(1L, TimeUnit.HOURS, 16);
+        final Path path = fs.getPath("/a");
+        final long generation = cache.getGeneration();
+
+        cache.created(path);
+        cache.absent(path, generation);
+
+        assertThat(cache.isAbsent(path)).isFalse();
+    }
+
+    @Test
+    public void entriesExpire()
+        throws InterruptedException
+    {
+        final AbsentPathCache cache
+            = new AbsentPathCache(1L, TimeUnit.MILLISECONDS, 16);
+
+        cache.absent(fs.getPath("/a"));
+        TimeUnit.MILLISECONDS.sleep(10L);
+
+        assertThat(cache.isAbsent(fs.getPath("/a/b"))).isFalse();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void oldestEntriesAreEvicted()
+    {
+        final AbsentPathCache cache
+            = new AbsentPathCache(1L, TimeUnit.HOURS, 2);
+
+        cache.absent(fs.getPath("/a"));
+        cache.absent(fs.getPath("/b"));
+        cache.absent(fs.getPath("/c"));
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.isAbsent(fs.getPath("/a"))).isFalse();
+        assertThat(cache.isAbsent(fs.getPath("/c"))).isTrue();
+    }
+
+    @Test
+    public void onlyGenericPathsAreRecorded()
+    {
+        final AbsentPathCache cache
+            = new AbsentPathCache(1L, TimeUnit.HOURS, 16);
+
+        cache.absent(Paths.get("/a"));
+
+        assertThat(cache.isAbsent(Paths.get("/a"))).isFalse();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void cacheIsConfiguredFromTheEnvironment()
+    {
+        final Map<String, Object> env = new HashMap<>();
+
+        assertThat(AbsentPathCache.fromEnv(env)).isNull();
+
+        env.put(AbsentPathCache.ENV_KEY, "500");
+        assertThat(AbsentPathCache.fromEnv(env)).isNotNull();
+
+        env.put(AbsentPathCache.ENV_KEY, true);
+
+        try {
+            AbsentPathCache.fromEnv(env);
+            shouldHaveThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("illegal value for "
+                + AbsentPathCache.ENV_KEY + ": true");
+        }
+    }
+}
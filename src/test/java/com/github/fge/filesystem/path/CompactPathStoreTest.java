@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.path;
+
+import com.github.fge.filesystem.TestFileSystems;
+import com.github.fge.filesystem.fs.GenericFileSystem;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class CompactPathStoreTest
+{
+    private GenericFileSystem fs;
+    private CompactPathStore store;
+
+    @BeforeMethod
+    public void init()
+    {
+        fs = TestFileSystems.newFileSystem();
+        store = new CompactPathStore(fs);
+    }
+
+    @Test
+    public void pathsCanBeAddedAndLookedUp()
+    {
+        assertThat(store.add(fs.getPath("/a/b/c"))).isTrue();
+        assertThat(store.add("/a/b/c")).isFalse();
+        assertThat(store.add("a/b")).isTrue();
+        assertThat(store.add("/a/\u00e9t\u00e9")).isTrue();
+
+        assertThat(store.size()).isEqualTo(3);
+        assertThat(store.contains(fs.getPath("/a/b/c"))).isTrue();
+        assertThat(store.contains("/a/b")).isFalse();
+        assertThat(store.contains("a/b")).isTrue();
+        assertThat(store.contains("/a/\u00e9t\u00e9")).isTrue();
+        assertThat(store.contains("/x")).isFalse();
+    }
+
+    @Test
+    public void prefixesAreLookedUpOnEncodedPaths()
+    {
+        store.add("/a/b/c");
+        store.add("/a/b/d");
+        store.add("/a/e");
+        store.add("/f");
+
+        assertThat(store.containsPrefix(fs.getPath("/a/b"))).isTrue();
+        assertThat(store.containsPrefix(fs.getPath("/a/b/c"))).isTrue();
+        assertThat(store.containsPrefix(fs.getPath("/a/c"))).isFalse();
+        assertThat(store.containsPrefix(fs.getPath("a"))).isFalse();
+
+        final Set<String> paths = new HashSet<>();
+        for (final Path path: store.withPrefix(fs.getPath("/a")))
+            paths.add(path.toString());
+
+        assertThat(paths).containsOnly("/a/b/c", "/a/b/d", "/a/e");
+    }
+
+    @Test
+    public void iterationMaterializesEqualPaths()
+    {
+        final Set<Path> expected = new HashSet<>();
+        Path path;
+
+        for (int i = 0; i < 500; i++) {
+            path = fs.getPath("/data/2014/" + i % 12 + "/part-" + i);
+            expected.add(path);
+            store.add(path);
+        }
+
+        final Set<Path> actual = new HashSet<>();
+        for (final Path p: store)
+            actual.add(p);
+
+        assertThat(store.size()).isEqualTo(500);
+        assertThat(actual).isEqualTo(expected);
+        assertThat(store.getEstimatedSize()).isGreaterThan(0L);
+    }
+}
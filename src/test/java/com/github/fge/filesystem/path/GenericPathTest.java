@@ -23,20 +23,35 @@ import com.github.fge.filesystem.provider.FileSystemFactoryProvider;
 import com.github.fge.filesystem.driver.FileSystemDriver;
 import com.github.fge.filesystem.fs.GenericFileSystem;
 import com.github.fge.filesystem.provider.FileSystemRepository;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.IOException;
 import java.net.URI;
+import java.nio.file.FileSystemException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.spi.FileSystemProvider;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
+import static com.github.fge.filesystem.CustomAssertions.shouldHaveThrown;
 import static com.github.fge.filesystem.path.PathAssert.assertPath;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public final class GenericPathTest
@@ -120,6 +135,27 @@ public final class GenericPathTest
         assertPath(path.getFileName()).isNotNull();
     }
 
+    @Test
+    public void equalPathsHaveEqualHashCodesWhenOnlyOneIsComputed()
+    {
+        final PathElementsFactory unixFactory = new UnixPathElementsFactory();
+        final Path p1 = new GenericPath(fs, unixFactory,
+            unixFactory.toPathElements("/a/b"));
+        final Path p2 = new GenericPath(fs, unixFactory,
+            unixFactory.toPathElements("/a").child("b"));
+        final Path p3 = new GenericPath(fs, unixFactory,
+            unixFactory.toPathElements("/a/c"));
+
+        final int hashCode = p1.hashCode();
+
+        assertThat(p1.equals(p2)).isTrue();
+        assertThat(p2.equals(p1)).isTrue();
+        assertThat(p2.hashCode()).isEqualTo(hashCode);
+        assertThat(p3.hashCode()).isNotEqualTo(hashCode);
+        assertThat(p1.equals(p3)).isFalse();
+        assertThat(p2.toString()).isEqualTo("/a/b");
+    }
+
     /*
      * This test this part of the Path's .relativize() method:
      *
@@ -138,6 +174,162 @@ public final class GenericPathTest
      * order for two Paths to be equals, this contract can not be obeyed; or I
      * am doing something VERY wrong.
      */
+    @Test
+    public void pathsAreComparedNameElementByNameElement()
+    {
+        final PathElementsFactory unixFactory = new UnixPathElementsFactory();
+        // The last two names are not valid Unix names, but keys must cope
+        final PathElements[] inputs = {
+            new PathElements(null, new String[] { "a-b" }),
+            new PathElements("/", new String[] { "a" }),
+            new PathElements(null, new String[] { "a", "b" }),
+            new PathElements(null, new String[] { "a" }),
+            new PathElements("/", NO_NAMES),
+            new PathElements(null, new String[] { "a", "\u0000" }),
+            new PathElements(null, new String[] { "a\u0001" }),
+            new PathElements("/", new String[] { "a", "b", "c" })
+        };
+        final String[] sorted = {
+            "a", "a/\u0000", "a/b", "a\u0001", "a-b", "/", "/a", "/a/b/c"
+        };
+        final int size = inputs.length;
+
+        final List<GenericPath> paths = new ArrayList<>();
+        final List<String> keys = new ArrayList<>();
+        GenericPath path;
+
+        for (final PathElements elements: inputs) {
+            path = new GenericPath(fs, unixFactory, elements);
+            paths.add(path);
+            keys.add(path.getSortKey());
+        }
+
+        Collections.sort(paths);
+        Collections.sort(keys);
+
+        for (int i = 0; i < size; i++) {
+            assertThat(paths.get(i).toString()).isEqualTo(sorted[i]);
+            assertThat(keys.get(i)).isEqualTo(paths.get(i).getSortKey());
+        }
+    }
+
+    @Test
+    public void childrenShareTheElementsOfTheirParent()
+    {
+        final PathElementsFactory unixFactory = new UnixPathElementsFactory();
+        final GenericPath dir = new GenericPath(fs, unixFactory,
+            unixFactory.toPathElements("/a/b"));
+
+        final List<Path> children
+            = dir.resolveChildren(Arrays.asList("c", "d d", ".."));
+
+        assertThat(children).hasSize(3);
+
+        for (final Path child: children) {
+            assertThat(child.equals(dir.resolve(child.getFileName())))
+                .isTrue();
+            assertThat(((GenericPath) child).elements.parent())
+                .isSameAs(dir.elements);
+        }
+
+        try {
+            dir.resolveChild("c/d");
+            shouldHaveThrown(InvalidPathException.class);
+        } catch (InvalidPathException e) {
+            assertThat(e.getReason()).isEqualTo("invalid path element: c/d");
+        }
+    }
+
+    @Test
+    public void toRealPathFollowsLinksAndCachesResults()
+        throws IOException
+    {
+        final Map<String, String> links = new HashMap<>();
+
+        links.put("/a/link", "../b");
+        links.put("/b/c", "/d");
+        links.put("/x", "y");
+        links.put("/y", "/x");
+
+        when(driver.supportsLinks()).thenReturn(true);
+        when(driver.getLinkTarget(any(Path.class))).thenAnswer(
+            new Answer<Path>()
+            {
+                @Override
+                public Path answer(final InvocationOnMock invocation)
+                {
+                    final String target = links.get(
+                        invocation.getArguments()[0].toString());
+                    return target == null ? null : fs.getPath(target);
+                }
+            });
+
+        final Path path = fs.getPath("/a/link/c/./e");
+
+        assertThat(path.toRealPath().toString()).isEqualTo("/d/e");
+        verify(driver, times(6)).getLinkTarget(any(Path.class));
+
+        assertThat(path.toRealPath().toString()).isEqualTo("/d/e");
+        verify(driver, times(6)).getLinkTarget(any(Path.class));
+
+        final ResolvedPathCache cache = fs.getResolvedPathCache();
+
+        assertThat(cache.getRealPath(fs.getPath("/a/link/c/e")).toString())
+            .isEqualTo("/d/e");
+        assertThat(cache.getRealPath(fs.getPath("/a/link/f")) == null)
+            .isTrue();
+        verify(driver, times(6)).getLinkTarget(any(Path.class));
+
+        assertThat(path.toRealPath(LinkOption.NOFOLLOW_LINKS).toString())
+            .isEqualTo("/a/link/c/e");
+
+        fs.getResolvedPathCache().invalidate();
+        path.toRealPath();
+        verify(driver, times(12)).getLinkTarget(any(Path.class));
+
+        try {
+            fs.getPath("/x/z").toRealPath();
+            shouldHaveThrown(FileSystemException.class);
+        } catch (FileSystemException e) {
+            assertThat(e.getReason())
+                .isEqualTo("too many levels of symbolic links");
+        }
+    }
+
+    @Test
+    public void invalidatingAPathKeepsUnrelatedEntries()
+        throws IOException
+    {
+        when(driver.supportsLinks()).thenReturn(true);
+        when(driver.getLinkTarget(fs.getPath("/a/link")))
+            .thenReturn(fs.getPath("/b"));
+
+        final ResolvedPathCache cache = fs.getResolvedPathCache();
+
+        fs.getPath("/a/link/c").toRealPath();
+        fs.getPath("/d/e").toRealPath();
+        verify(driver, times(6)).getLinkTarget(any(Path.class));
+
+        cache.invalidate(fs.getPath("/d"));
+
+        fs.getPath("/d/e").toRealPath();
+        verify(driver, times(8)).getLinkTarget(any(Path.class));
+
+        // The link entry was invalidated, but not /a nor /b/c
+        fs.getPath("/a/link/c").toRealPath();
+        verify(driver, times(9)).getLinkTarget(any(Path.class));
+    }
+
+    @Test
+    public void linksAreNotResolvedIfUnsupported()
+        throws IOException
+    {
+        assertThat(fs.getPath("/a/./b/../c").toRealPath().toString())
+            .isEqualTo("/a/c");
+        verify(driver, never()).getLinkTarget(any(Path.class));
+        assertThat(fs.getResolvedPathCache().size()).isEqualTo(0);
+    }
+
     @Test(enabled = false)
     public void relativizeResolveRoundRobinWorks()
     {
@@ -222,6 +414,12 @@ public final class GenericPathTest
         list.add(new Object[] { "foo://bar/x", "/", "foo://bar/x" });
         list.add(new Object[] { "foo://bar/x", "/../a", "foo://bar/x/a" });
         list.add(new Object[] { "foo://bar", "/a v", "foo://bar/a%20v" });
+        list.add(new Object[] { "foo://bar", "/a%b?c#d",
+            "foo://bar/a%25b%3Fc%23d" });
+        list.add(new Object[] { "foo://bar/x%20y", "//a/./b:c/",
+            "foo://bar/x%20y/a/b:c" });
+        list.add(new Object[] { "foo://bar", "/\u00e9\u2003",
+            "foo://bar/\u00e9%E2%80%83" });
 
         return list.iterator();
     }
@@ -239,5 +437,8 @@ public final class GenericPathTest
 
         assertThat(p.toUri().toString()).as("generated URI is correct")
             .isEqualTo(expected);
+        assertThat(p.toUri()).as("URI is cached").isSameAs(p.toUri());
+        assertThat(fs2.getPath(p.toUri()).toUri()).as("URI round trip")
+            .isEqualTo(p.toUri());
     }
 }
\ No newline at end of file
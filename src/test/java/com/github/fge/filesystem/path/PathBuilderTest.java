@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.path;
+
+import com.github.fge.filesystem.TestFileSystems;
+import com.github.fge.filesystem.fs.GenericFileSystem;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+
+import static com.github.fge.filesystem.CustomAssertions.shouldHaveThrown;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class PathBuilderTest
+{
+    private GenericFileSystem fs;
+
+    @BeforeMethod
+    public void init()
+    {
+        fs = TestFileSystems.newFileSystem();
+    }
+
+    @Test
+    public void builtPathsAreEqualToParsedPaths()
+    {
+        final PathBuilder builder = fs.newPathBuilder().root().name("bucket");
+        final Path p1 = builder.copy().names("2014", "shard1").build();
+        final Path p2 = builder.name("2015").build();
+
+        assertThat(p1.equals(fs.getPath("/bucket/2014/shard1"))).isTrue();
+        assertThat(p2.equals(fs.getPath("/bucket", "2015"))).isTrue();
+        assertThat(new PathBuilder(p2).clear().name("x").build()
+            .equals(fs.getPath("x"))).isTrue();
+    }
+
+    @Test
+    public void namesAreNotParsed()
+    {
+        final PathBuilder builder = fs.newPathBuilder().name("a");
+
+        try {
+            builder.name("b/c");
+            shouldHaveThrown(InvalidPathException.class);
+        } catch (InvalidPathException e) {
+            assertThat(e.getReason()).isEqualTo("invalid path element: b/c");
+        }
+
+        assertThat(builder.build().equals(fs.getPath("a"))).isTrue();
+    }
+}
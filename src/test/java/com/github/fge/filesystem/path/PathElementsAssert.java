@@ -82,28 +82,28 @@ public class PathElementsAssert
 
     public final PathElementsAssert hasNoNames()
     {
-        if (actual.names.length != 0)
+        if (actual.names().length != 0)
             failWithMessage("names array (%s) is not empty",
-                Arrays.toString(actual.names));
+                Arrays.toString(actual.names()));
         return this;
     }
 
     public final PathElementsAssert hasNames(final String... expected)
     {
-        if (!Arrays.equals(actual.names, expected))
+        if (!Arrays.equals(actual.names(), expected))
             failWithMessage("names array is not what is expected\n"
                 + "expected: <%s>\nactual  : <%s>\n",
-                Arrays.toString(expected), Arrays.toString(actual.names));
+                Arrays.toString(expected), Arrays.toString(actual.names()));
         return this;
     }
 
     public final PathElementsAssert hasSameNamesAs(final PathElements other)
     {
-        if (!Arrays.equals(actual.names, other.names))
+        if (!Arrays.equals(actual.names(), other.names()))
             failWithMessage(
                 "names differ from provided elements instance\n"
                 + "expected: <%s>\nactual  : <%s>\n",
-                Arrays.toString(other.names), Arrays.toString(actual.names));
+                Arrays.toString(other.names()), Arrays.toString(actual.names()));
         return this;
     }
 
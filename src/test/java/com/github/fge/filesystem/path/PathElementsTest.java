@@ -216,6 +216,46 @@ public final class PathElementsTest
         soft.assertAll();
     }
 
+    @Test
+    public void childSharesStructureWithItsParent()
+    {
+        final PathElements elements
+            = new PathElements("/", stringArray("foo", "bar"));
+        final PathElements child = elements.child("baz");
+
+        final CustomSoftAssertions soft = CustomSoftAssertions.create();
+
+        soft.assertThat(child).hasRoot("/").hasNames("foo", "bar", "baz");
+        soft.assertThat(child.parent() == elements).isTrue();
+        soft.assertThat(child.parent().parent())
+            .isSameAs(elements.parent());
+        soft.assertThat(child.ancestor(1)).hasRoot("/").hasNames("foo");
+
+        soft.assertAll();
+    }
+
+    @Test
+    public void equalsHashCodeIgnoreHowInstancesWereBuilt()
+    {
+        final PathElements fromArray
+            = new PathElements("/", stringArray("foo", "bar", "baz"));
+        final PathElements fromChildren = new PathElements("/", NO_NAMES)
+            .child("foo").child("bar").child("baz");
+        final PathElements other = new PathElements("/", NO_NAMES)
+            .child("foo").child("baz").child("bar");
+
+        final SoftAssertions soft = new SoftAssertions();
+
+        soft.assertThat(fromChildren).isEqualTo(fromArray);
+        soft.assertThat(fromArray).isEqualTo(fromChildren);
+        soft.assertThat(fromChildren.hashCode())
+            .isEqualTo(fromArray.hashCode());
+        soft.assertThat(fromChildren.parent()).isEqualTo(fromArray.parent());
+        soft.assertThat(fromChildren).isNotEqualTo(other);
+
+        soft.assertAll();
+    }
+
     private static String[] stringArray(final String first,
         final String... other)
     {
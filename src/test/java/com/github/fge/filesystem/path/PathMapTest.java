@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.path;
+
+import com.github.fge.filesystem.TestFileSystems;
+import com.github.fge.filesystem.fs.GenericFileSystem;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class PathMapTest
+{
+    private GenericFileSystem fs;
+    private PathMap<String> map;
+
+    @BeforeMethod
+    public void init()
+    {
+        fs = TestFileSystems.newFileSystem();
+        map = new PathMap<>();
+        map.put(fs.getPath("/"), "root");
+        map.put(fs.getPath("/a"), "a");
+        map.put(fs.getPath("/a/b/c"), "c");
+        map.put(fs.getPath("/a/b/d"), "d");
+        map.put(fs.getPath("a/b"), "relative");
+    }
+
+    @Test
+    public void basicOperationsWork()
+    {
+        assertThat(map.size()).isEqualTo(5);
+        assertThat(map.get(fs.getPath("/a/b/c"))).isEqualTo("c");
+        assertThat(map.get(fs.getPath("/a/b"))).isNull();
+        assertThat(map.get(fs.getPath("a/b"))).isEqualTo("relative");
+        assertThat(map.get(Paths.get("/a"))).isNull();
+
+        assertThat(map.put(fs.getPath("/a"), "a2")).isEqualTo("a");
+        assertThat(map.size()).isEqualTo(5);
+        assertThat(map.remove(fs.getPath("/a"))).isEqualTo("a2");
+        assertThat(map.size()).isEqualTo(4);
+        assertThat(map.get(fs.getPath("/a/b/c"))).isEqualTo("c");
+    }
+
+    @Test
+    public void ancestorsAreFoundShortestFirst()
+    {
+        final List<Map.Entry<Path, String>> ancestors
+            = map.getAncestors(fs.getPath("/a/b/c/e"));
+
+        assertThat(ancestors).hasSize(3);
+        assertThat(ancestors.get(0).getValue()).isEqualTo("root");
+        assertThat(ancestors.get(1).getValue()).isEqualTo("a");
+        assertThat(ancestors.get(2).getKey().equals(fs.getPath("/a/b/c")))
+            .isTrue();
+
+        assertThat(map.getLongestAncestor(fs.getPath("/a/b/x")).getValue())
+            .isEqualTo("a");
+        assertThat(map.getLongestAncestor(fs.getPath("b"))).isNull();
+    }
+
+    @Test
+    public void subtreeCanBeIteratedAndRemoved()
+    {
+        final Set<String> values = new HashSet<>();
+
+        for (final Map.Entry<Path, String> entry:
+            map.getSubtree(fs.getPath("/a")))
+            values.add(entry.getValue());
+
+        assertThat(values).containsOnly("a", "c", "d");
+
+        assertThat(map.removeSubtree(fs.getPath("/a/b"))).isEqualTo(2);
+        assertThat(map.size()).isEqualTo(3);
+        assertThat(map.get(fs.getPath("/a/b/c"))).isNull();
+        assertThat(map.get(fs.getPath("/a"))).isEqualTo("a");
+        assertThat(map.removeSubtree(fs.getPath("/x"))).isEqualTo(0);
+    }
+
+    @Test
+    public void pathSetDelegatesToMap()
+    {
+        final PathSet set = new PathSet();
+
+        assertThat(set.add(fs.getPath("/a/b"))).isTrue();
+        assertThat(set.add(fs.getPath("/a/b"))).isFalse();
+        set.add(fs.getPath("/a/b/c/d"));
+
+        assertThat(set.containsAncestorOf(fs.getPath("/a/b/c"))).isTrue();
+        assertThat(set.containsAncestorOf(fs.getPath("/a"))).isFalse();
+        assertThat(set.getLongestAncestor(fs.getPath("/a/b/c/d/e"))
+            .equals(fs.getPath("/a/b/c/d"))).isTrue();
+        assertThat(set.getAncestors(fs.getPath("/a/b/c/d")))
+            .containsExactly(fs.getPath("/a/b"), fs.getPath("/a/b/c/d"));
+        assertThat(set.removeSubtree(fs.getPath("/a"))).isEqualTo(2);
+        assertThat(set.isEmpty()).isTrue();
+    }
+}
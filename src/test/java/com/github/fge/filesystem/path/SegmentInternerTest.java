@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.path;
+
+import org.assertj.core.api.SoftAssertions;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.github.fge.filesystem.CustomAssertions.shouldHaveThrown;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class SegmentInternerTest
+{
+    @Test
+    public void equalNamesAreInterned()
+    {
+        final SegmentInterner interner = new SegmentInterner(16);
+        final String name1 = new String("part-00000");
+        final String name2 = new String("part-00000");
+
+        final SoftAssertions soft = new SoftAssertions();
+
+        soft.assertThat(interner.intern(name1)).isSameAs(name1);
+        soft.assertThat(interner.intern(name2)).isSameAs(name1);
+        soft.assertThat(interner.getHitCount()).isEqualTo(1L);
+        soft.assertThat(interner.getMissCount()).isEqualTo(1L);
+        // 24 bytes for the String, 16 + 20 rounded to 40 for the array
+        soft.assertThat(interner.getSavedBytes()).isEqualTo(64L);
+
+        soft.assertAll();
+    }
+
+    @Test
+    public void capacityIsRoundedToPowerOfTwo()
+    {
+        assertThat(new SegmentInterner(1).getCapacity()).isEqualTo(1);
+        assertThat(new SegmentInterner(5).getCapacity()).isEqualTo(8);
+        assertThat(new SegmentInterner(4096).getCapacity()).isEqualTo(4096);
+    }
+
+    @Test
+    public void parsedNamesAreInterned()
+    {
+        final SegmentInterner interner = new SegmentInterner();
+        final PathElementsFactory factory
+            = new UnixPathElementsFactory().withInterner(interner);
+
+        final PathElements elements1 = factory.toPathElements("/a/2014/x");
+        final PathElements elements2 = factory.toPathElements("b/2014");
+
+        assertThat(factory.getSegmentInterner()).isSameAs(interner);
+        assertThat(elements2.names()[1]).isSameAs(elements1.names()[1]);
+        assertThat(factory.toString(elements1)).isEqualTo("/a/2014/x");
+    }
+
+    @DataProvider
+    public Iterator<Object[]> envValues()
+    {
+        final List<Object[]> list = new ArrayList<>();
+
+        list.add(new Object[] { true, SegmentInterner.DEFAULT_CAPACITY });
+        list.add(new Object[] { "true", SegmentInterner.DEFAULT_CAPACITY });
+        list.add(new Object[] { 100, 128 });
+        list.add(new Object[] { "100", 128 });
+
+        return list.iterator();
+    }
+
+    @Test(dataProvider = "envValues")
+    public void interningIsEnabledFromEnv(final Object value,
+        final int capacity)
+    {
+        final SegmentInterner interner = SegmentInterner.fromEnv(
+            Collections.singletonMap(SegmentInterner.ENV_KEY, value));
+
+        assertThat(interner).isNotNull();
+        assertThat(interner.getCapacity()).isEqualTo(capacity);
+    }
+
+    @Test
+    public void interningIsDisabledByDefault()
+    {
+        assertThat(SegmentInterner.fromEnv(
+            Collections.<String, Object>emptyMap())).isNull();
+        assertThat(SegmentInterner.fromEnv(
+            Collections.singletonMap(SegmentInterner.ENV_KEY, false)))
+            .isNull();
+    }
+
+    @Test
+    public void illegalEnvValueIsRejected()
+    {
+        try {
+            SegmentInterner.fromEnv(
+                Collections.singletonMap(SegmentInterner.ENV_KEY, "meh"));
+            shouldHaveThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+}
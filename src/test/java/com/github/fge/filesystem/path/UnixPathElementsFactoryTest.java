@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.path;
+
+import com.github.fge.filesystem.CustomSoftAssertions;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.nio.file.InvalidPathException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.github.fge.filesystem.CustomAssertions.shouldHaveThrown;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class UnixPathElementsFactoryTest
+{
+    private final UnixPathElementsFactory factory
+        = new UnixPathElementsFactory();
+
+    @DataProvider
+    public Iterator<Object[]> validPaths()
+    {
+        final List<Object[]> list = new ArrayList<>();
+
+        list.add(new Object[] { "" });
+        list.add(new Object[] { "/" });
+        list.add(new Object[] { "///" });
+        list.add(new Object[] { "foo" });
+        list.add(new Object[] { "foo/" });
+        list.add(new Object[] { "/foo" });
+        list.add(new Object[] { "foo//bar///" });
+        list.add(new Object[] { "//foo/./bar/../baz" });
+        list.add(new Object[] { "/a/b/c/d/e/f/g/h/i/j/k/l/m/n/o/p/q" });
+        list.add(new Object[] { "/home/user/.config/some file.txt" });
+        list.add(new Object[] { "\\/..../\u00e9t\u00e9" });
+
+        return list.iterator();
+    }
+
+    @Test(dataProvider = "validPaths")
+    public void scannerAgreesWithGenericParsing(final String path)
+    {
+        final PathElements expected = factory.splitAndValidate(path);
+        final PathElements actual = factory.parse(path);
+
+        final CustomSoftAssertions soft = CustomSoftAssertions.create();
+
+        soft.assertThat(actual).hasSameRootAs(expected)
+            .hasSameNamesAs(expected);
+
+        soft.assertAll();
+    }
+
+    @DataProvider
+    public Iterator<Object[]> invalidPaths()
+    {
+        final List<Object[]> list = new ArrayList<>();
+
+        list.add(new Object[] { "\0", "\0" });
+        list.add(new Object[] { "/foo/b\0r/baz", "b\0r" });
+        list.add(new Object[] { "foo//\0/", "\0" });
+
+        return list.iterator();
+    }
+
+    @Test(dataProvider = "invalidPaths")
+    public void scannerRejectsInvalidNames(final String path,
+        final String name)
+    {
+        try {
+            factory.parse(path);
+            shouldHaveThrown(InvalidPathException.class);
+        } catch (InvalidPathException e) {
+            assertThat(e.getInput()).isEqualTo(path);
+            assertThat(e.getReason())
+                .isEqualTo("invalid path element: " + name);
+        }
+    }
+
+    @DataProvider
+    public Iterator<Object[]> multiplePaths()
+    {
+        final List<Object[]> list = new ArrayList<>();
+
+        list.add(new Object[] { "foo", new String[] { "bar", "baz" } });
+        list.add(new Object[] { "/foo", new String[] { "", "bar/", "" } });
+        list.add(new Object[] { "foo/", new String[] { "/bar", "//baz//" } });
+        list.add(new Object[] { "/", new String[] { "/", "a/./b", ".." } });
+        list.add(new Object[] { "", new String[] { "foo", "bar" } });
+        list.add(new Object[] { "", new String[] { "", "" } });
+
+        return list.iterator();
+    }
+
+    @Test(dataProvider = "multiplePaths")
+    public void multipleStringsAreParsedAsIfJoined(final String first,
+        final String[] more)
+    {
+        final StringBuilder sb = new StringBuilder(first);
+
+        for (final String s: more)
+            if (!s.isEmpty())
+                sb.append('/').append(s);
+
+        final PathElements expected = factory.splitAndValidate(sb.toString());
+        final PathElements actual = factory.toPathElements(first, more);
+
+        final CustomSoftAssertions soft = CustomSoftAssertions.create();
+
+        soft.assertThat(actual).hasSameRootAs(expected)
+            .hasSameNamesAs(expected);
+
+        soft.assertAll();
+    }
+}
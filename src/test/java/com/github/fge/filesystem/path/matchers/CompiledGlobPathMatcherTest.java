@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.path.matchers;
+
+import com.github.fge.filesystem.TestFileSystems;
+import com.github.fge.filesystem.fs.GenericFileSystem;
+import com.github.fge.filesystem.path.GenericPath;
+import org.assertj.core.api.SoftAssertions;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+import static com.github.fge.filesystem.CustomAssertions.shouldHaveThrown;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class CompiledGlobPathMatcherTest
+{
+    private static final String[] INPUTS = {
+        "", "a", "b", "ab", "abc", "a/b", "a/b/c", "/", "/a", "/a/b",
+        "a.java", "A.java", "a.jav", ".java", "src/a.java", "src/a/b.java",
+        "x.parquet", "y.orc", "z.avro", "d/x.parquet", "d/e/y.orc", "d/z.csv",
+        "-", "^", "!", "]", "a-b", "a]b", "a\\b", "a*b", "a?b", "a{b", "a,b",
+        "a}b", "[", "a\nb", "a\u00e9b", "a\ud83d\ude00b",
+        "a\ud83d\ude00\ud83d\ude00b", "a\udc00b", ".", "0", "a]",
+        "2014-12-01", "2014-1x-01",
+        "/data/t42/2014-12-01/part-00000", "/data/t42/x/2014-12-01/part"
+    };
+
+    private GenericFileSystem fs;
+
+    @BeforeClass
+    public void init()
+    {
+        fs = TestFileSystems.newFileSystem();
+    }
+
+    @DataProvider
+    public Iterator<Object[]> globs()
+    {
+        final String[] globs = {
+            "", "a", "*", "**", "?", "??", "a*", "*b", "a*b*c", "a**", "**b",
+            "*/*", "**/*", "a/**", "*.java", "**/*.java", "**.java",
+            "*.{java,class}", "**/*.{parquet,orc,avro}", "{a,b}", "{a,b,}",
+            "{}", "a{,/b}", "{*,**/*}.orc", "[ab]", "[!ab]", "[a-c]",
+            "[!a-c]", "[-a]", "[!-a]", "[a-]", "[^a]", "[\\]", "[[]", "[a]]",
+            "[&&a]", "[.-0]", "a?b", "a\\*b", "a\\?b", "a\\{b", "a\\[b",
+            "a\\\\b", "a}b", "a,b", "a\\,b", "?\u00e9?", "a?b", "a??b",
+            "a[!x]b", "a[\ud83d\ude00]b", "a*b", "2014-[01][0-9]-??",
+            "/data/*/2014-??-[0-3][0-9]/**", "/data/**/part*",
+            "{a,b/c}/**", "*{.,-}*", ".*"
+        };
+        final List<Object[]> list = new ArrayList<>();
+
+        for (final String glob: globs)
+            list.add(new Object[] { glob });
+
+        return list.iterator();
+    }
+
+    @Test(dataProvider = "globs")
+    public void compiledGlobsMatchLikeRegexGlobs(final String glob)
+    {
+        final GlobPathMatcher expected = new GlobPathMatcher(glob);
+        final CompiledGlobPathMatcher actual
+            = new CompiledGlobPathMatcher(glob);
+
+        final SoftAssertions soft = new SoftAssertions();
+
+        for (final String input: INPUTS)
+            soft.assertThat(actual.match(input))
+                .as("glob '%s' against '%s'", glob, input)
+                .isEqualTo(expected.match(input));
+
+        soft.assertAll();
+    }
+
+    @Test(dataProvider = "globs")
+    public void pathsAreMatchedLikeTheirStringRepresentation(
+        final String glob)
+    {
+        final String[] inputs = {
+            "", "/", "a", "/a/b", "a/b/c", "src/a.java", "d/e/y.orc",
+            "/data/t42/2014-12-01/part-00000"
+        };
+        final CompiledGlobPathMatcher matcher
+            = new CompiledGlobPathMatcher(glob);
+
+        final SoftAssertions soft = new SoftAssertions();
+
+        GenericPath path;
+        StringBuilder sb;
+
+        for (final String input: inputs) {
+            path = (GenericPath) fs.getPath(input);
+            sb = new StringBuilder();
+            for (final String component: path.getStringComponents())
+                sb.append(component);
+            soft.assertThat(sb.toString()).isEqualTo(path.toString());
+            soft.assertThat(matcher.matches(path))
+                .as("glob '%s' against path '%s'", glob, input)
+                .isEqualTo(matcher.match(input));
+        }
+
+        soft.assertAll();
+    }
+
+    @Test
+    public void foreignPathsAreMatchedUsingTheirStringRepresentation()
+    {
+        final CompiledGlobPathMatcher matcher
+            = new CompiledGlobPathMatcher("src/**/*.java");
+        final Path path = Paths.get("src", "main", "Foo.java");
+
+        assertThat(matcher.matches(path)).isTrue();
+        assertThat(matcher.matches(path.resolveSibling("Foo.class")))
+            .isFalse();
+    }
+
+    @DataProvider
+    public Iterator<Object[]> invalidGlobs()
+    {
+        final List<Object[]> list = new ArrayList<>();
+
+        list.add(new Object[] { "a\\", "No character to escape", 1 });
+        list.add(new Object[] { "{a,{b}}", "Cannot nest groups", 3 });
+        list.add(new Object[] { "{a,b", "Missing '}'", 3 });
+        list.add(new Object[] { "[a", "Missing ']'", 1 });
+        list.add(new Object[] { "[a/]", "Explicit 'name separator' in class",
+            2 });
+        list.add(new Object[] { "[a-b-c]", "Invalid range", 4 });
+        list.add(new Object[] { "[c-a]", "Invalid range", 1 });
+        list.add(new Object[] { "a[]", "Invalid class", 2 });
+        list.add(new Object[] { "[!]", "Invalid class", 2 });
+
+        return list.iterator();
+    }
+
+    @Test(dataProvider = "invalidGlobs")
+    public void invalidGlobsAreRejected(final String glob,
+        final String description, final int index)
+    {
+        try {
+            new CompiledGlobPathMatcher(glob);
+            shouldHaveThrown(PatternSyntaxException.class);
+        } catch (PatternSyntaxException e) {
+            assertThat(e.getDescription()).isEqualTo(description);
+            assertThat(e.getPattern()).isEqualTo(glob);
+            assertThat(e.getIndex()).isEqualTo(index);
+        }
+    }
+
+    @Test
+    public void statesWhichCannotMatchAreRemoved()
+    {
+        final GlobAutomaton automaton
+            = GlobCompiler.compile("src/**/*.java");
+
+        final int state = automaton.run(GlobAutomaton.INITIAL, "target/");
+
+        assertThat(state).isEqualTo(GlobAutomaton.DEAD);
+        assertThat(automaton.run(GlobAutomaton.INITIAL, "src/a/"))
+            .isNotEqualTo(GlobAutomaton.DEAD);
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.path.matchers;
+
+import com.github.fge.filesystem.TestFileSystems;
+import com.github.fge.filesystem.fs.GenericFileSystem;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.fge.filesystem.CustomAssertions.shouldHaveThrown;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public final class GlobFinderTest
+{
+    /*
+     * Directories, and the names of their entries
+     */
+    private final Map<String, List<String>> tree = new HashMap<>();
+    private final Set<String> listed
+        = Collections.synchronizedSet(new HashSet<String>());
+
+    private FileSystemProvider provider;
+    private GenericFileSystem fs;
+    private ExecutorService executor;
+
+    @BeforeMethod
+    public void init()
+        throws IOException
+    {
+        tree.clear();
+        listed.clear();
+
+        addDirectory("/", "data", "tmp", "README");
+        addDirectory("/data", "2013", "2014");
+        addDirectory("/data/2013", "01");
+        addDirectory("/data/2013/01", "logs");
+        addDirectory("/data/2013/01/logs", "a.gz");
+        addDirectory("/data/2014", "01", "02");
+        addDirectory("/data/2014/01", "logs", "other");
+        addDirectory("/data/2014/01/logs", "a.gz", "b.txt");
+        addDirectory("/data/2014/01/other", "c.gz");
+        addDirectory("/data/2014/02", "logs");
+        addDirectory("/data/2014/02/logs", "d.gz", "sub");
+        addDirectory("/data/2014/02/logs/sub", "e.gz");
+        addDirectory("/tmp", "f.gz");
+
+        provider = mock(FileSystemProvider.class);
+        fs = TestFileSystems.newFileSystem(provider);
+
+        when(provider.newDirectoryStream(any(Path.class),
+            any(DirectoryStream.Filter.class))).thenAnswer(
+            new Answer<DirectoryStream<Path>>()
+            {
+                @Override
+                public DirectoryStream<Path> answer(
+                    final InvocationOnMock invocation)
+                    throws IOException
+                {
+                    return list((Path) invocation.getArguments()[0]);
+                }
+            });
+
+        when(provider.readAttributes(any(Path.class),
+            eq(BasicFileAttributes.class), eq(LinkOption.NOFOLLOW_LINKS)))
+            .thenAnswer(new Answer<BasicFileAttributes>()
+            {
+                @Override
+                public BasicFileAttributes answer(
+                    final InvocationOnMock invocation)
+                {
+                    final String path
+                        = invocation.getArguments()[0].toString();
+                    final BasicFileAttributes attributes
+                        = mock(BasicFileAttributes.class);
+                    when(attributes.isDirectory())
+                        .thenReturn(tree.containsKey(path));
+                    return attributes;
+                }
+            });
+
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterMethod
+    public void shutdown()
+        throws InterruptedException
+    {
+        executor.shutdownNow();
+        // Tasks of a search must not outlive it
+        assertThat(executor.awaitTermination(5L, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void onlyDirectoriesWhichCanMatchAreListed()
+        throws IOException
+    {
+        final String glob = "/data/2014/*/logs/*.gz";
+
+        assertThat(find(glob))
+            .containsOnly("/data/2014/01/logs/a.gz", "/data/2014/02/logs/d.gz");
+        assertThat(listed).containsOnly("/data/2014", "/data/2014/01",
+            "/data/2014/02", "/data/2014/01/logs", "/data/2014/02/logs");
+    }
+
+    @Test
+    public void resultsAreThoseOfAPathMatcher()
+        throws IOException
+    {
+        final String[] globs = {
+            "/data/**.gz", "**/logs", "/*", "/{data,tmp}/*", "/data/201[!3]/0?",
+            "**", "/data", "*.gz", "/nonexistent/**"
+        };
+
+        for (final String glob: globs)
+            assertThat(find(glob)).as(glob)
+                .containsOnlyElementsOf(walk(glob));
+    }
+
+    @Test
+    public void literalPrefixIsTheStartDirectory()
+    {
+        assertThat(startDirectory("/data/2014/*/logs/*.gz"))
+            .isEqualTo("/data/2014");
+        assertThat(startDirectory("/data/{2013,2014}")).isEqualTo("/data");
+        assertThat(startDirectory("/data")).isEqualTo("/");
+        assertThat(startDirectory("data/*")).isEqualTo("/");
+        assertThat(startDirectory("/data/a\\*b/c")).isEqualTo("/data");
+    }
+
+    @Test
+    public void listingErrorsAreReported()
+        throws IOException
+    {
+        tree.put("/data/2014/01/logs", null);
+
+        try (
+            final DirectoryStream<Path> stream
+                = fs.find("/data/**.gz", executor);
+        ) {
+            for (final Path ignored: stream)
+                continue;
+            shouldHaveThrown(DirectoryIteratorException.class);
+        } catch (DirectoryIteratorException e) {
+            assertThat(e.getCause()).isInstanceOf(AccessDeniedException.class);
+        }
+    }
+
+    @Test
+    public void resultsAreNotAllBufferedInMemory()
+        throws IOException
+    {
+        final int count = 3 * GlobFinder.QUEUE_CAPACITY;
+        final String[] names = new String[count];
+
+        for (int i = 0; i < count; i++)
+            names[i] = "f" + i + ".gz";
+
+        addDirectory("/many", names);
+
+        assertThat(find("/many/*.gz")).hasSize(count);
+
+        try (
+            final DirectoryStream<Path> stream
+                = fs.find("/many/*.gz", executor);
+        ) {
+            final Iterator<Path> iterator = stream.iterator();
+            for (int i = 0; i < 10; i++)
+                iterator.next();
+        }
+    }
+
+    @Test
+    public void tasksRunByTheConsumerDoNotBlock()
+        throws IOException
+    {
+        final int count = 3 * GlobFinder.QUEUE_CAPACITY;
+        final String[] names = new String[count];
+
+        for (int i = 0; i < count; i++)
+            names[i] = "f" + i + ".gz";
+
+        addDirectory("/many", names);
+
+        final Executor direct = new Executor()
+        {
+            @Override
+            public void execute(final Runnable command)
+            {
+                command.run();
+            }
+        };
+        final List<String> found = new ArrayList<>();
+
+        try (
+            final DirectoryStream<Path> stream = fs.find("/many/*.gz", direct);
+        ) {
+            final Iterator<Path> iterator = stream.iterator();
+            assertThat(listed).isEmpty();
+            while (iterator.hasNext())
+                found.add(iterator.next().toString());
+        }
+
+        assertThat(found).hasSize(count)
+            .containsOnlyElementsOf(walk("/many/*.gz"));
+    }
+
+    @Test
+    public void searchesWorkOnOtherFileSystems()
+        throws IOException
+    {
+        final Path tmp = Files.createTempDirectory("globfinder");
+        final List<Path> created = new ArrayList<>();
+
+        created.add(Files.createDirectories(tmp.resolve("a/logs")));
+        created.add(Files.createFile(tmp.resolve("a/logs/x.gz")));
+        created.add(Files.createDirectories(tmp.resolve("b/other")));
+        created.add(Files.createFile(tmp.resolve("b/other/y.gz")));
+
+        final String glob = tmp + "/*/logs/*.gz";
+        final List<String> found = new ArrayList<>();
+
+        try (
+            final DirectoryStream<Path> stream = new GlobFinder(
+                tmp.getFileSystem(), glob, executor);
+        ) {
+            assertThat(((GlobFinder) stream).getStartDirectory().toString())
+                .isEqualTo(tmp.toString());
+            for (final Path path: stream)
+                found.add(path.toString());
+        } finally {
+            Collections.reverse(created);
+            for (final Path path: created)
+                Files.deleteIfExists(path);
+            Files.deleteIfExists(tmp.resolve("a"));
+            Files.deleteIfExists(tmp.resolve("b"));
+            Files.delete(tmp);
+        }
+
+        assertThat(found).containsExactly(tmp + "/a/logs/x.gz");
+    }
+
+    @Test
+    public void onlyOneIteratorCanBeObtained()
+        throws IOException
+    {
+        try (
+            final DirectoryStream<Path> stream = fs.find("/*", executor);
+        ) {
+            stream.iterator();
+            try {
+                stream.iterator();
+                shouldHaveThrown(IllegalStateException.class);
+            } catch (IllegalStateException ignored) {
+            }
+        }
+    }
+
+    private void addDirectory(final String dir, final String... names)
+    {
+        tree.put(dir, Arrays.asList(names));
+    }
+
+    private DirectoryStream<Path> list(final Path dir)
+        throws IOException
+    {
+        final String name = dir.toString();
+
+        if (!tree.containsKey(name))
+            throw new NoSuchFileException(name);
+
+        final List<String> names = tree.get(name);
+
+        if (names == null)
+            throw new AccessDeniedException(name);
+
+        listed.add(name);
+
+        final List<Path> entries = new ArrayList<>();
+
+        for (final String entry: names)
+            entries.add(dir.resolve(entry));
+
+        return new DirectoryStream<Path>()
+        {
+            @Override
+            public Iterator<Path> iterator()
+            {
+                return entries.iterator();
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        };
+    }
+
+    private List<String> find(final String glob)
+        throws IOException
+    {
+        final List<String> ret = new ArrayList<>();
+
+        try (
+            final DirectoryStream<Path> stream = fs.find(glob, executor);
+        ) {
+            for (final Path path: stream)
+                ret.add(path.toString());
+        }
+
+        return ret;
+    }
+
+    /*
+     * What walking the whole tree with a path matcher would find
+     */
+    private List<String> walk(final String glob)
+    {
+        final PathMatcher matcher = fs.getPathMatcher("glob:" + glob);
+        final List<String> ret = new ArrayList<>();
+
+        Path path;
+
+        for (final Map.Entry<String, List<String>> entry: tree.entrySet())
+            for (final String name: entry.getValue()) {
+                path = fs.getPath(entry.getKey()).resolve(name);
+                if (matcher.matches(path))
+                    ret.add(path.toString());
+            }
+
+        return ret;
+    }
+
+    private String startDirectory(final String glob)
+    {
+        return new GlobFinder(fs, glob, executor).getStartDirectory()
+            .toString();
+    }
+}
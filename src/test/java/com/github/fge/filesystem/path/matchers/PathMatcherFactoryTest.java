@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.path.matchers;
+
+import org.assertj.core.api.SoftAssertions;
+import org.testng.annotations.Test;
+
+import java.nio.file.PathMatcher;
+
+import static com.github.fge.filesystem.CustomAssertions.shouldHaveThrown;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class PathMatcherFactoryTest
+{
+    @Test
+    public void compiledMatchersAreCached()
+    {
+        final PathMatcherFactory factory = new PathMatcherFactory();
+
+        final PathMatcher glob = factory.getPathMatcher("glob", "*.java");
+        final PathMatcher regex = factory.getPathMatcher("regex", "\\.java$");
+
+        final SoftAssertions soft = new SoftAssertions();
+
+        soft.assertThat(glob).isInstanceOf(CompiledGlobPathMatcher.class);
+        soft.assertThat(regex).isInstanceOf(RegexPathMatcher.class);
+        soft.assertThat(factory.getPathMatcher("glob", "*.java"))
+            .isSameAs(glob);
+        soft.assertThat(factory.getCacheHitCount()).isEqualTo(1L);
+        soft.assertThat(factory.getCacheMissCount()).isEqualTo(2L);
+
+        soft.assertAll();
+    }
+
+    @Test
+    public void cacheCanBeDisabled()
+    {
+        final PathMatcherFactory factory = new PathMatcherFactory(0);
+
+        final PathMatcher matcher = factory.getPathMatcher("glob", "*.java");
+
+        assertThat(factory.getCacheCapacity()).isEqualTo(0);
+        assertThat(factory.getPathMatcher("glob", "*.java"))
+            .isNotSameAs(matcher);
+        assertThat(factory.getCacheHitCount()).isEqualTo(0L);
+    }
+
+    @Test
+    public void cacheCapacityIsRoundedToPowerOfTwo()
+    {
+        assertThat(new PathMatcherFactory(1).getCacheCapacity()).isEqualTo(1);
+        assertThat(new PathMatcherFactory(5).getCacheCapacity()).isEqualTo(8);
+        assertThat(new PathMatcherFactory().getCacheCapacity())
+            .isEqualTo(PathMatcherFactory.DEFAULT_CACHE_CAPACITY);
+    }
+
+    @Test
+    public void negativeCacheCapacityIsRejected()
+    {
+        try {
+            new PathMatcherFactory(-1);
+            shouldHaveThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("capacity must not be negative");
+        }
+    }
+
+    @Test
+    public void registeringASyntaxInvalidatesTheCache()
+    {
+        final PathMatcherFactory factory = new PathMatcherFactory()
+        {
+            {
+                getPathMatcher("glob", "foo");
+                registerPathMatcher("glob", RegexPathMatcher.class);
+            }
+        };
+
+        assertThat(factory.getPathMatcher("glob", "foo"))
+            .isInstanceOf(RegexPathMatcher.class);
+    }
+}
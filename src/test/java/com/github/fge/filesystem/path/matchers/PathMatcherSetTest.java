@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.path.matchers;
+
+import com.github.fge.filesystem.TestFileSystems;
+import com.github.fge.filesystem.fs.GenericFileSystem;
+import org.assertj.core.api.SoftAssertions;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.fge.filesystem.CustomAssertions.shouldHaveThrown;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class PathMatcherSetTest
+{
+    private final PathMatcherFactory factory = new PathMatcherFactory();
+
+    private GenericFileSystem fs;
+
+    @BeforeMethod
+    public void init()
+    {
+        fs = TestFileSystems.newFileSystem();
+    }
+
+    @Test
+    public void allMatchingPatternsAreReturned()
+    {
+        final PathMatcherSet.Builder builder
+            = factory.newPathMatcherSetBuilder();
+
+        assertThat(builder.add("glob", "**/*.java")).isEqualTo(0);
+        assertThat(builder.add("regex", "^src/")).isEqualTo(1);
+        assertThat(builder.add("glob", "src/**")).isEqualTo(2);
+        assertThat(builder.add("glob", "*.{java,class}")).isEqualTo(3);
+
+        final PathMatcherSet set = builder.build();
+
+        assertThat(set.size()).isEqualTo(4);
+        assertThat(set.match(fs.getPath("src/main/Foo.java")))
+            .containsExactly(0, 1, 2);
+        assertThat(set.match(fs.getPath("Foo.class"))).containsExactly(3);
+        assertThat(set.match(Paths.get("Foo.java"))).containsExactly(3);
+        assertThat(set.match(fs.getPath("/Foo.txt"))).isEmpty();
+        assertThat(set.matchesAny(fs.getPath("src/Foo.txt"))).isTrue();
+        assertThat(set.matchesAny(fs.getPath("/src"))).isFalse();
+    }
+
+    @Test
+    public void manyGlobsMatchLikeIndividualMatchers()
+    {
+        final PathMatcherSet.Builder builder
+            = factory.newPathMatcherSetBuilder();
+        final List<PathMatcher> matchers = new ArrayList<>();
+
+        String glob;
+
+        for (int i = 0; i < 200; i++) {
+            switch (i % 4) {
+                case 0:
+                    glob = "**/dir" + i + "/**";
+                    break;
+                case 1:
+                    glob = "**/*.ext" + i;
+                    break;
+                case 2:
+                    glob = "/data/" + i + "/*/part-*";
+                    break;
+                default:
+                    glob = "**/{tmp,cache}" + i + "/*";
+            }
+            builder.add("glob", glob);
+            matchers.add(factory.getPathMatcher("glob", glob));
+        }
+
+        final PathMatcherSet set = builder.build();
+        final String[] inputs = {
+            "/a/dir8/b", "/a/dir9/b", "x/y.ext13", "x/y.ext12",
+            "/data/2/2014/part-0", "/data/2/2014/x/part-0", "a/cache3/x",
+            "/dir4/dir8/x.ext1"
+        };
+
+        final SoftAssertions soft = new SoftAssertions();
+
+        Path path;
+        List<Integer> expected;
+
+        for (final String input: inputs) {
+            path = fs.getPath(input);
+            expected = new ArrayList<>();
+            for (int i = 0; i < matchers.size(); i++)
+                if (matchers.get(i).matches(path))
+                    expected.add(i);
+            soft.assertThat(toList(set.match(path))).as(input)
+                .isEqualTo(expected);
+        }
+
+        soft.assertAll();
+    }
+
+    @Test
+    public void globsAcceptedByThePathMatcherFactoryAreAccepted()
+    {
+        // Over 6000 states: too many for a combined automaton
+        final String glob = "*a???????????";
+        final PathMatcherSet.Builder builder
+            = factory.newPathMatcherSetBuilder();
+
+        factory.getPathMatcher("glob", glob);
+        builder.add("glob", "*.txt");
+        builder.add("glob", glob);
+
+        final PathMatcherSet set = builder.build();
+
+        assertThat(set.match(fs.getPath("xa0123456.txt")))
+            .containsExactly(0, 1);
+        assertThat(set.match(fs.getPath("xb0123456.txt")))
+            .containsExactly(0);
+    }
+
+    @Test
+    public void unsupportedSyntaxesAreRejected()
+    {
+        try {
+            factory.newPathMatcherSetBuilder().add("foo", "bar");
+            shouldHaveThrown(UnsupportedOperationException.class);
+        } catch (UnsupportedOperationException ignored) {
+        }
+    }
+
+    private static List<Integer> toList(final int[] array)
+    {
+        final List<Integer> ret = new ArrayList<>(array.length);
+
+        for (final int i: array)
+            ret.add(i);
+
+        return ret;
+    }
+}
@@ -21,23 +21,37 @@ package com.github.fge.filesystem.provider;
 import com.github.fge.filesystem.driver.FileSystemDriver;
 import com.github.fge.filesystem.exceptions.IllegalOptionSetException;
 import com.github.fge.filesystem.exceptions.UnsupportedOptionException;
+import com.github.fge.filesystem.fs.GenericFileSystem;
 import com.github.fge.filesystem.options.FileSystemOptionsFactory;
+import com.github.fge.filesystem.path.AbsentPathCache;
+import org.mockito.Matchers;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.AccessMode;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.spi.FileSystemProvider;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
 
 import static com.github.fge.filesystem.CustomAssertions.shouldHaveThrown;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anySet;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -46,14 +60,14 @@ public final class FileSystemProviderBaseTest
     private FileSystemFactoryProvider factoryProvider;
     private FileSystemOptionsFactory optionsFactory;
     private FileSystemDriver driver;
+    private FileSystemRepository repository;
     private FileSystemProvider provider;
     private Path path;
 
     @BeforeMethod
     public void initMocks()
     {
-        final FileSystemRepository repository
-            = mock(FileSystemRepository.class);
+        repository = mock(FileSystemRepository.class);
 
         driver = mock(FileSystemDriver.class);
         when(repository.getDriver(any(Path.class))).thenReturn(driver);
@@ -143,4 +157,254 @@ public final class FileSystemProviderBaseTest
         verify(driver, never())
             .newOutputStream(any(Path.class), anySet());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void writesInvalidateCachedMetadata()
+        throws IOException
+    {
+        final Path parent = mock(Path.class);
+
+        when(path.toAbsolutePath()).thenReturn(path);
+        when(path.getParent()).thenReturn(parent);
+        when(driver.checkAccessIfExists(any(Path.class),
+            Matchers.<AccessMode>anyVararg())).thenReturn(true);
+        //noinspection unchecked
+        when(driver.newOutputStream(any(Path.class), anySet()))
+            .thenReturn(new ByteArrayOutputStream());
+
+        provider.delete(path);
+        verify(driver).invalidatePathMetadata(path);
+        verify(driver).invalidatePathMetadata(parent);
+
+        try (
+            final OutputStream out = provider.newOutputStream(path);
+        ) {
+            out.write(new byte[] { 1, 2, 3 });
+            verify(driver, times(2)).invalidatePathMetadata(path);
+        }
+
+        verify(driver, times(3)).invalidatePathMetadata(path);
+    }
+
+    @Test
+    public void errorsClosingOutputStreamsAreNotLost()
+        throws IOException
+    {
+        final IOException exception = new IOException("upload failed");
+        final OutputStream driverOut = mock(OutputStream.class);
+
+        when(path.toAbsolutePath()).thenReturn(path);
+        when(driver.checkAccessIfExists(any(Path.class),
+            Matchers.<AccessMode>anyVararg())).thenReturn(true);
+        //noinspection unchecked
+        when(driver.newOutputStream(any(Path.class), anySet()))
+            .thenReturn(driverOut);
+        doThrow(exception).when(driverOut).close();
+
+        final OutputStream out = provider.newOutputStream(path);
+
+        try {
+            out.close();
+            shouldHaveThrown(IOException.class);
+        } catch (IOException e) {
+            assertThat(e).isSameAs(exception);
+        }
+
+        verify(driverOut, never()).flush();
+        verify(driver, times(2)).invalidatePathMetadata(path);
+    }
+
+    @Test
+    public void knownAbsentPathsAreNotProbed()
+        throws IOException
+    {
+        final AbsentPathCache cache
+            = new AbsentPathCache(1L, TimeUnit.HOURS, 16);
+        final GenericFileSystem fs = new GenericFileSystem(
+            URI.create("foo://bar"), repository, driver, provider,
+            factoryProvider.getPathElementsFactory(), cache);
+        final Path dir = fs.getPath("/a/b");
+        final Path child = fs.getPath("/a/b/c");
+
+        try {
+            provider.checkAccess(dir);
+            shouldHaveThrown(NoSuchFileException.class);
+        } catch (NoSuchFileException ignored) {
+        }
+
+        try {
+            provider.checkAccess(child, AccessMode.READ);
+            shouldHaveThrown(NoSuchFileException.class);
+        } catch (NoSuchFileException e) {
+            assertThat(e.getFile()).isEqualTo("/a/b/c");
+        }
+
+        verify(driver, never()).checkAccessIfExists(child, AccessMode.READ);
+
+        provider.createDirectory(dir);
+
+        verify(driver).createDirectory(dir);
+        verify(driver, times(1)).checkAccessIfExists(dir);
+        assertThat(cache.isAbsent(child)).isFalse();
+    }
+
+    @Test
+    public void directoriesMovedOverProbedPathsAreFound()
+        throws IOException
+    {
+        final AbsentPathCache cache
+            = new AbsentPathCache(1L, TimeUnit.HOURS, 16);
+        final GenericFileSystem fs = new GenericFileSystem(
+            URI.create("foo://bar"), repository, driver, provider,
+            factoryProvider.getPathElementsFactory(), cache);
+        final Path source = fs.getPath("/s");
+        final Path target = fs.getPath("/t");
+        final Path child = fs.getPath("/t/x");
+
+        try {
+            provider.checkAccess(child);
+            shouldHaveThrown(NoSuchFileException.class);
+        } catch (NoSuchFileException ignored) {
+        }
+
+        provider.move(source, target);
+
+        assertThat(cache.isAbsent(child)).isFalse();
+        assertThat(cache.isAbsent(fs.getPath("/t/x/y"))).isFalse();
+    }
+
+    @Test
+    public void pathsCreatedThroughChannelsAreNotAbsent()
+        throws IOException
+    {
+        final AbsentPathCache cache
+            = new AbsentPathCache(1L, TimeUnit.HOURS, 16);
+        final GenericFileSystem fs = new GenericFileSystem(
+            URI.create("foo://bar"), repository, driver, provider,
+            factoryProvider.getPathElementsFactory(), cache);
+        final Path file = fs.getPath("/a/file");
+
+        try {
+            provider.checkAccess(file);
+            shouldHaveThrown(NoSuchFileException.class);
+        } catch (NoSuchFileException ignored) {
+        }
+
+        provider.newByteChannel(file, EnumSet.of(StandardOpenOption.WRITE,
+            StandardOpenOption.CREATE_NEW));
+
+        assertThat(cache.isAbsent(file)).isFalse();
+    }
+
+    @Test
+    public void creationsProbeWithoutExceptions()
+        throws IOException
+    {
+        final Path dir = mock(Path.class);
+        final Path file = mock(Path.class);
+
+        when(dir.toString()).thenReturn("/dir");
+        when(file.toString()).thenReturn("/file");
+        when(file.toAbsolutePath()).thenReturn(file);
+        when(driver.checkAccessIfExists(dir)).thenReturn(true);
+
+        try {
+            provider.createDirectory(dir);
+            shouldHaveThrown(FileAlreadyExistsException.class);
+        } catch (FileAlreadyExistsException e) {
+            assertThat(e.getFile()).isEqualTo("/dir");
+        }
+
+        try {
+            provider.newOutputStream(file, StandardOpenOption.WRITE);
+            shouldHaveThrown(NoSuchFileException.class);
+        } catch (NoSuchFileException e) {
+            assertThat(e.getFile()).isEqualTo("/file");
+        }
+
+        provider.createDirectory(file);
+
+        verify(driver, never()).createDirectory(dir);
+        verify(driver).createDirectory(file);
+        verify(driver, never()).checkAccess(any(Path.class),
+            Matchers.<AccessMode>anyVararg());
+    }
+
+    @Test
+    public void accessCheckingDriversAreNotProbed()
+        throws IOException
+    {
+        final AbsentPathCache cache
+            = new AbsentPathCache(1L, TimeUnit.HOURS, 16);
+        final GenericFileSystem fs = new GenericFileSystem(
+            URI.create("foo://bar"), repository, driver, provider,
+            factoryProvider.getPathElementsFactory(), cache);
+        final Path file = fs.getPath("/a/file");
+        final Path missing = fs.getPath("/a/missing");
+
+        when(driver.performsAccessChecks()).thenReturn(true);
+        //noinspection unchecked
+        when(driver.newInputStream(any(Path.class), anySet()))
+            .thenReturn(new ByteArrayInputStream(new byte[0]))
+            .thenThrow(new NoSuchFileException("/a/missing"));
+        //noinspection unchecked
+        when(driver.newOutputStream(any(Path.class), anySet()))
+            .thenReturn(new ByteArrayOutputStream());
+
+        provider.newInputStream(file).close();
+        provider.newOutputStream(file, StandardOpenOption.CREATE_NEW).close();
+        provider.delete(file);
+
+        try {
+            provider.newInputStream(missing);
+            shouldHaveThrown(NoSuchFileException.class);
+        } catch (NoSuchFileException ignored) {
+        }
+
+        assertThat(cache.isAbsent(missing)).isTrue();
+
+        try {
+            provider.delete(missing);
+            shouldHaveThrown(NoSuchFileException.class);
+        } catch (NoSuchFileException e) {
+            assertThat(e.getFile()).isEqualTo("/a/missing");
+        }
+
+        verify(driver).delete(file);
+        verify(driver, never()).delete(missing);
+        verify(driver, never()).checkAccess(any(Path.class),
+            Matchers.<AccessMode>anyVararg());
+        verify(driver, never()).checkAccessIfExists(any(Path.class),
+            Matchers.<AccessMode>anyVararg());
+    }
+
+    @Test
+    public void accessCheckingDriversRecordAbsentOutputStreamTargets()
+        throws IOException
+    {
+        final AbsentPathCache cache
+            = new AbsentPathCache(1L, TimeUnit.HOURS, 16);
+        final GenericFileSystem fs = new GenericFileSystem(
+            URI.create("foo://bar"), repository, driver, provider,
+            factoryProvider.getPathElementsFactory(), cache);
+        final Path missing = fs.getPath("/a/missing");
+
+        when(driver.performsAccessChecks()).thenReturn(true);
+        //noinspection unchecked
+        when(driver.newOutputStream(any(Path.class), anySet()))
+            .thenThrow(new NoSuchFileException("/a/missing"));
+
+        for (int i = 0; i < 2; i++)
+            try {
+                provider.newOutputStream(missing,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+                shouldHaveThrown(NoSuchFileException.class);
+            } catch (NoSuchFileException e) {
+                assertThat(e.getFile()).isEqualTo("/a/missing");
+            }
+
+        assertThat(cache.isAbsent(missing)).isTrue();
+        //noinspection unchecked
+        verify(driver).newOutputStream(any(Path.class), anySet());
+    }
+}
@@ -0,0 +1,504 @@
+/*
+ * Copyright (c) 2014, Francis Galiegue (fgaliegue@gmail.com)
+ *
+ * This software is dual-licensed under:
+ *
+ * - the Lesser General Public License (LGPL) version 3.0 or, at your option, any
+ *   later version;
+ * - the Apache Software License (ASL) version 2.0.
+ *
+ * The text of both licenses is available under the src/resources/ directory of
+ * this project (under the names LGPL-3.0.txt and ASL-2.0.txt respectively).
+ *
+ * Direct link to the sources:
+ *
+ * - LGPL 3.0: https://www.gnu.org/licenses/lgpl-3.0.txt
+ * - ASL 2.0: http://www.apache.org/licenses/LICENSE-2.0.txt
+ */
+
+package com.github.fge.filesystem.provider;
+
+import com.github.fge.filesystem.attributes.FileAttributesFactory;
+import com.github.fge.filesystem.attributes.testclasses.ArgType1;
+import com.github.fge.filesystem.attributes.testclasses.DummyPosix;
+import com.github.fge.filesystem.driver.FileSystemDriver;
+import com.github.fge.filesystem.fs.GenericFileSystem;
+import com.github.fge.filesystem.path.ResolvedPathCache;
+import com.github.fge.filesystem.path.SegmentInterner;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.ClosedFileSystemException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.fge.filesystem.CustomAssertions.shouldHaveThrown;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anySet;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public final class FileSystemRepositoryBaseTest
+{
+    private static final Map<String, ?> NO_ENV = Collections.emptyMap();
+
+    private final URI uri = URI.create("foo://bar/");
+
+    private FileSystemFactoryProvider factoryProvider;
+    private FileSystemProvider provider;
+    private FileSystemRepository repository;
+
+    @BeforeMethod
+    public void init()
+    {
+        final FileAttributesFactory attributesFactory
+            = new FileAttributesFactory()
+        {
+            {
+                setMetadataClass(ArgType1.class);
+                addImplementation("posix", DummyPosix.class);
+            }
+        };
+        factoryProvider = new FileSystemFactoryProvider()
+        {
+            {
+                setAttributesFactory(attributesFactory);
+            }
+        };
+        provider = mock(FileSystemProvider.class);
+        repository = new FileSystemRepositoryBase("foo", factoryProvider)
+        {
+            @Override
+            protected FileSystemDriver createDriver(final URI uri,
+                final Map<String, ?> env)
+                throws IOException
+            {
+                return mock(FileSystemDriver.class);
+            }
+        };
+    }
+
+    @Test
+    public void driverIsResolvedFromPathFileSystem()
+        throws IOException
+    {
+        final GenericFileSystem fs = (GenericFileSystem)
+            repository.createFileSystem(provider, uri, NO_ENV);
+        final Path path = fs.getPath("/a/b");
+
+        assertThat(repository.getDriver(path)).isSameAs(fs.getDriver());
+    }
+
+    @Test
+    public void closedFileSystemIsReportedAsClosed()
+        throws IOException
+    {
+        final FileSystem fs = repository.createFileSystem(provider, uri,
+            NO_ENV);
+        final Path path = fs.getPath("/a/b");
+
+        fs.close();
+
+        try {
+            repository.getDriver(path);
+            shouldHaveThrown(ClosedFileSystemException.class);
+        } catch (ClosedFileSystemException ignored) {
+        }
+    }
+
+    @Test
+    public void fileSystemFromAnotherRepositoryIsNotFound()
+        throws IOException
+    {
+        final FileSystemRepository other = mock(FileSystemRepository.class);
+        when(other.getFactoryProvider()).thenReturn(factoryProvider);
+
+        final GenericFileSystem fs = new GenericFileSystem(uri, other,
+            mock(FileSystemDriver.class), provider);
+        final Path path = fs.getPath("/a/b");
+
+        try {
+            repository.getDriver(path);
+            shouldHaveThrown(FileSystemNotFoundException.class);
+        } catch (FileSystemNotFoundException ignored) {
+        }
+    }
+
+    @Test
+    public void foreignPathIsNotFound()
+    {
+        final Path path = mock(Path.class);
+        when(path.getFileSystem()).thenReturn(mock(FileSystem.class));
+
+        try {
+            repository.getDriver(path);
+            shouldHaveThrown(FileSystemNotFoundException.class);
+        } catch (FileSystemNotFoundException ignored) {
+        }
+    }
+
+    @Test
+    public void fileSystemCannotBeCreatedTwice()
+        throws IOException
+    {
+        repository.createFileSystem(provider, uri, NO_ENV);
+
+        try {
+            repository.createFileSystem(provider, uri, NO_ENV);
+            shouldHaveThrown(FileSystemAlreadyExistsException.class);
+        } catch (FileSystemAlreadyExistsException ignored) {
+        }
+    }
+
+    @Test
+    public void failedCreationDoesNotRegisterFileSystem()
+        throws IOException
+    {
+        final IOException exception = new IOException("meh");
+        final FileSystemRepository failing
+            = new FileSystemRepositoryBase("foo", factoryProvider)
+        {
+            @Override
+            protected FileSystemDriver createDriver(final URI uri,
+                final Map<String, ?> env)
+                throws IOException
+            {
+                throw exception;
+            }
+        };
+
+        try {
+            failing.createFileSystem(provider, uri, NO_ENV);
+            shouldHaveThrown(IOException.class);
+        } catch (IOException e) {
+            assertThat(e).isSameAs(exception);
+        }
+
+        try {
+            failing.getFileSystem(uri);
+            shouldHaveThrown(FileSystemNotFoundException.class);
+        } catch (FileSystemNotFoundException ignored) {
+        }
+    }
+
+    @Test(timeOut = 5000L)
+    public void slowCreationDoesNotBlockOtherFileSystems()
+        throws Exception
+    {
+        final URI slowUri = URI.create("foo://slow/");
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final FileSystemRepository slow
+            = new FileSystemRepositoryBase("foo", factoryProvider)
+        {
+            @Override
+            protected FileSystemDriver createDriver(final URI uri,
+                final Map<String, ?> env)
+                throws IOException
+            {
+                if (uri.equals(slowUri)) {
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+                return mock(FileSystemDriver.class);
+            }
+        };
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            final Future<FileSystem> future = executor.submit(
+                new Callable<FileSystem>()
+                {
+                    @Override
+                    public FileSystem call()
+                        throws IOException
+                    {
+                        return slow.createFileSystem(provider, slowUri,
+                            NO_ENV);
+                    }
+                }
+            );
+
+            assertThat(entered.await(1L, TimeUnit.SECONDS)).isTrue();
+
+            final FileSystem fs = slow.createFileSystem(provider, uri, NO_ENV);
+            assertThat(slow.getFileSystem(uri)).isSameAs(fs);
+            assertThat(slow.getDriver(fs.getPath("/a"))).isNotNull();
+
+            release.countDown();
+            final FileSystem slowFs = future.get();
+            assertThat(slow.getFileSystem(slowUri)).isSameAs(slowFs);
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void getPathUsesLongestMatchingFileSystem()
+        throws IOException
+    {
+        final FileSystem rootFs = repository.createFileSystem(provider, uri,
+            NO_ENV);
+        final FileSystem subFs = repository.createFileSystem(provider,
+            URI.create("foo://bar/x/y"), NO_ENV);
+
+        Path path;
+
+        path = repository.getPath(URI.create("foo://bar/x/y/a%20b/c"));
+        assertThat(path.getFileSystem()).isSameAs(subFs);
+        assertThat(path.toString()).isEqualTo("/a b/c");
+
+        path = repository.getPath(URI.create("foo://bar/x/z"));
+        assertThat(path.getFileSystem()).isSameAs(rootFs);
+        assertThat(path.toString()).isEqualTo("/x/z");
+
+        path = repository.getPath(URI.create("foo://bar/x/y"));
+        assertThat(path.getFileSystem()).isSameAs(subFs);
+        assertThat(path.toString()).isEqualTo("/");
+
+        subFs.close();
+
+        path = repository.getPath(URI.create("foo://bar/x/y/a"));
+        assertThat(path.getFileSystem()).isSameAs(rootFs);
+        assertThat(path.toString()).isEqualTo("/x/y/a");
+    }
+
+    @Test
+    public void getPathWithNoMatchingFileSystemFails()
+        throws IOException
+    {
+        repository.createFileSystem(provider, URI.create("foo://bar/x"),
+            NO_ENV);
+
+        try {
+            repository.getPath(URI.create("foo://baz/x/a"));
+            shouldHaveThrown(FileSystemNotFoundException.class);
+        } catch (FileSystemNotFoundException ignored) {
+        }
+
+        try {
+            repository.getPath(URI.create("foo://bar/xy/a"));
+            shouldHaveThrown(FileSystemNotFoundException.class);
+        } catch (FileSystemNotFoundException ignored) {
+        }
+    }
+
+    @Test
+    public void leastRecentlyUsedDriverIsEvictedAndCreatedAgain()
+        throws IOException
+    {
+        final Map<String, ?> env = Collections.singletonMap("a", "b");
+        final List<FileSystemDriver> drivers = new ArrayList<>();
+        final FileSystemRepositoryBase pooled
+            = new FileSystemRepositoryBase("foo", factoryProvider)
+        {
+            {
+                setDriverEviction(1, 0L, TimeUnit.SECONDS);
+            }
+
+            @Override
+            protected FileSystemDriver createDriver(final URI uri,
+                final Map<String, ?> env)
+                throws IOException
+            {
+                assertThat(env).isEqualTo(
+                    Collections.singletonMap("a", "b"));
+                final FileSystemDriver driver = mock(FileSystemDriver.class);
+                drivers.add(driver);
+                return driver;
+            }
+        };
+
+        final FileSystem fs1 = pooled.createFileSystem(provider, uri, env);
+        final FileSystem fs2 = pooled.createFileSystem(provider,
+            URI.create("foo://baz/"), env);
+        final Path path = fs1.getPath("/a");
+
+        assertThat(drivers).hasSize(2);
+        verify(drivers.get(0)).close();
+        assertThat(pooled.getActiveDriverCount()).isEqualTo(1);
+        assertThat(pooled.getDriverEvictionCount()).isEqualTo(1L);
+
+        pooled.getDriver(path).checkAccess(path);
+
+        assertThat(drivers).hasSize(3);
+        verify(drivers.get(2)).checkAccess(path);
+        verify(drivers.get(1)).close();
+        assertThat(pooled.getActiveDriverCount()).isEqualTo(1);
+        assertThat(pooled.getDriverEvictionCount()).isEqualTo(2L);
+        assertThat(pooled.getDriverReloadCount()).isEqualTo(1L);
+        assertThat(pooled.getFileSystem(uri)).isSameAs(fs1);
+
+        fs1.close();
+        fs2.close();
+
+        verify(drivers.get(2)).close();
+        assertThat(pooled.getActiveDriverCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void idleDriversAreEvictedOnDemand()
+        throws IOException, InterruptedException
+    {
+        final FileSystemDriver driver = mock(FileSystemDriver.class);
+        final FileSystemRepositoryBase pooled
+            = new FileSystemRepositoryBase("foo", factoryProvider)
+        {
+            {
+                setDriverEviction(0, 1L, TimeUnit.MILLISECONDS);
+            }
+
+            @Override
+            protected FileSystemDriver createDriver(final URI uri,
+                final Map<String, ?> env)
+                throws IOException
+            {
+                return driver;
+            }
+        };
+
+        pooled.createFileSystem(provider, uri, NO_ENV);
+        TimeUnit.MILLISECONDS.sleep(10L);
+
+        assertThat(pooled.evictIdleDrivers()).isEqualTo(1);
+        assertThat(pooled.getDriverEvictionCount()).isEqualTo(1L);
+        assertThat(pooled.getActiveDriverCount()).isEqualTo(0);
+        verify(driver).close();
+    }
+
+    @Test
+    public void driversWithOpenStreamsAreNotEvicted()
+        throws IOException, InterruptedException
+    {
+        final FileSystemDriver driver = mock(FileSystemDriver.class);
+        final FileSystemRepositoryBase pooled
+            = new FileSystemRepositoryBase("foo", factoryProvider)
+        {
+            {
+                setDriverEviction(0, 1L, TimeUnit.MILLISECONDS);
+            }
+
+            @Override
+            protected FileSystemDriver createDriver(final URI uri,
+                final Map<String, ?> env)
+                throws IOException
+            {
+                return driver;
+            }
+        };
+
+        final FileSystem fs = pooled.createFileSystem(provider, uri, NO_ENV);
+        final Path path = fs.getPath("/a");
+
+        //noinspection unchecked
+        when(driver.newInputStream(any(Path.class), anySet()))
+            .thenReturn(new ByteArrayInputStream(new byte[0]));
+
+        final InputStream in = pooled.getDriver(path)
+            .newInputStream(path, Collections.<OpenOption>emptySet());
+
+        TimeUnit.MILLISECONDS.sleep(10L);
+        assertThat(pooled.evictIdleDrivers()).isEqualTo(0);
+
+        in.close();
+        in.close();
+
+        TimeUnit.MILLISECONDS.sleep(10L);
+        assertThat(pooled.evictIdleDrivers()).isEqualTo(1);
+        verify(driver).close();
+    }
+
+    @Test
+    public void driverEvictionCannotBeEnabledAfterCreation()
+        throws IOException
+    {
+        final FileSystemRepositoryBase base
+            = (FileSystemRepositoryBase) repository;
+
+        base.createFileSystem(provider, uri, NO_ENV);
+
+        try {
+            base.setDriverEviction(1, 0L, TimeUnit.SECONDS);
+            shouldHaveThrown(IllegalStateException.class);
+        } catch (IllegalStateException ignored) {
+        }
+    }
+
+    @Test
+    public void segmentInterningIsEnabledFromEnvironment()
+        throws IOException
+    {
+        final Map<String, ?> env
+            = Collections.singletonMap(SegmentInterner.ENV_KEY, true);
+
+        final GenericFileSystem fs1 = (GenericFileSystem)
+            repository.createFileSystem(provider, uri, env);
+        final GenericFileSystem fs2 = (GenericFileSystem)
+            repository.createFileSystem(provider, URI.create("foo://baz/"),
+                NO_ENV);
+
+        assertThat(fs1.getSegmentInterner()).isNotNull();
+        assertThat(fs2.getSegmentInterner()).isNull();
+
+        fs1.getPath("/2014/part-00000");
+        fs1.getPath("/2015/part-00000");
+
+        final SegmentInterner interner = fs1.getSegmentInterner();
+        assertThat(interner.getHitCount()).isEqualTo(1L);
+        assertThat(interner.getMissCount()).isEqualTo(3L);
+        assertThat(interner.getSavedBytes()).isGreaterThan(0L);
+    }
+
+    @Test
+    public void resolvedPathCacheCapacityIsReadFromEnvironment()
+        throws IOException
+    {
+        final Map<String, ?> env
+            = Collections.singletonMap(ResolvedPathCache.ENV_KEY, "16");
+
+        final GenericFileSystem fs1 = (GenericFileSystem)
+            repository.createFileSystem(provider, uri, env);
+        final GenericFileSystem fs2 = (GenericFileSystem)
+            repository.createFileSystem(provider, URI.create("foo://baz/"),
+                NO_ENV);
+
+        assertThat(fs1.getResolvedPathCache().getCapacity()).isEqualTo(16);
+        assertThat(fs2.getResolvedPathCache().getCapacity())
+            .isEqualTo(ResolvedPathCache.DEFAULT_CAPACITY);
+
+        try {
+            repository.createFileSystem(provider, URI.create("foo://qux/"),
+                Collections.singletonMap(ResolvedPathCache.ENV_KEY, "x"));
+            shouldHaveThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("illegal value for "
+                + ResolvedPathCache.ENV_KEY + ": x");
+        }
+    }
+}